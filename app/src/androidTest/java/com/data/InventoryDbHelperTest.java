@@ -0,0 +1,458 @@
+package com.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.data.InventoryContract.InventoryEntry;
+import com.data.InventoryContract.StatsEntry;
+import com.data.InventoryContract.StockLedgerEntry;
+import com.data.InventoryContract.SupplierEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the schema migrations, the compaction of the stock ledger, and that the queries the
+ * app runs are answered from an index rather than a scan of the whole inventory table.
+ */
+@RunWith(AndroidJUnit4.class)
+public class InventoryDbHelperTest {
+
+    /**
+     * The inventory table exactly as version 1 of the app created it.
+     */
+    private static final String SQL_CREATE_INVENTORY_TABLE_V1 = "CREATE TABLE inventory ("
+            + "_id INTEGER PRIMARY KEY AUTOINCREMENT, "
+            + "product TEXT NOT NULL, "
+            + "price INTEGER NOT NULL, "
+            + "quantity INTEGER NOT NULL DEFAULT 0, "
+            + "supplier TEXT NOT NULL, "
+            + "supplierN TEXT NOT NULL);";
+
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * Noon of a day, as the time the ledger is compacted at.
+     */
+    private static final long NOW = TimeUnit.DAYS.toMillis(20000) + HOUR * 12;
+
+    /**
+     * Start of two consecutive days that are past the retention period at {@link #NOW}.
+     */
+    private static final long DAY_0 = TimeUnit.DAYS.toMillis(20000 - 40);
+    private static final long DAY_1 = DAY_0 + TimeUnit.DAYS.toMillis(1);
+
+    private InventoryDbHelper mDbHelper;
+    private SQLiteDatabase mDatabase;
+
+    @Before
+    public void setUp() {
+        mDbHelper = new InventoryDbHelper(InstrumentationRegistry.getTargetContext(), null);
+        mDatabase = mDbHelper.getWritableDatabase();
+    }
+
+    @After
+    public void tearDown() {
+        mDbHelper.close();
+    }
+
+    @Test
+    public void upgradeFromVersion1_keepsProductsAndAddsIndexes() {
+        SQLiteDatabase database = SQLiteDatabase.create(null);
+        try {
+            database.execSQL(SQL_CREATE_INVENTORY_TABLE_V1);
+            database.execSQL("INSERT INTO inventory (product, price, quantity, supplier, supplierN)"
+                    + " VALUES ('Television', 600, 5, 'Samsung', '18007267864')");
+
+            mDbHelper.onUpgrade(database, 1, mDatabase.getVersion());
+
+            assertEquals(1, DatabaseUtils.queryNumEntries(database, InventoryEntry.TABLE_NAME));
+            assertTrue(hasIndex(database, InventoryDbHelper.INDEX_PRODUCT_NAME));
+            assertTrue(hasIndex(database, InventoryDbHelper.INDEX_PRODUCT_SUPPLIER_ID));
+            assertTrue(hasIndex(database, InventoryDbHelper.INDEX_SUPPLIER_NAME));
+            assertTrue(hasIndex(database, InventoryDbHelper.INDEX_PRODUCT_QUANTITY));
+            assertTrue(hasIndex(database, InventoryDbHelper.INDEX_NAME_SORT));
+            assertTrue(hasIndex(database, InventoryDbHelper.INDEX_PRICE_SORT));
+        } finally {
+            database.close();
+        }
+    }
+
+    @Test
+    public void upgradeToSuppliers_mergesSuppliersAndKeepsIds() {
+        SQLiteDatabase database = SQLiteDatabase.create(null);
+        try {
+            database.execSQL(SQL_CREATE_INVENTORY_TABLE_V1);
+            database.execSQL("INSERT INTO inventory (product, price, quantity, supplier, supplierN)"
+                    + " VALUES ('Television', 600, 5, 'Samsung', '18007267864')");
+            database.execSQL("INSERT INTO inventory (product, price, quantity, supplier, supplierN)"
+                    + " VALUES ('Phone', 300, 0, 'SAMSUNG', '18002255288')");
+            database.execSQL("INSERT INTO inventory (product, price, quantity, supplier, supplierN)"
+                    + " VALUES ('Fridge', 900, 1, 'LG', '18002430000')");
+            database.execSQL("DELETE FROM inventory WHERE product = 'Fridge'");
+
+            mDbHelper.onUpgrade(database, 1, mDatabase.getVersion());
+
+            // The number of the product added last wins
+            assertEquals(1, DatabaseUtils.queryNumEntries(database, SupplierEntry.TABLE_NAME));
+            assertEquals("1|SAMSUNG|18002255288,2|SAMSUNG|18002255288",
+                    DatabaseUtils.stringForQuery(database, "SELECT group_concat(_id || '|' || supplier"
+                            + " || '|' || supplierN) FROM " + InventoryDbHelper.PRODUCTS_VIEW_NAME, null));
+
+            // _ids of deleted products aren't used again
+            insertProduct(database, "Radio", 50, 1, "Samsung");
+            assertEquals(4, DatabaseUtils.longForQuery(database, "SELECT MAX(_id) FROM inventory", null));
+        } finally {
+            database.close();
+        }
+    }
+
+    @Test
+    public void backUp_writesRestorableCopy() throws IOException {
+        Context context = InstrumentationRegistry.getTargetContext();
+        InventoryDbHelper dbHelper = new InventoryDbHelper(context, "backup-test.db");
+        File backup = new File(context.getCacheDir(), "backup-test-copy.db");
+        try {
+            insertProduct(dbHelper.getWritableDatabase(), "Television", 600, 5, "Samsung");
+            backup.delete();
+
+            dbHelper.backUpTo(backup);
+
+            InventoryDbHelper.checkBackup(backup);
+            SQLiteDatabase copy = SQLiteDatabase.openDatabase(backup.getPath(), null,
+                    SQLiteDatabase.OPEN_READONLY);
+            try {
+                assertEquals(1, DatabaseUtils.queryNumEntries(copy, InventoryEntry.TABLE_NAME));
+            } finally {
+                copy.close();
+            }
+        } finally {
+            dbHelper.close();
+            context.deleteDatabase("backup-test.db");
+            backup.delete();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void checkBackup_rejectsOtherFiles() throws IOException {
+        File file = File.createTempFile("not-a-backup", ".db",
+                InstrumentationRegistry.getTargetContext().getCacheDir());
+        try {
+            SQLiteDatabase other = SQLiteDatabase.openOrCreateDatabase(file, null);
+            other.execSQL("CREATE TABLE notes (text TEXT)");
+            other.setVersion(1);
+            other.close();
+
+            InventoryDbHelper.checkBackup(file);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void catalogPage_usesPrimaryKey() {
+        String plan = explain("SELECT _id, product, price, quantity FROM inventory"
+                + " WHERE _id > ? ORDER BY _id LIMIT 50", "100");
+
+        assertTrue(plan, plan.contains("INTEGER PRIMARY KEY"));
+        assertFalse(plan, plan.contains("TEMP B-TREE"));
+    }
+
+    @Test
+    public void sortedPage_walksSortIndex() {
+        assertWalksIndex(InventoryEntry.TABLE_NAME, InventoryDbHelper.SORT_KEY_NAME,
+                InventoryDbHelper.INDEX_NAME_SORT, "Television");
+        assertWalksIndex(InventoryEntry.TABLE_NAME, InventoryDbHelper.SORT_KEY_PRICE,
+                InventoryDbHelper.INDEX_PRICE_SORT, "600");
+        assertWalksIndex(InventoryEntry.TABLE_NAME, InventoryDbHelper.SORT_KEY_QUANTITY,
+                InventoryDbHelper.INDEX_PRODUCT_QUANTITY, "5");
+        assertWalksIndex(InventoryDbHelper.PRODUCTS_BY_SUPPLIER_VIEW_NAME, InventoryDbHelper.SORT_KEY_SUPPLIER,
+                InventoryDbHelper.INDEX_SUPPLIER_NAME, "Samsung");
+    }
+
+    @Test
+    public void lookupByName_usesNameIndex() {
+        String plan = explain("SELECT _id FROM inventory WHERE product = ?", "Television");
+
+        assertTrue(plan, plan.contains(InventoryDbHelper.INDEX_PRODUCT_NAME));
+    }
+
+    @Test
+    public void lookupBySku_usesSkuIndex() {
+        String plan = explain("SELECT _id FROM inventory WHERE sku = ?", "TV-55-001");
+
+        assertTrue(plan, plan.contains(InventoryDbHelper.INDEX_PRODUCT_SKU));
+    }
+
+    @Test
+    public void lookupBySupplier_usesSupplierIndexes() {
+        String plan = explain("SELECT _id FROM " + InventoryDbHelper.PRODUCTS_VIEW_NAME + " WHERE supplier = ?",
+                "Samsung");
+
+        assertTrue(plan, plan.contains(InventoryDbHelper.INDEX_SUPPLIER_NAME));
+        assertTrue(plan, plan.contains(InventoryDbHelper.INDEX_PRODUCT_SUPPLIER_ID));
+    }
+
+    @Test
+    public void productWithSupplier_usesPrimaryKeys() {
+        String plan = explain("SELECT * FROM " + InventoryDbHelper.PRODUCTS_VIEW_NAME + " WHERE _id = ?", "1");
+
+        assertFalse(plan, plan.contains("SCAN"));
+    }
+
+    @Test
+    public void outOfStock_usesQuantityIndex() {
+        String plan = explain("SELECT _id FROM inventory WHERE quantity = ?", "0");
+
+        assertTrue(plan, plan.contains(InventoryDbHelper.INDEX_PRODUCT_QUANTITY));
+    }
+
+    @Test
+    public void lowStock_usesPartialIndex() {
+        String plan = explain("SELECT _id, product, quantity FROM inventory WHERE "
+                + InventoryDbHelper.LOW_STOCK_SELECTION + " ORDER BY quantity");
+
+        assertTrue(plan, plan.contains(InventoryDbHelper.INDEX_LOW_STOCK));
+        assertFalse(plan, plan.contains("TEMP B-TREE"));
+    }
+
+    @Test
+    public void lowStock_marksChangedProductsDirty() {
+        insertProduct(mDatabase, "Television", 600, 5, "Samsung");
+        insertProduct(mDatabase, "Phone", 300, 5, "Samsung");
+        mDatabase.delete(InventoryDbHelper.LOW_STOCK_DIRTY_TABLE_NAME, null, null);
+
+        mDatabase.execSQL("UPDATE inventory SET price = 700 WHERE product = 'Television'");
+        mDatabase.execSQL("UPDATE inventory SET quantity = 1 WHERE product = 'Phone'");
+
+        assertEquals(1, DatabaseUtils.queryNumEntries(mDatabase, InventoryDbHelper.LOW_STOCK_DIRTY_TABLE_NAME));
+    }
+
+    @Test
+    public void quantityAtTime_usesLedgerIndex() {
+        String plan = explain("SELECT quantity FROM stock_ledger WHERE product_id = ? AND time <= ?"
+                + " ORDER BY time DESC, _id DESC LIMIT 1", "1", "1500000000000");
+
+        assertTrue(plan, plan.contains(InventoryDbHelper.INDEX_STOCK_LEDGER_PRODUCT_TIME));
+        assertFalse(plan, plan.contains("TEMP B-TREE"));
+    }
+
+    @Test
+    public void compactLedger_keepsOneSnapshotPerProductAndDay() {
+        insertLedgerHistory();
+
+        assertEquals(5, mDbHelper.compactLedger(NOW));
+
+        assertEquals("5|5|" + (DAY_0 + HOUR * 5) + "\n-1|4|" + (DAY_1 + HOUR) + "\n",
+                snapshotsOf(1));
+        assertEquals("4|4|" + (DAY_0 + HOUR * 3) + "\n", snapshotsOf(2));
+        // The entry within the retention period is kept as it is
+        assertEquals(4, DatabaseUtils.queryNumEntries(mDatabase, StockLedgerEntry.TABLE_NAME));
+
+        assertEquals(0, mDbHelper.compactLedger(NOW));
+    }
+
+    @Test
+    public void quantityAt_followsCompactedLedger() {
+        insertLedgerHistory();
+        assertEquals(7, mDbHelper.queryQuantityAt(1, DAY_0 + HOUR * 3));
+
+        mDbHelper.compactLedger(NOW);
+
+        assertEquals(-1, mDbHelper.queryQuantityAt(1, DAY_0));
+        // Within a compacted day only the quantity at its end is left
+        assertEquals(-1, mDbHelper.queryQuantityAt(1, DAY_0 + HOUR * 3));
+        assertEquals(5, mDbHelper.queryQuantityAt(1, DAY_0 + HOUR * 5));
+        assertEquals(5, mDbHelper.queryQuantityAt(1, DAY_0 + HOUR * 6));
+        assertEquals(4, mDbHelper.queryQuantityAt(1, DAY_1 + HOUR * 2));
+        assertEquals(3, mDbHelper.queryQuantityAt(1, NOW));
+        assertEquals(4, mDbHelper.queryQuantityAt(2, NOW));
+    }
+
+    @Test
+    public void modified_followsProductChanges() {
+        insertProduct(mDatabase, "Television", 600, 5, "Samsung");
+        assertTrue(modifiedTime() > 0);
+
+        mDatabase.execSQL("UPDATE inventory SET modified = 0");
+        mDatabase.execSQL("UPDATE inventory SET quantity = 4");
+        assertTrue(modifiedTime() > 0);
+
+        mDatabase.execSQL("UPDATE inventory SET modified = 0");
+        mDatabase.execSQL("UPDATE suppliers SET phone_number = '18002255288'");
+        assertTrue(modifiedTime() > 0);
+
+        mDatabase.execSQL("UPDATE inventory SET modified = 0");
+        mDatabase.execSQL("UPDATE inventory SET photo_time = 1");
+        assertTrue(modifiedTime() > 0);
+    }
+
+    @Test
+    public void search_usesFullTextIndex() {
+        String plan = explain("SELECT _id, product, price, quantity FROM inventory"
+                + " WHERE _id IN (SELECT docid FROM " + InventoryDbHelper.SEARCH_TABLE_NAME
+                + " WHERE " + InventoryDbHelper.SEARCH_TABLE_NAME + " MATCH ?)", "tele*");
+
+        assertTrue(plan, plan.contains("VIRTUAL TABLE INDEX"));
+        assertTrue(plan, plan.contains("INTEGER PRIMARY KEY"));
+    }
+
+    @Test
+    public void search_followsProductChanges() {
+        insertProduct(mDatabase, "Television", 600, 5, "Samsung");
+        assertEquals(1, countMatches("tele*"));
+        assertEquals(1, countMatches("sams*"));
+
+        mDatabase.execSQL("UPDATE inventory SET product = 'Radio'");
+        assertEquals(0, countMatches("tele*"));
+        assertEquals(1, countMatches("radi*"));
+
+        mDatabase.execSQL("DELETE FROM inventory");
+        assertEquals(0, countMatches("radi*"));
+    }
+
+    @Test
+    public void stats_followProductChanges() {
+        insertProduct(mDatabase, "Television", 600, 5, "Samsung");
+        insertProduct(mDatabase, "Phone", 300, 0, "Samsung");
+        assertEquals("Samsung|2|5|3000|1", statsOf("Samsung"));
+
+        mDatabase.execSQL("INSERT INTO suppliers (name, phone_number) VALUES ('LG', '18002430000')");
+        mDatabase.execSQL("UPDATE inventory SET quantity = 2, supplier_id ="
+                + " (SELECT _id FROM suppliers WHERE name = 'LG') WHERE product = 'Phone'");
+        assertEquals("Samsung|1|5|3000|0", statsOf("Samsung"));
+        assertEquals("LG|1|2|600|0", statsOf("LG"));
+
+        mDatabase.execSQL("DELETE FROM inventory WHERE product = 'Phone'");
+        assertEquals(1, DatabaseUtils.queryNumEntries(mDatabase, StatsEntry.TABLE_NAME));
+    }
+
+    /**
+     * Insert the stock history of two products over two days long past the retention period
+     * and, for the first product, an hour before {@link #NOW}.
+     */
+    private void insertLedgerHistory() {
+        insertLedgerEntry(1, StockLedgerEntry.KIND_RESTOCK, 10, 10, DAY_0 + HOUR);
+        insertLedgerEntry(1, StockLedgerEntry.KIND_SALE, -3, 7, DAY_0 + HOUR * 2);
+        insertLedgerEntry(2, StockLedgerEntry.KIND_RESTOCK, 4, 4, DAY_0 + HOUR * 3);
+        insertLedgerEntry(1, StockLedgerEntry.KIND_SALE, -2, 5, DAY_0 + HOUR * 5);
+        insertLedgerEntry(1, StockLedgerEntry.KIND_SALE, -1, 4, DAY_1 + HOUR);
+        insertLedgerEntry(1, StockLedgerEntry.KIND_SALE, -1, 3, NOW - HOUR);
+    }
+
+    private void insertLedgerEntry(long productId, String kind, int delta, int quantity, long time) {
+        mDatabase.execSQL("INSERT INTO stock_ledger (product_id, kind, delta, quantity, time)"
+                + " VALUES (?, ?, ?, ?, ?)", new Object[]{productId, kind, delta, quantity, time});
+    }
+
+    /**
+     * Return the snapshots of the product in time order, one per line, with their delta,
+     * quantity and time separated by bars.
+     */
+    private String snapshotsOf(long productId) {
+        StringBuilder snapshots = new StringBuilder();
+
+        Cursor cursor = mDatabase.rawQuery("SELECT delta, quantity, time FROM stock_ledger"
+                + " WHERE product_id = ? AND kind = ? ORDER BY time",
+                new String[]{String.valueOf(productId), StockLedgerEntry.KIND_SNAPSHOT});
+        try {
+            while (cursor.moveToNext()) {
+                snapshots.append(cursor.getInt(0)).append('|').append(cursor.getInt(1)).append('|')
+                        .append(cursor.getLong(2)).append('\n');
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return snapshots.toString();
+    }
+
+    /**
+     * Return the stats row of the supplier, with its columns separated by bars.
+     */
+    private String statsOf(String supplier) {
+        return DatabaseUtils.stringForQuery(mDatabase, "SELECT supplier || '|' || products || '|' || units"
+                + " || '|' || value || '|' || out_of_stock FROM " + StatsEntry.TABLE_NAME
+                + " WHERE supplier = ?", new String[]{supplier});
+    }
+
+    /**
+     * Insert a product of the given supplier, adding the supplier if it is new.
+     */
+    private static void insertProduct(SQLiteDatabase database, String product, int price, int quantity,
+                                      String supplier) {
+        database.execSQL("INSERT OR IGNORE INTO suppliers (name, phone_number) VALUES (?, '18007267864')",
+                new Object[]{supplier});
+        database.execSQL("INSERT INTO inventory (product, price, quantity, supplier_id)"
+                + " SELECT ?, ?, ?, _id FROM suppliers WHERE name = ?", new Object[]{product, price, quantity, supplier});
+    }
+
+    private long modifiedTime() {
+        return DatabaseUtils.longForQuery(mDatabase, "SELECT modified FROM inventory", null);
+    }
+
+    private long countMatches(String match) {
+        return DatabaseUtils.longForQuery(mDatabase, "SELECT COUNT(*) FROM "
+                + InventoryDbHelper.SEARCH_TABLE_NAME + " WHERE "
+                + InventoryDbHelper.SEARCH_TABLE_NAME + " MATCH ?", new String[]{match});
+    }
+
+    /**
+     * Assert that the first page of in-stock products read from the given table or view sorted
+     * by the given key, and the page after a product with the given value of it, are read by
+     * walking the given index without sorting.
+     */
+    private void assertWalksIndex(String source, String sortKey, String index, String afterValue) {
+        String select = "SELECT _id, product, price, quantity FROM " + source + " WHERE "
+                + InventoryDbHelper.IN_STOCK_SELECTION;
+        String orderBy = " ORDER BY " + sortKey + ", _id LIMIT 50";
+
+        String plan = explain(select + orderBy);
+        assertTrue(plan, plan.contains(index));
+        assertFalse(plan, plan.contains("TEMP B-TREE"));
+
+        plan = explain(select + " AND " + sortKey + ">=? AND (" + sortKey + ">? OR _id>?)" + orderBy,
+                afterValue, afterValue, "100");
+        assertTrue(plan, plan.contains(index));
+        assertFalse(plan, plan.contains("TEMP B-TREE"));
+    }
+
+    /**
+     * Return the details of the query plan SQLite picks for the given query, one step per line.
+     */
+    private String explain(String sql, String... selectionArgs) {
+        StringBuilder plan = new StringBuilder();
+
+        Cursor cursor = mDatabase.rawQuery("EXPLAIN QUERY PLAN " + sql, selectionArgs);
+        try {
+            int detailColumnIndex = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()) {
+                plan.append(cursor.getString(detailColumnIndex)).append('\n');
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return plan.toString();
+    }
+
+    private static boolean hasIndex(SQLiteDatabase database, String name) {
+        return DatabaseUtils.longForQuery(database,
+                "SELECT COUNT(*) FROM sqlite_master WHERE type = 'index' AND name = ?",
+                new String[]{name}) == 1;
+    }
+}
@@ -0,0 +1,185 @@
+package com.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.data.InventoryContract.InventoryEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares the latency of the hot write paths before and after they were moved to
+ * {@link InventoryStatements}. Each operation runs in its own transaction on a database file,
+ * the way the provider runs it. The results are logged under the tag of this class.
+ */
+@RunWith(AndroidJUnit4.class)
+public class InventoryStatementsBenchmark {
+
+    private static final String LOG_TAG = InventoryStatementsBenchmark.class.getSimpleName();
+
+    private static final String DATABASE_NAME = "inventory_benchmark.db";
+
+    private static final int WARMUP_OPERATIONS = 200;
+    private static final int MEASURED_OPERATIONS = 2000;
+
+    private Context mContext;
+    private InventoryDbHelper mDbHelper;
+    private SQLiteDatabase mDatabase;
+    private InventoryStatements mStatements;
+
+    /**
+     * The supplier of every product, which the provider would look up before inserting each.
+     */
+    private long mSupplierId;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mContext.deleteDatabase(DATABASE_NAME);
+        mDbHelper = new InventoryDbHelper(mContext, DATABASE_NAME);
+        mDatabase = mDbHelper.getWritableDatabase();
+        mStatements = new InventoryStatements(mDatabase);
+        mSupplierId = mStatements.insertSupplier("Supplier", "18000000");
+    }
+
+    @After
+    public void tearDown() {
+        mStatements.close();
+        mDbHelper.close();
+        mContext.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void insert() {
+        long[] before = measure(new Operation() {
+            @Override
+            public void run(int i) {
+                mDatabase.insert(InventoryEntry.TABLE_NAME, null, product(i));
+            }
+        });
+        long[] after = measure(new Operation() {
+            @Override
+            public void run(int i) {
+                mStatements.insertProduct(product(i), mSupplierId);
+            }
+        });
+
+        report("insert", before, after);
+        assertEquals(2 * (WARMUP_OPERATIONS + MEASURED_OPERATIONS),
+                DatabaseUtils.queryNumEntries(mDatabase, InventoryEntry.TABLE_NAME));
+    }
+
+    @Test
+    public void sale() {
+        final long id = mDatabase.insert(InventoryEntry.TABLE_NAME, null, product(0));
+        final int stock = 2 * (WARMUP_OPERATIONS + MEASURED_OPERATIONS);
+        mStatements.adjustQuantity(id, stock);
+
+        // What adjusting a quantity did before: compile the statement for every call and read
+        // the new quantity back with a query built from strings
+        long[] before = measure(new Operation() {
+            @Override
+            public void run(int i) {
+                SQLiteStatement adjust = mDatabase.compileStatement("UPDATE " + InventoryEntry.TABLE_NAME
+                        + " SET " + InventoryEntry.COLUMN_PRODUCT_QUANTITY + " = "
+                        + InventoryEntry.COLUMN_PRODUCT_QUANTITY + " + ?"
+                        + " WHERE " + InventoryEntry._ID + " = ?"
+                        + " AND " + InventoryEntry.COLUMN_PRODUCT_QUANTITY + " + ? >= 0");
+                try {
+                    adjust.bindLong(1, -1);
+                    adjust.bindLong(2, id);
+                    adjust.bindLong(3, -1);
+                    if (adjust.executeUpdateDelete() == 1) {
+                        DatabaseUtils.longForQuery(mDatabase, "SELECT "
+                                        + InventoryEntry.COLUMN_PRODUCT_QUANTITY + " FROM " + InventoryEntry.TABLE_NAME
+                                        + " WHERE " + InventoryEntry._ID + " = ?",
+                                new String[]{String.valueOf(id)});
+                    }
+                } finally {
+                    adjust.close();
+                }
+            }
+        });
+        long[] after = measure(new Operation() {
+            @Override
+            public void run(int i) {
+                if (mStatements.adjustQuantity(id, -1)) {
+                    mStatements.queryQuantity(id);
+                }
+            }
+        });
+
+        report("sale", before, after);
+        assertEquals(0, mStatements.queryQuantity(id));
+    }
+
+    private interface Operation {
+        void run(int i);
+    }
+
+    /**
+     * Run the operation in its own transaction, first to warm up and then to measure. Return the
+     * sorted latencies of the measured runs, in nanoseconds.
+     */
+    private long[] measure(Operation operation) {
+        for (int i = 0; i < WARMUP_OPERATIONS; i++) {
+            runInTransaction(operation, i);
+        }
+
+        long[] latencies = new long[MEASURED_OPERATIONS];
+        for (int i = 0; i < MEASURED_OPERATIONS; i++) {
+            long start = System.nanoTime();
+            runInTransaction(operation, i);
+            latencies[i] = System.nanoTime() - start;
+        }
+
+        Arrays.sort(latencies);
+        return latencies;
+    }
+
+    private void runInTransaction(Operation operation, int i) {
+        mDatabase.beginTransactionNonExclusive();
+        try {
+            operation.run(i);
+            mDatabase.setTransactionSuccessful();
+        } finally {
+            mDatabase.endTransaction();
+        }
+    }
+
+    private static void report(String name, long[] before, long[] after) {
+        Log.i(LOG_TAG, String.format("%s: median %.1f -> %.1f us, p95 %.1f -> %.1f us", name,
+                percentile(before, 50), percentile(after, 50),
+                percentile(before, 95), percentile(after, 95)));
+    }
+
+    /**
+     * Return the given percentile of the sorted latencies, in microseconds.
+     */
+    private static double percentile(long[] sortedLatencies, int percentile) {
+        int index = Math.min(sortedLatencies.length - 1, sortedLatencies.length * percentile / 100);
+        return sortedLatencies[index] / 1000.0;
+    }
+
+    private ContentValues product(int i) {
+        ContentValues values = new ContentValues();
+        values.put(InventoryEntry.COLUMN_PRODUCT_NAME, "Product " + i);
+        values.put(InventoryEntry.COLUMN_PRODUCT_PRICE, 100 + i);
+        values.put(InventoryEntry.COLUMN_PRODUCT_QUANTITY, 0);
+        values.put(InventoryEntry.COLUMN_PRODUCT_SUPPLIER_ID, mSupplierId);
+        return values;
+    }
+}
@@ -54,7 +54,9 @@ public class dummydata {
         ViewInteraction appCompatButton = onView(
                 allOf(withId(R.id.sale_button), withText("Sale"),
                         childAtPosition(
-                                withParent(withId(R.id.list)),
+                                childAtPosition(
+                                        withParent(withId(R.id.list)),
+                                        1),
                                 3),
                         isDisplayed()));
         appCompatButton.perform(click());
@@ -9,6 +9,32 @@ public final class InventoryContract {
     public static final String CONTENT_AUTHORITY = "com.example.android.inventory";
     public static final Uri BASE_CONTENT_URI = Uri.parse("content://" + CONTENT_AUTHORITY);
     public static final String PATH_INVENTORY = "inventory";
+    public static final String PATH_PENDING_SALES = "pending_sales";
+    public static final String PATH_SEARCH = "search";
+    public static final String PATH_LOW_STOCK = "low_stock";
+    public static final String PATH_STATS = "stats";
+    public static final String PATH_SUPPLIERS = "suppliers";
+    public static final String PATH_STOCK_LEDGER = "stock_ledger";
+    public static final String PATH_METRICS = "metrics";
+    public static final String PATH_PHOTO = "photo";
+    public static final String PATH_THUMBNAIL = "thumbnail";
+    public static final String PATH_SKU = "sku";
+
+    /**
+     * Name of the {@link ContentResolver#call} method that writes a consistent copy of the whole
+     * database to the file whose path is passed as the argument. The file must not exist.
+     */
+    public static final String METHOD_BACK_UP_DATABASE = "backUpDatabase";
+
+    /**
+     * Name of the {@link ContentResolver#call} method that replaces the whole database with the
+     * backup whose path is passed as the argument. The file is moved into place rather than
+     * copied, so it must be on the same file system as the database, such as in the directory
+     * of {@link android.content.Context#getDatabasePath}. Throws an
+     * {@link IllegalArgumentException} if the file isn't a backup of this database, in which case
+     * the database is left as it was.
+     */
+    public static final String METHOD_RESTORE_DATABASE = "restoreDatabase";
 
     private InventoryContract() {
     }
@@ -16,14 +42,184 @@ public final class InventoryContract {
     public static final class InventoryEntry implements BaseColumns {
 
         public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_INVENTORY);
+
+        /**
+         * Searches products by name and supplier. Append the text to search for with
+         * {@link Uri.Builder#appendPath}, which encodes it as a single segment; every word of it
+         * matches words starting with it. Supports {@link #QUERY_PARAMETER_LIMIT}.
+         */
+        public static final Uri SEARCH_URI = Uri.withAppendedPath(CONTENT_URI, PATH_SEARCH);
+
+        /**
+         * The products whose quantity has dropped to their reorder threshold or below, lowest
+         * quantity first unless another sort order is given.
+         */
+        public static final Uri LOW_STOCK_URI = Uri.withAppendedPath(CONTENT_URI, PATH_LOW_STOCK);
+
+        /**
+         * Looks up the product with a given SKU. Append the SKU with {@link #getSkuUri}.
+         */
+        public static final Uri SKU_URI = Uri.withAppendedPath(CONTENT_URI, PATH_SKU);
+
         public static final String TABLE_NAME = "inventory";
         public static final String _ID = BaseColumns._ID;
         public static final String COLUMN_PRODUCT_NAME = "product";
         public static final String COLUMN_PRODUCT_PRICE = "price";
         public static final String COLUMN_PRODUCT_QUANTITY = "quantity";
+
+        /**
+         * Name and phone number of the supplier of the product. They are stored once per
+         * supplier in {@link SupplierEntry} and joined in when read, so leave them out of
+         * projections that don't need them. Writing a name that isn't known yet adds the
+         * supplier, which then needs a number too; writing a number changes it for every product
+         * of the supplier, and can only be done together with the name.
+         */
         public static final String COLUMN_PRODUCT_SUPPLIER = "supplier";
         public static final String COLUMN_PRODUCT_SUPPLIER_NUMBER = "supplierN";
 
+        /**
+         * _id of the supplier of the product in {@link SupplierEntry}. Set by the provider from
+         * {@link #COLUMN_PRODUCT_SUPPLIER}; read-only.
+         */
+        public static final String COLUMN_PRODUCT_SUPPLIER_ID = "supplier_id";
+
+        /**
+         * Quantity at or below which the product needs to be reordered. Optional, 0 by default.
+         */
+        public static final String COLUMN_PRODUCT_REORDER_THRESHOLD = "reorder_threshold";
+
+        /**
+         * When the product was inserted or last changed, in milliseconds since the epoch. Set by
+         * the database; read-only.
+         */
+        public static final String COLUMN_PRODUCT_MODIFIED = "modified";
+
+        /**
+         * When the photo of the product was last set, in milliseconds since the epoch, or 0 if
+         * it has none. The photo itself is read from {@link #getPhotoUri} or
+         * {@link #getThumbnailUri}; this changes whenever it does, so it can key caches of it.
+         * Set by the provider; read-only.
+         */
+        public static final String COLUMN_PRODUCT_PHOTO_TIME = "photo_time";
+
+        /**
+         * Stock keeping unit of the product, such as the code on its barcode. Optional, but no
+         * two products may have the same one.
+         */
+        public static final String COLUMN_PRODUCT_SKU = "sku";
+
+        /**
+         * Query parameter for {@link #CONTENT_URI} that limits the number of products returned.
+         */
+        public static final String QUERY_PARAMETER_LIMIT = "limit";
+
+        /**
+         * Query parameter for {@link #CONTENT_URI} that only returns the products whose _id is
+         * greater than the given one, in _id order. Together with {@link #QUERY_PARAMETER_LIMIT}
+         * this reads the catalog one page at a time, each page starting right after the last _id
+         * of the previous one, without the database having to skip over the earlier pages.
+         *
+         * With {@link #QUERY_PARAMETER_SORT}, it only returns the products that sort after the
+         * one with the given _id and {@link #QUERY_PARAMETER_AFTER_VALUE}. It cannot be combined
+         * with a sort order.
+         */
+        public static final String QUERY_PARAMETER_AFTER_ID = "after_id";
+
+        /**
+         * Query parameter for {@link #CONTENT_URI} that orders the products by one of
+         * {@link #SORT_NAME}, {@link #SORT_PRICE}, {@link #SORT_QUANTITY} or
+         * {@link #SORT_SUPPLIER}, then by _id. Names and suppliers are ordered ignoring case. It
+         * cannot be combined with a sort order.
+         */
+        public static final String QUERY_PARAMETER_SORT = "sort";
+
+        public static final String SORT_NAME = "name";
+        public static final String SORT_PRICE = "price";
+        public static final String SORT_QUANTITY = "quantity";
+        public static final String SORT_SUPPLIER = "supplier";
+
+        /**
+         * Query parameter for {@link #CONTENT_URI} holding the value of the sort column of the
+         * last product of the previous page, which together with its
+         * {@link #QUERY_PARAMETER_AFTER_ID} is where a page of a sorted catalog starts after.
+         */
+        public static final String QUERY_PARAMETER_AFTER_VALUE = "after_value";
+
+        /**
+         * Query parameter for {@link #CONTENT_URI} that only returns the products in stock when
+         * set to true.
+         */
+        public static final String QUERY_PARAMETER_IN_STOCK = "in_stock";
+
+        /**
+         * Query parameter for {@link #CONTENT_URI} that only returns the products inserted or
+         * changed at or after the given time, in milliseconds since the epoch. Deleted products
+         * are not returned.
+         */
+        public static final String QUERY_PARAMETER_CHANGED_SINCE = "changed_since";
+
+        /**
+         * Name of the {@link ContentResolver#call} method that adds {@link #EXTRA_QUANTITY_DELTA}
+         * to the quantity of the product whose _id is passed as the argument. The result holds
+         * the new quantity under {@link #EXTRA_QUANTITY}, or is null if the product does not exist
+         * or the quantity would drop below zero.
+         */
+        public static final String METHOD_ADJUST_QUANTITY = "adjustQuantity";
+        public static final String EXTRA_QUANTITY_DELTA = "quantityDelta";
+        public static final String EXTRA_QUANTITY = "quantity";
+
+        /**
+         * Name of the {@link ContentResolver#call} method that adds {@link #EXTRA_QUANTITY_DELTA}
+         * to the quantity of the product whose SKU is passed as the argument, for selling what a
+         * scanner reads in a single call. The result holds the _id of the product under
+         * {@link #EXTRA_PRODUCT_ID} and its quantity under {@link #EXTRA_QUANTITY}, which is left
+         * as it was if it would drop below zero, in which case {@link #EXTRA_QUANTITY_ADJUSTED}
+         * is false. The result is null if no product has the SKU.
+         */
+        public static final String METHOD_ADJUST_QUANTITY_BY_SKU = "adjustQuantityBySku";
+        public static final String EXTRA_PRODUCT_ID = "productId";
+        public static final String EXTRA_QUANTITY_ADJUSTED = "quantityAdjusted";
+
+        /**
+         * Name of the {@link ContentResolver#call} method that checks the products that changed
+         * since it was last called for ones that have newly dropped to their reorder threshold.
+         * The result holds their _ids under {@link #EXTRA_LOW_STOCK_IDS}. A product is reported
+         * again only after it has been restocked above its threshold in between.
+         */
+        public static final String METHOD_CHECK_LOW_STOCK = "checkLowStock";
+        public static final String EXTRA_LOW_STOCK_IDS = "lowStockIds";
+
+        /**
+         * Name of the {@link ContentResolver#call} method that reports how well the cache of
+         * single product rows is doing: the number of rows it holds under
+         * {@link #EXTRA_CACHE_SIZE}, and since the provider started, the number of lookups it
+         * answered under {@link #EXTRA_CACHE_HITS}, the number it didn't under
+         * {@link #EXTRA_CACHE_MISSES} and the number of rows dropped to make room under
+         * {@link #EXTRA_CACHE_EVICTIONS}.
+         */
+        public static final String METHOD_GET_ROW_CACHE_STATS = "getRowCacheStats";
+        public static final String EXTRA_CACHE_SIZE = "cacheSize";
+        public static final String EXTRA_CACHE_HITS = "cacheHits";
+        public static final String EXTRA_CACHE_MISSES = "cacheMisses";
+        public static final String EXTRA_CACHE_EVICTIONS = "cacheEvictions";
+
+        /**
+         * Name of the {@link ContentResolver#call} method that sets the photo of the product whose
+         * _id is passed as the argument to a copy of the image at the {@link Uri} passed as
+         * {@link #EXTRA_PHOTO_SOURCE}, or removes it if there is none. The result holds the new
+         * {@link #COLUMN_PRODUCT_PHOTO_TIME} under {@link #EXTRA_PHOTO_TIME}, or is null if the
+         * product does not exist. Throws an {@link IllegalArgumentException} if the source isn't
+         * an image. Photos are not part of database backups.
+         */
+        public static final String METHOD_SET_PHOTO = "setPhoto";
+        public static final String EXTRA_PHOTO_SOURCE = "photoSource";
+        public static final String EXTRA_PHOTO_TIME = "photoTime";
+
+        /**
+         * The MIME type of the thumbnails of products. Photos have the type of the image they
+         * were set from.
+         */
+        public static final String THUMBNAIL_TYPE = "image/jpeg";
 
         /**
          * The MIME type of the {@link #CONTENT_URI} for a list of products.
@@ -37,5 +233,232 @@ public final class InventoryContract {
         public static final String CONTENT_ITEM_TYPE =
                 ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_INVENTORY;
 
+        /**
+         * Return the URI of the product with the given SKU. Querying it returns one row, or none
+         * if no product has the SKU. The SKU is encoded as a single segment, so it may hold any
+         * character.
+         */
+        public static Uri getSkuUri(String sku) {
+            return SKU_URI.buildUpon().appendPath(sku).build();
+        }
+
+        /**
+         * Return the URI of the full size photo of the given product, which can be opened for
+         * reading. Opening it fails with a {@link java.io.FileNotFoundException} if the product
+         * has no photo.
+         */
+        public static Uri getPhotoUri(long id) {
+            return CONTENT_URI.buildUpon().appendPath(String.valueOf(id)).appendPath(PATH_PHOTO).build();
+        }
+
+        /**
+         * Return the URI of a small copy of the photo of the given product, at most a few hundred
+         * pixels across, for showing it in lists. Opened the same way as {@link #getPhotoUri}.
+         */
+        public static Uri getThumbnailUri(long id) {
+            return CONTENT_URI.buildUpon().appendPath(String.valueOf(id)).appendPath(PATH_THUMBNAIL).build();
+        }
+
+    }
+
+    /**
+     * The suppliers products are bought from, one per name, with names matched ignoring case.
+     * There is no URI of its own: suppliers are added and changed through the supplier columns
+     * of the products in {@link InventoryEntry}.
+     */
+    public static final class SupplierEntry implements BaseColumns {
+
+        public static final String TABLE_NAME = "suppliers";
+        public static final String _ID = BaseColumns._ID;
+        public static final String COLUMN_NAME = "name";
+        public static final String COLUMN_PHONE_NUMBER = "phone_number";
+
+    }
+
+    /**
+     * Journal of sales that have been recorded at the counter but not yet applied to the
+     * quantity of the product. Rows are appended one at a time and applied in batches.
+     */
+    public static final class PendingSaleEntry implements BaseColumns {
+
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_PENDING_SALES);
+        public static final String TABLE_NAME = "pending_sales";
+        public static final String _ID = BaseColumns._ID;
+        public static final String COLUMN_PRODUCT_ID = "product_id";
+        public static final String COLUMN_QUANTITY_DELTA = "delta";
+
+        /**
+         * Name of the {@link ContentResolver#call} method that applies the journaled sales to their
+         * products in a single transaction and removes them from the journal. A sale that would
+         * make the quantity negative stays in the journal until a later call can apply it. The
+         * result holds the ids of the products with sales removed under {@link #EXTRA_PRODUCT_IDS}
+         * and the summed deltas that were removed for them under {@link #EXTRA_QUANTITY_DELTAS}.
+         */
+        public static final String METHOD_DRAIN_PENDING_SALES = "drainPendingSales";
+        public static final String EXTRA_PRODUCT_IDS = "productIds";
+        public static final String EXTRA_QUANTITY_DELTAS = "quantityDeltas";
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI} for a list of pending sales.
+         */
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_PENDING_SALES;
+
+    }
+
+    /**
+     * Every change to the quantity of a product, appended in the same transaction as the change
+     * itself and never updated. Each entry holds the change and the quantity it left, so the
+     * quantity at any point in time is that of the last entry before it. Entries older than a
+     * retention period are compacted into one {@link #KIND_SNAPSHOT} per product and day, so
+     * older history has the resolution of a day. Read-only.
+     */
+    public static final class StockLedgerEntry implements BaseColumns {
+
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_STOCK_LEDGER);
+        public static final String TABLE_NAME = "stock_ledger";
+        public static final String _ID = BaseColumns._ID;
+        public static final String COLUMN_PRODUCT_ID = "product_id";
+        public static final String COLUMN_KIND = "kind";
+        public static final String COLUMN_QUANTITY_DELTA = "delta";
+
+        /**
+         * Quantity of the product after the change.
+         */
+        public static final String COLUMN_QUANTITY = "quantity";
+
+        /**
+         * Time of the change, in milliseconds since the epoch.
+         */
+        public static final String COLUMN_TIME = "time";
+
+        /**
+         * Possible values of {@link #COLUMN_KIND}. A sale takes units away and a restock adds
+         * them, including the initial stock of a new product. A correction sets the quantity
+         * to a value entered by hand. A snapshot sums up the entries of one day that were
+         * compacted, with the quantity at the end of that day.
+         */
+        public static final String KIND_SALE = "sale";
+        public static final String KIND_RESTOCK = "restock";
+        public static final String KIND_CORRECTION = "correction";
+        public static final String KIND_SNAPSHOT = "snapshot";
+
+        /**
+         * Name of the {@link ContentResolver#call} method that returns the quantity of the
+         * product whose _id is passed as the argument at the time passed as
+         * {@link #EXTRA_TIME}. The result holds the quantity under {@link #EXTRA_QUANTITY}, or
+         * is null if the ledger has no entry for the product up to that time.
+         */
+        public static final String METHOD_GET_QUANTITY_AT = "getQuantityAt";
+        public static final String EXTRA_TIME = "time";
+        public static final String EXTRA_QUANTITY = "quantity";
+
+        /**
+         * Name of the {@link ContentResolver#call} method that compacts the entries older than
+         * the retention period right away rather than waiting for the next periodic compaction.
+         * The result holds the number of entries removed under {@link #EXTRA_COMPACTED_COUNT}.
+         */
+        public static final String METHOD_COMPACT_LEDGER = "compactLedger";
+        public static final String EXTRA_COMPACTED_COUNT = "compactedCount";
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI} for a list of ledger entries.
+         */
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_STOCK_LEDGER;
+
+    }
+
+    /**
+     * Aggregates over the whole inventory, kept up to date as products change so reading them
+     * never walks the products themselves. Read-only.
+     */
+    public static final class StatsEntry {
+
+        /**
+         * A single row with the totals over all products, without the supplier column.
+         */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_STATS);
+
+        /**
+         * One row of totals per supplier, with the supplier column.
+         */
+        public static final Uri SUPPLIERS_URI = Uri.withAppendedPath(CONTENT_URI, PATH_SUPPLIERS);
+
+        public static final String TABLE_NAME = "inventory_stats";
+        public static final String COLUMN_SUPPLIER = "supplier";
+        public static final String COLUMN_PRODUCT_COUNT = "products";
+        public static final String COLUMN_TOTAL_UNITS = "units";
+
+        /**
+         * Sum of price times quantity.
+         */
+        public static final String COLUMN_STOCK_VALUE = "value";
+        public static final String COLUMN_OUT_OF_STOCK_COUNT = "out_of_stock";
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI} for the totals.
+         */
+        public static final String CONTENT_ITEM_TYPE =
+                ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_STATS;
+
+        /**
+         * The MIME type of the {@link #SUPPLIERS_URI} for the totals per supplier.
+         */
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_STATS;
+
+        private StatsEntry() {
+        }
+    }
+
+    /**
+     * Latency and row counts of the provider's operations since its process started, one row
+     * per operation and URI pattern that has run at least once. Read-only. The same figures are
+     * printed by {@code adb shell dumpsys activity provider InventoryProvider}.
+     */
+    public static final class MetricsEntry {
+
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_METRICS);
+
+        /**
+         * One of query, insert, bulk_insert, update, delete, or notify for sending change
+         * notifications.
+         */
+        public static final String COLUMN_OPERATION = "operation";
+
+        /**
+         * The path the URIs operated on match, such as inventory/#.
+         */
+        public static final String COLUMN_URI = "uri";
+
+        /**
+         * Number of times the operation ran.
+         */
+        public static final String COLUMN_COUNT = "count";
+
+        /**
+         * Total number of rows returned, inserted, updated or deleted.
+         */
+        public static final String COLUMN_ROWS = "rows";
+
+        public static final String COLUMN_MEAN_MICROS = "mean_us";
+
+        /**
+         * Percentiles of the latency, in microseconds, accurate to within 25%.
+         */
+        public static final String COLUMN_P50_MICROS = "p50_us";
+        public static final String COLUMN_P90_MICROS = "p90_us";
+        public static final String COLUMN_P99_MICROS = "p99_us";
+        public static final String COLUMN_MAX_MICROS = "max_us";
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI}.
+         */
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_METRICS;
+
+        private MetricsEntry() {
+        }
     }
 }
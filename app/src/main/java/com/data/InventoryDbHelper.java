@@ -1,19 +1,371 @@
 package com.data;
 
 import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
 
 import com.data.InventoryContract.InventoryEntry;
+import com.data.InventoryContract.PendingSaleEntry;
+import com.data.InventoryContract.StatsEntry;
+import com.data.InventoryContract.StockLedgerEntry;
+import com.data.InventoryContract.SupplierEntry;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
 
 public class InventoryDbHelper extends SQLiteOpenHelper {
-    private static final int DATABASE_VERSION = 1;
+    private static final int DATABASE_VERSION = 12;
     private static final String DATABASE_NAME = "inventory.db";
 
+    /**
+     * Size of the write-ahead log, in pages, at which it is automatically copied back into the
+     * database. Larger than SQLite's default so bursts of sales don't each pay for a checkpoint.
+     */
+    private static final int WAL_AUTOCHECKPOINT_PAGES = 2000;
+
+    /**
+     * Page cache of the connection used for writing, in KiB.
+     */
+    private static final int WRITER_CACHE_SIZE_KIB = 8 * 1024;
+
+    /**
+     * Number of times a backup tries to find the write-ahead log empty before giving up, on
+     * versions of SQLite without VACUUM INTO.
+     */
+    private static final int BACKUP_ATTEMPTS = 5;
+
+    static final String INDEX_PRODUCT_NAME = "inventory_product_idx";
+    static final String INDEX_PRODUCT_SUPPLIER = "inventory_supplier_idx";
+    static final String INDEX_PRODUCT_QUANTITY = "inventory_quantity_idx";
+
+    /**
+     * Partial index over just the products at or below their reorder threshold.
+     */
+    static final String INDEX_LOW_STOCK = "inventory_low_stock_idx";
+
+    /**
+     * Condition a product is low on stock by, which queries must use as is for SQLite to pick
+     * {@link #INDEX_LOW_STOCK}.
+     */
+    static final String LOW_STOCK_SELECTION = InventoryEntry.COLUMN_PRODUCT_QUANTITY + " <= "
+            + InventoryEntry.COLUMN_PRODUCT_REORDER_THRESHOLD;
+
+    /**
+     * The _ids of the products inserted, deleted or changed in quantity or threshold since the
+     * low stock check last ran.
+     */
+    static final String LOW_STOCK_DIRTY_TABLE_NAME = "low_stock_dirty";
+
+    /**
+     * The _ids of the products the low stock check has reported and that haven't been restocked
+     * since.
+     */
+    static final String LOW_STOCK_ALERTS_TABLE_NAME = "low_stock_alerts";
+
+    static final String COLUMN_LOW_STOCK_PRODUCT_ID = "product_id";
+
+    static final String INDEX_STOCK_LEDGER_PRODUCT_TIME = "stock_ledger_product_time_idx";
+
+    /**
+     * How long stock ledger entries are kept as they are before being compacted into daily
+     * snapshots.
+     */
+    static final long LEDGER_RETENTION_MILLIS = TimeUnit.DAYS.toMillis(30);
+
+    static final String INDEX_PRODUCT_MODIFIED = "inventory_modified_idx";
+
+    static final String INDEX_NAME_SORT = "inventory_product_sort_idx";
+    static final String INDEX_PRICE_SORT = "inventory_price_sort_idx";
+
+    static final String INDEX_SUPPLIER_NAME = "suppliers_name_idx";
+    static final String INDEX_PRODUCT_SUPPLIER_ID = "inventory_supplier_id_idx";
+    static final String INDEX_PRODUCT_SKU = "inventory_sku_idx";
+
+    /**
+     * The products with the name and number of their supplier joined in, under the column names
+     * of {@link InventoryEntry}. Reads that don't need the supplier go to the inventory table
+     * itself and skip the join.
+     */
+    static final String PRODUCTS_VIEW_NAME = "inventory_with_supplier";
+
+    /**
+     * The same as {@link #PRODUCTS_VIEW_NAME}, but joined starting from the suppliers, so SQLite
+     * lists products sorted by {@link #SORT_KEY_SUPPLIER} by walking the supplier names in
+     * order and each supplier's products by _id, rather than by sorting them all. Looking up
+     * single products through it would go through every supplier, so it is only for that sort.
+     */
+    static final String PRODUCTS_BY_SUPPLIER_VIEW_NAME = "inventory_by_supplier";
+
+    /**
+     * Expressions the catalog can be sorted by, which queries must order and page by as is for
+     * SQLite to walk the matching sort index. Names and suppliers sort ignoring case.
+     */
+    static final String SORT_KEY_NAME = InventoryEntry.COLUMN_PRODUCT_NAME + " COLLATE NOCASE";
+    static final String SORT_KEY_PRICE = InventoryEntry.COLUMN_PRODUCT_PRICE;
+    static final String SORT_KEY_QUANTITY = InventoryEntry.COLUMN_PRODUCT_QUANTITY;
+    static final String SORT_KEY_SUPPLIER = InventoryEntry.COLUMN_PRODUCT_SUPPLIER + " COLLATE NOCASE";
+
+    /**
+     * Condition a product is in stock by. It is a range of {@link #INDEX_PRODUCT_QUANTITY}.
+     */
+    static final String IN_STOCK_SELECTION = InventoryEntry.COLUMN_PRODUCT_QUANTITY + " > 0";
+
+    /**
+     * The current time in milliseconds since the epoch, as an SQL expression.
+     */
+    private static final String SQL_NOW_MILLIS = "CAST((julianday('now') - 2440587.5) * 86400000 AS INTEGER)";
+
+    /**
+     * Full-text index over the name and supplier of each product, with the product _id as docid.
+     */
+    static final String SEARCH_TABLE_NAME = "inventory_fts";
+
+    /**
+     * What the full-text index reads the name and supplier name of a product from.
+     */
+    private static final String SEARCH_CONTENT_VIEW_NAME = "inventory_fts_content";
+
     public InventoryDbHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this(context, DATABASE_NAME);
     }
 
+    /**
+     * Open the database with the given file name, or an in-memory database if the name is null.
+     */
+    InventoryDbHelper(Context context, String name) {
+        super(context, name, null, DATABASE_VERSION);
+
+        // With write-ahead logging, readers get connections of their own from the pool and read
+        // from a snapshot, so loading the catalog never waits for a bulk write or delete to finish
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    /**
+     * Tune the connection used for writing each time the database is opened.
+     */
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        // In WAL mode NORMAL only syncs at checkpoints. A power cut can lose the last few
+        // transactions but never corrupts the database.
+        runPragma(db, "PRAGMA synchronous = NORMAL");
+        // A negative cache size is in KiB rather than pages
+        runPragma(db, "PRAGMA cache_size = -" + WRITER_CACHE_SIZE_KIB);
+        runPragma(db, "PRAGMA wal_autocheckpoint = " + WAL_AUTOCHECKPOINT_PAGES);
+    }
+
+    /**
+     * Copy the write-ahead log back into the database as far as possible without waiting for
+     * readers. Call after a bulk write, so the log doesn't stay large and slow down reads. Does
+     * nothing inside a transaction, where SQLite refuses to checkpoint, so the write is left to
+     * be checkpointed by whoever commits the transaction.
+     */
+    void checkpoint() {
+        SQLiteDatabase db = getWritableDatabase();
+        if (db.inTransaction()) {
+            return;
+        }
+        runPragma(db, "PRAGMA wal_checkpoint(PASSIVE)");
+    }
+
+    /**
+     * Copy the whole write-ahead log back into the database and empty it, so the database file
+     * holds the whole database on its own. Throws an {@link IllegalStateException} if another
+     * connection kept part of the log from being copied.
+     */
+    void checkpointFully() {
+        Cursor cursor = getWritableDatabase().rawQuery("PRAGMA wal_checkpoint(TRUNCATE)", null);
+        try {
+            // The first column is 1 if the checkpoint couldn't complete
+            if (cursor.moveToFirst() && cursor.getInt(0) != 0) {
+                throw new IllegalStateException("The database is too busy to checkpoint");
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Write a consistent copy of the database to the given file, which must not exist.
+     *
+     * Where SQLite has VACUUM INTO, the copy is taken on a read-only connection of its own,
+     * which reads from a snapshot, so writes carry on while it runs. Otherwise the log is
+     * checkpointed into the database file, which is then copied while holding the write lock, so
+     * writes wait for the duration of a plain file copy.
+     */
+    void backUpTo(File file) throws IOException {
+        String path = getWritableDatabase().getPath();
+
+        // VACUUM INTO arrived in SQLite 3.27, first shipped with Android 11
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            SQLiteDatabase snapshot = SQLiteDatabase.openDatabase(path, null, SQLiteDatabase.OPEN_READONLY);
+            try {
+                snapshot.execSQL("VACUUM INTO ?", new Object[]{file.getPath()});
+            } catch (SQLException e) {
+                throw new IOException("Failed to back up the database to " + file, e);
+            } finally {
+                snapshot.close();
+            }
+            return;
+        }
+
+        SQLiteDatabase db = getWritableDatabase();
+        File walFile = new File(path + "-wal");
+        for (int attempt = 0; attempt < BACKUP_ATTEMPTS; attempt++) {
+            runPragma(db, "PRAGMA wal_checkpoint(TRUNCATE)");
+
+            db.beginTransaction();
+            try {
+                // With the write lock held and nothing left in the log, the database file holds
+                // the whole database and nothing can change it until the lock is released
+                if (walFile.length() == 0) {
+                    copyFile(new File(path), file);
+                    return;
+                }
+            } finally {
+                db.endTransaction();
+            }
+        }
+        throw new IOException("The database was too busy to back up");
+    }
+
+    /**
+     * Return the quantity of a product at the given time according to the stock ledger, or -1 if
+     * the ledger has no entry for it up to then.
+     */
+    int queryQuantityAt(long productId, long time) {
+        Cursor cursor = getReadableDatabase().query(StockLedgerEntry.TABLE_NAME,
+                new String[]{StockLedgerEntry.COLUMN_QUANTITY},
+                StockLedgerEntry.COLUMN_PRODUCT_ID + " = ? AND " + StockLedgerEntry.COLUMN_TIME + " <= ?",
+                new String[]{String.valueOf(productId), String.valueOf(time)},
+                null, null,
+                StockLedgerEntry.COLUMN_TIME + " DESC, " + StockLedgerEntry._ID + " DESC", "1");
+        try {
+            return cursor.moveToFirst() ? cursor.getInt(0) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Replace the stock ledger entries of every day that ended more than the retention period
+     * before the given time with one snapshot per product and day, holding the sum of their
+     * deltas and the quantity the last of them left, at the time of that last entry. Days are
+     * compacted whole, so a day is never compacted twice. Return the number of entries removed.
+     */
+    int compactLedger(long now) {
+        SQLiteDatabase db = getWritableDatabase();
+
+        long day = TimeUnit.DAYS.toMillis(1);
+        long cutoff = (now - LEDGER_RETENTION_MILLIS) / day * day;
+
+        String where = StockLedgerEntry.COLUMN_KIND + " != ? AND " + StockLedgerEntry.COLUMN_TIME + " < ?";
+        String[] whereArgs = {StockLedgerEntry.KIND_SNAPSHOT, String.valueOf(cutoff)};
+
+        int entriesRemoved;
+
+        db.beginTransactionNonExclusive();
+        try {
+            // With MAX(), SQLite takes the other plain columns from the row holding the maximum,
+            // which is the last entry of the day
+            db.execSQL("INSERT INTO " + StockLedgerEntry.TABLE_NAME + " ("
+                            + StockLedgerEntry.COLUMN_PRODUCT_ID + ", " + StockLedgerEntry.COLUMN_KIND + ", "
+                            + StockLedgerEntry.COLUMN_QUANTITY_DELTA + ", " + StockLedgerEntry.COLUMN_QUANTITY + ", "
+                            + StockLedgerEntry.COLUMN_TIME + ") SELECT " + StockLedgerEntry.COLUMN_PRODUCT_ID
+                            + ", ?, total, " + StockLedgerEntry.COLUMN_QUANTITY + ", " + StockLedgerEntry.COLUMN_TIME
+                            + " FROM (SELECT " + StockLedgerEntry.COLUMN_PRODUCT_ID + ", SUM("
+                            + StockLedgerEntry.COLUMN_QUANTITY_DELTA + ") AS total, " + StockLedgerEntry.COLUMN_QUANTITY
+                            + ", " + StockLedgerEntry.COLUMN_TIME + ", MAX(" + StockLedgerEntry._ID + ") FROM "
+                            + StockLedgerEntry.TABLE_NAME + " WHERE " + where + " GROUP BY "
+                            + StockLedgerEntry.COLUMN_PRODUCT_ID + ", " + StockLedgerEntry.COLUMN_TIME + " / ?)",
+                    new Object[]{StockLedgerEntry.KIND_SNAPSHOT, StockLedgerEntry.KIND_SNAPSHOT, cutoff, day});
+
+            entriesRemoved = db.delete(StockLedgerEntry.TABLE_NAME, where, whereArgs);
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        return entriesRemoved;
+    }
+
+    /**
+     * Throw an {@link IllegalArgumentException} unless the given file is an intact database
+     * that this version of the app can open, upgrading it if needed.
+     */
+    static void checkBackup(File file) {
+        SQLiteDatabase backup;
+        try {
+            backup = SQLiteDatabase.openDatabase(file.getPath(), null, SQLiteDatabase.OPEN_READONLY);
+        } catch (SQLException e) {
+            throw new IllegalArgumentException("Not a database: " + file, e);
+        }
+
+        try {
+            int version = backup.getVersion();
+            if (version < 1 || version > DATABASE_VERSION) {
+                throw new IllegalArgumentException("Unsupported database version " + version);
+            }
+
+            String check = DatabaseUtils.stringForQuery(backup, "PRAGMA quick_check", null);
+            if (!"ok".equals(check)) {
+                throw new IllegalArgumentException("Damaged database: " + check);
+            }
+
+            if (DatabaseUtils.longForQuery(backup, "SELECT COUNT(*) FROM sqlite_master"
+                    + " WHERE type = 'table' AND name = ?", new String[]{InventoryEntry.TABLE_NAME}) != 1) {
+                throw new IllegalArgumentException("Not an inventory database: " + file);
+            }
+        } catch (SQLException e) {
+            throw new IllegalArgumentException("Unreadable database: " + file, e);
+        } finally {
+            backup.close();
+        }
+    }
+
+    private static void copyFile(File source, File destination) throws IOException {
+        FileChannel in = new FileInputStream(source).getChannel();
+        try {
+            FileChannel out = new FileOutputStream(destination).getChannel();
+            try {
+                long size = in.size();
+                long position = 0;
+                while (position < size) {
+                    position += in.transferTo(position, size - position, out);
+                }
+                out.force(false);
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Run a pragma, some of which return a row and so can't be run with execSQL.
+     */
+    private static void runPragma(SQLiteDatabase db, String pragma) {
+        Cursor cursor = db.rawQuery(pragma, null);
+        try {
+            cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Create the schema as it was in version 1 and then apply every migration, so new and
+     * upgraded databases always end up with exactly the same schema.
+     */
     @Override
     public void onCreate(SQLiteDatabase db) {
         String SQL_CREATE_INVENTORY_TABLE = "CREATE TABLE " + InventoryEntry.TABLE_NAME + " ("
@@ -25,9 +377,496 @@ public class InventoryDbHelper extends SQLiteOpenHelper {
                 + InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NUMBER + " TEXT NOT NULL);";
 
         db.execSQL(SQL_CREATE_INVENTORY_TABLE);
+
+        onUpgrade(db, 1, DATABASE_VERSION);
     }
 
+    /**
+     * Migrate one version at a time, so a database of any older version is brought up to date
+     * without losing its data.
+     */
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        for (int version = oldVersion + 1; version <= newVersion; version++) {
+            migrateTo(db, version);
+        }
+    }
+
+    /**
+     * Apply the changes that turn a database of the previous version into the given version.
+     */
+    private void migrateTo(SQLiteDatabase db, int version) {
+        switch (version) {
+            case 2:
+                createPendingSalesTable(db);
+                break;
+            case 3:
+                createInventoryIndexes(db);
+                break;
+            case 4:
+                createSearchIndex(db);
+                break;
+            case 5:
+                createStatsTable(db);
+                break;
+            case 6:
+                addReorderThresholds(db);
+                break;
+            case 7:
+                createStockLedger(db);
+                break;
+            case 8:
+                addModifiedTimes(db);
+                break;
+            case 9:
+                createSortIndexes(db);
+                break;
+            case 10:
+                normalizeSuppliers(db);
+                break;
+            case 11:
+                addPhotoTimes(db);
+                break;
+            case 12:
+                addSkus(db);
+                break;
+            default:
+                throw new IllegalStateException("No migration to database version " + version);
+        }
+    }
+
+    private void createPendingSalesTable(SQLiteDatabase db) {
+        String SQL_CREATE_PENDING_SALES_TABLE = "CREATE TABLE " + PendingSaleEntry.TABLE_NAME + " ("
+                + PendingSaleEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + PendingSaleEntry.COLUMN_PRODUCT_ID + " INTEGER NOT NULL, "
+                + PendingSaleEntry.COLUMN_QUANTITY_DELTA + " INTEGER NOT NULL);";
+
+        db.execSQL(SQL_CREATE_PENDING_SALES_TABLE);
+    }
+
+    /**
+     * Index the columns products are looked up by, so finding a product by name or supplier, or
+     * the products that are out of stock, doesn't scan the whole table.
+     */
+    private void createInventoryIndexes(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX " + INDEX_PRODUCT_NAME + " ON " + InventoryEntry.TABLE_NAME
+                + " (" + InventoryEntry.COLUMN_PRODUCT_NAME + ");");
+        db.execSQL("CREATE INDEX " + INDEX_PRODUCT_SUPPLIER + " ON " + InventoryEntry.TABLE_NAME
+                + " (" + InventoryEntry.COLUMN_PRODUCT_SUPPLIER + ");");
+        db.execSQL("CREATE INDEX " + INDEX_PRODUCT_QUANTITY + " ON " + InventoryEntry.TABLE_NAME
+                + " (" + InventoryEntry.COLUMN_PRODUCT_QUANTITY + ");");
+    }
+
+    /**
+     * Create the full-text index used to search products, filled from the existing products.
+     * It only stores the index, reading the text itself from the inventory table, and triggers
+     * keep it up to date. Updates that don't touch the name or supplier, like sales, leave it alone.
+     */
+    private void createSearchIndex(SQLiteDatabase db) {
+        String indexedColumns = InventoryEntry.COLUMN_PRODUCT_NAME + ", " + InventoryEntry.COLUMN_PRODUCT_SUPPLIER;
+        String insertNew = "INSERT INTO " + SEARCH_TABLE_NAME + " (docid, " + indexedColumns + ") VALUES (new."
+                + InventoryEntry._ID + ", new." + InventoryEntry.COLUMN_PRODUCT_NAME + ", new."
+                + InventoryEntry.COLUMN_PRODUCT_SUPPLIER + "); END;";
+        String deleteOld = "DELETE FROM " + SEARCH_TABLE_NAME + " WHERE docid = old." + InventoryEntry._ID + "; END;";
+
+        db.execSQL("CREATE VIRTUAL TABLE " + SEARCH_TABLE_NAME + " USING fts4(content=\""
+                + InventoryEntry.TABLE_NAME + "\", " + indexedColumns + ");");
+
+        db.execSQL("CREATE TRIGGER " + SEARCH_TABLE_NAME + "_after_insert AFTER INSERT ON "
+                + InventoryEntry.TABLE_NAME + " BEGIN " + insertNew);
+        db.execSQL("CREATE TRIGGER " + SEARCH_TABLE_NAME + "_before_update BEFORE UPDATE OF "
+                + indexedColumns + " ON " + InventoryEntry.TABLE_NAME + " BEGIN " + deleteOld);
+        db.execSQL("CREATE TRIGGER " + SEARCH_TABLE_NAME + "_after_update AFTER UPDATE OF "
+                + indexedColumns + " ON " + InventoryEntry.TABLE_NAME + " BEGIN " + insertNew);
+        db.execSQL("CREATE TRIGGER " + SEARCH_TABLE_NAME + "_before_delete BEFORE DELETE ON "
+                + InventoryEntry.TABLE_NAME + " BEGIN " + deleteOld);
+
+        db.execSQL("INSERT INTO " + SEARCH_TABLE_NAME + " (" + SEARCH_TABLE_NAME + ") VALUES ('rebuild');");
+    }
+
+    /**
+     * Create the table of totals per supplier, filled from the existing products. Triggers take
+     * each product that is inserted, deleted or changed out of the totals of its old supplier and
+     * add it to those of its new one, and drop a supplier once it has no products left.
+     */
+    private void createStatsTable(SQLiteDatabase db) {
+        String SQL_CREATE_STATS_TABLE = "CREATE TABLE " + StatsEntry.TABLE_NAME + " ("
+                + StatsEntry.COLUMN_SUPPLIER + " TEXT PRIMARY KEY, "
+                + StatsEntry.COLUMN_PRODUCT_COUNT + " INTEGER NOT NULL, "
+                + StatsEntry.COLUMN_TOTAL_UNITS + " INTEGER NOT NULL, "
+                + StatsEntry.COLUMN_STOCK_VALUE + " INTEGER NOT NULL, "
+                + StatsEntry.COLUMN_OUT_OF_STOCK_COUNT + " INTEGER NOT NULL);";
+
+        db.execSQL(SQL_CREATE_STATS_TABLE);
+
+        db.execSQL("INSERT INTO " + StatsEntry.TABLE_NAME + " SELECT "
+                + InventoryEntry.COLUMN_PRODUCT_SUPPLIER + ", COUNT(*), SUM("
+                + InventoryEntry.COLUMN_PRODUCT_QUANTITY + "), SUM("
+                + InventoryEntry.COLUMN_PRODUCT_PRICE + " * " + InventoryEntry.COLUMN_PRODUCT_QUANTITY + "), SUM("
+                + InventoryEntry.COLUMN_PRODUCT_QUANTITY + " = 0) FROM " + InventoryEntry.TABLE_NAME
+                + " GROUP BY " + InventoryEntry.COLUMN_PRODUCT_SUPPLIER + ";");
+
+        String addNew = "INSERT OR IGNORE INTO " + StatsEntry.TABLE_NAME + " VALUES (new."
+                + InventoryEntry.COLUMN_PRODUCT_SUPPLIER + ", 0, 0, 0, 0); "
+                + updateStats("new", "+", "new." + InventoryEntry.COLUMN_PRODUCT_SUPPLIER);
+        String removeOld = updateStats("old", "-", "old." + InventoryEntry.COLUMN_PRODUCT_SUPPLIER)
+                + "DELETE FROM " + StatsEntry.TABLE_NAME
+                + " WHERE " + StatsEntry.COLUMN_SUPPLIER + " = old." + InventoryEntry.COLUMN_PRODUCT_SUPPLIER
+                + " AND " + StatsEntry.COLUMN_PRODUCT_COUNT + " = 0; ";
+
+        db.execSQL("CREATE TRIGGER " + StatsEntry.TABLE_NAME + "_after_insert AFTER INSERT ON "
+                + InventoryEntry.TABLE_NAME + " BEGIN " + addNew + "END;");
+        db.execSQL("CREATE TRIGGER " + StatsEntry.TABLE_NAME + "_after_update AFTER UPDATE OF "
+                + InventoryEntry.COLUMN_PRODUCT_PRICE + ", " + InventoryEntry.COLUMN_PRODUCT_QUANTITY + ", "
+                + InventoryEntry.COLUMN_PRODUCT_SUPPLIER + " ON " + InventoryEntry.TABLE_NAME
+                + " BEGIN " + removeOld + addNew + "END;");
+        db.execSQL("CREATE TRIGGER " + StatsEntry.TABLE_NAME + "_after_delete AFTER DELETE ON "
+                + InventoryEntry.TABLE_NAME + " BEGIN " + removeOld + "END;");
+    }
+
+    /**
+     * Add the reorder threshold of each product and what the low stock check needs to only look
+     * at products that changed. Every existing product starts out changed, so the first check
+     * covers all of them.
+     */
+    private void addReorderThresholds(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + InventoryEntry.TABLE_NAME + " ADD COLUMN "
+                + InventoryEntry.COLUMN_PRODUCT_REORDER_THRESHOLD + " INTEGER NOT NULL DEFAULT 0;");
+
+        db.execSQL("CREATE INDEX " + INDEX_LOW_STOCK + " ON " + InventoryEntry.TABLE_NAME
+                + " (" + InventoryEntry.COLUMN_PRODUCT_QUANTITY + ") WHERE " + LOW_STOCK_SELECTION + ";");
+
+        db.execSQL("CREATE TABLE " + LOW_STOCK_DIRTY_TABLE_NAME + " ("
+                + COLUMN_LOW_STOCK_PRODUCT_ID + " INTEGER PRIMARY KEY);");
+        db.execSQL("CREATE TABLE " + LOW_STOCK_ALERTS_TABLE_NAME + " ("
+                + COLUMN_LOW_STOCK_PRODUCT_ID + " INTEGER PRIMARY KEY);");
+
+        db.execSQL("INSERT INTO " + LOW_STOCK_DIRTY_TABLE_NAME + " SELECT " + InventoryEntry._ID
+                + " FROM " + InventoryEntry.TABLE_NAME + ";");
+
+        createLowStockTriggers(db);
+    }
+
+    /**
+     * Create the triggers that mark products as changed for the next low stock check.
+     */
+    private static void createLowStockTriggers(SQLiteDatabase db) {
+        String markNew = "INSERT OR IGNORE INTO " + LOW_STOCK_DIRTY_TABLE_NAME + " VALUES (new."
+                + InventoryEntry._ID + "); END;";
+        String markOld = "INSERT OR IGNORE INTO " + LOW_STOCK_DIRTY_TABLE_NAME + " VALUES (old."
+                + InventoryEntry._ID + "); END;";
+
+        db.execSQL("CREATE TRIGGER " + LOW_STOCK_DIRTY_TABLE_NAME + "_after_insert AFTER INSERT ON "
+                + InventoryEntry.TABLE_NAME + " BEGIN " + markNew);
+        db.execSQL("CREATE TRIGGER " + LOW_STOCK_DIRTY_TABLE_NAME + "_after_update AFTER UPDATE OF "
+                + InventoryEntry.COLUMN_PRODUCT_QUANTITY + ", " + InventoryEntry.COLUMN_PRODUCT_REORDER_THRESHOLD
+                + " ON " + InventoryEntry.TABLE_NAME + " BEGIN " + markNew);
+        db.execSQL("CREATE TRIGGER " + LOW_STOCK_DIRTY_TABLE_NAME + "_after_delete AFTER DELETE ON "
+                + InventoryEntry.TABLE_NAME + " BEGIN " + markOld);
+    }
+
+    /**
+     * Create the stock ledger, starting with a snapshot of the current quantity of every product
+     * since there is no history from before. Entries are found by product and time, to look up
+     * the quantity of a product at a given time.
+     */
+    private void createStockLedger(SQLiteDatabase db) {
+        String SQL_CREATE_STOCK_LEDGER_TABLE = "CREATE TABLE " + StockLedgerEntry.TABLE_NAME + " ("
+                + StockLedgerEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + StockLedgerEntry.COLUMN_PRODUCT_ID + " INTEGER NOT NULL, "
+                + StockLedgerEntry.COLUMN_KIND + " TEXT NOT NULL, "
+                + StockLedgerEntry.COLUMN_QUANTITY_DELTA + " INTEGER NOT NULL, "
+                + StockLedgerEntry.COLUMN_QUANTITY + " INTEGER NOT NULL, "
+                + StockLedgerEntry.COLUMN_TIME + " INTEGER NOT NULL);";
+
+        db.execSQL(SQL_CREATE_STOCK_LEDGER_TABLE);
+
+        db.execSQL("CREATE INDEX " + INDEX_STOCK_LEDGER_PRODUCT_TIME + " ON " + StockLedgerEntry.TABLE_NAME
+                + " (" + StockLedgerEntry.COLUMN_PRODUCT_ID + ", " + StockLedgerEntry.COLUMN_TIME + ");");
+
+        db.execSQL("INSERT INTO " + StockLedgerEntry.TABLE_NAME + " ("
+                        + StockLedgerEntry.COLUMN_PRODUCT_ID + ", " + StockLedgerEntry.COLUMN_KIND + ", "
+                        + StockLedgerEntry.COLUMN_QUANTITY_DELTA + ", " + StockLedgerEntry.COLUMN_QUANTITY + ", "
+                        + StockLedgerEntry.COLUMN_TIME + ") SELECT " + InventoryEntry._ID + ", ?, "
+                        + InventoryEntry.COLUMN_PRODUCT_QUANTITY + ", " + InventoryEntry.COLUMN_PRODUCT_QUANTITY
+                        + ", ? FROM " + InventoryEntry.TABLE_NAME + ";",
+                new Object[]{StockLedgerEntry.KIND_SNAPSHOT, System.currentTimeMillis()});
+    }
+
+    /**
+     * Add the time each product was last changed, so exports can pick up only what changed.
+     * Existing products count as changed now. Triggers set it on every insert and on every
+     * update of the attributes of a product; updating only the time doesn't fire them again.
+     */
+    private void addModifiedTimes(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + InventoryEntry.TABLE_NAME + " ADD COLUMN "
+                + InventoryEntry.COLUMN_PRODUCT_MODIFIED + " INTEGER NOT NULL DEFAULT 0;");
+        db.execSQL("UPDATE " + InventoryEntry.TABLE_NAME + " SET "
+                + InventoryEntry.COLUMN_PRODUCT_MODIFIED + " = " + SQL_NOW_MILLIS + ";");
+
+        db.execSQL("CREATE INDEX " + INDEX_PRODUCT_MODIFIED + " ON " + InventoryEntry.TABLE_NAME
+                + " (" + InventoryEntry.COLUMN_PRODUCT_MODIFIED + ");");
+
+        String touchNew = "UPDATE " + InventoryEntry.TABLE_NAME + " SET " + InventoryEntry.COLUMN_PRODUCT_MODIFIED
+                + " = " + SQL_NOW_MILLIS + " WHERE " + InventoryEntry._ID + " = new." + InventoryEntry._ID + "; END;";
+
+        db.execSQL("CREATE TRIGGER " + InventoryEntry.TABLE_NAME + "_modified_after_insert AFTER INSERT ON "
+                + InventoryEntry.TABLE_NAME + " BEGIN " + touchNew);
+        db.execSQL("CREATE TRIGGER " + InventoryEntry.TABLE_NAME + "_modified_after_update AFTER UPDATE OF "
+                + InventoryEntry.COLUMN_PRODUCT_NAME + ", " + InventoryEntry.COLUMN_PRODUCT_PRICE + ", "
+                + InventoryEntry.COLUMN_PRODUCT_QUANTITY + ", " + InventoryEntry.COLUMN_PRODUCT_SUPPLIER + ", "
+                + InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NUMBER + ", " + InventoryEntry.COLUMN_PRODUCT_REORDER_THRESHOLD
+                + " ON " + InventoryEntry.TABLE_NAME + " BEGIN " + touchNew);
+    }
+
+    /**
+     * Index each sort key together with _id, the order the catalog is listed and paged in, so
+     * a sorted page is read by walking the index from where the previous page ended rather than
+     * by sorting the whole table. The quantity index already ends in _id, as every index does
+     * implicitly, and sorts the catalog by quantity as is.
+     */
+    private void createSortIndexes(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX " + INDEX_NAME_SORT + " ON " + InventoryEntry.TABLE_NAME
+                + " (" + SORT_KEY_NAME + ", " + InventoryEntry._ID + ");");
+        db.execSQL("CREATE INDEX " + INDEX_PRICE_SORT + " ON " + InventoryEntry.TABLE_NAME
+                + " (" + SORT_KEY_PRICE + ", " + InventoryEntry._ID + ");");
+        // Dropped with the supplier column in version 10, after which the supplier sort walks
+        // the supplier name index instead
+        db.execSQL("CREATE INDEX inventory_supplier_sort_idx ON " + InventoryEntry.TABLE_NAME
+                + " (" + SORT_KEY_SUPPLIER + ", " + InventoryEntry._ID + ");");
+    }
+
+    /**
+     * Move the supplier name and number of the products into a table of suppliers, one per name
+     * ignoring case, that products refer to by _id. Suppliers that were entered with different
+     * numbers keep the number of the product added last. The inventory table is rebuilt without
+     * the supplier columns, keeping the _ids and the sequence they are taken from, and its
+     * indexes and triggers are created again to match, so only reads and writes of a supplier
+     * pay for the join. The search index reads the supplier names through a view, and the totals
+     * per supplier are counted again since suppliers that only differed in case are now merged.
+     */
+    private void normalizeSuppliers(SQLiteDatabase db) {
+        String inventory = InventoryEntry.TABLE_NAME;
+        String newInventory = InventoryEntry.TABLE_NAME + "_new";
+
+        db.execSQL("CREATE TABLE " + SupplierEntry.TABLE_NAME + " ("
+                + SupplierEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + SupplierEntry.COLUMN_NAME + " TEXT NOT NULL COLLATE NOCASE, "
+                + SupplierEntry.COLUMN_PHONE_NUMBER + " TEXT NOT NULL);");
+        db.execSQL("CREATE UNIQUE INDEX " + INDEX_SUPPLIER_NAME + " ON " + SupplierEntry.TABLE_NAME
+                + " (" + SupplierEntry.COLUMN_NAME + ");");
+
+        db.execSQL("INSERT INTO " + SupplierEntry.TABLE_NAME + " (" + SupplierEntry.COLUMN_NAME + ", "
+                + SupplierEntry.COLUMN_PHONE_NUMBER + ") SELECT " + InventoryEntry.COLUMN_PRODUCT_SUPPLIER + ", "
+                + InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NUMBER + " FROM " + inventory + " WHERE "
+                + InventoryEntry._ID + " IN (SELECT MAX(" + InventoryEntry._ID + ") FROM " + inventory
+                + " GROUP BY " + InventoryEntry.COLUMN_PRODUCT_SUPPLIER + " COLLATE NOCASE) ORDER BY "
+                + InventoryEntry._ID + ";");
+
+        db.execSQL("CREATE TABLE " + newInventory + " ("
+                + InventoryEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + InventoryEntry.COLUMN_PRODUCT_NAME + " TEXT NOT NULL, "
+                + InventoryEntry.COLUMN_PRODUCT_PRICE + " INTEGER NOT NULL, "
+                + InventoryEntry.COLUMN_PRODUCT_QUANTITY + " INTEGER NOT NULL DEFAULT 0, "
+                + InventoryEntry.COLUMN_PRODUCT_SUPPLIER_ID + " INTEGER NOT NULL REFERENCES "
+                + SupplierEntry.TABLE_NAME + " (" + SupplierEntry._ID + "), "
+                + InventoryEntry.COLUMN_PRODUCT_REORDER_THRESHOLD + " INTEGER NOT NULL DEFAULT 0, "
+                + InventoryEntry.COLUMN_PRODUCT_MODIFIED + " INTEGER NOT NULL DEFAULT 0);");
+
+        // The supplier names compare ignoring case, being on the left
+        db.execSQL("INSERT INTO " + newInventory + " SELECT i." + InventoryEntry._ID + ", i."
+                + InventoryEntry.COLUMN_PRODUCT_NAME + ", i." + InventoryEntry.COLUMN_PRODUCT_PRICE + ", i."
+                + InventoryEntry.COLUMN_PRODUCT_QUANTITY + ", s." + SupplierEntry._ID + ", i."
+                + InventoryEntry.COLUMN_PRODUCT_REORDER_THRESHOLD + ", i." + InventoryEntry.COLUMN_PRODUCT_MODIFIED
+                + " FROM " + inventory + " i JOIN " + SupplierEntry.TABLE_NAME + " s ON s."
+                + SupplierEntry.COLUMN_NAME + " = i." + InventoryEntry.COLUMN_PRODUCT_SUPPLIER + ";");
+
+        // Hand the sequence of the old table to the new one, so the _ids of deleted products,
+        // which the ledger and pending sales may still refer to, are never used again
+        db.execSQL("DELETE FROM sqlite_sequence WHERE name = '" + newInventory + "';");
+        db.execSQL("UPDATE sqlite_sequence SET name = '" + newInventory + "' WHERE name = '" + inventory + "';");
+
+        // Dropping the old table drops its indexes and triggers with it
+        db.execSQL("DROP TABLE " + SEARCH_TABLE_NAME + ";");
+        db.execSQL("DROP TABLE " + inventory + ";");
+        db.execSQL("ALTER TABLE " + newInventory + " RENAME TO " + inventory + ";");
+
+        db.execSQL("CREATE INDEX " + INDEX_PRODUCT_NAME + " ON " + inventory
+                + " (" + InventoryEntry.COLUMN_PRODUCT_NAME + ");");
+        db.execSQL("CREATE INDEX " + INDEX_PRODUCT_QUANTITY + " ON " + inventory
+                + " (" + InventoryEntry.COLUMN_PRODUCT_QUANTITY + ");");
+        db.execSQL("CREATE INDEX " + INDEX_LOW_STOCK + " ON " + inventory
+                + " (" + InventoryEntry.COLUMN_PRODUCT_QUANTITY + ") WHERE " + LOW_STOCK_SELECTION + ";");
+        db.execSQL("CREATE INDEX " + INDEX_PRODUCT_MODIFIED + " ON " + inventory
+                + " (" + InventoryEntry.COLUMN_PRODUCT_MODIFIED + ");");
+        db.execSQL("CREATE INDEX " + INDEX_NAME_SORT + " ON " + inventory
+                + " (" + SORT_KEY_NAME + ", " + InventoryEntry._ID + ");");
+        db.execSQL("CREATE INDEX " + INDEX_PRICE_SORT + " ON " + inventory
+                + " (" + SORT_KEY_PRICE + ", " + InventoryEntry._ID + ");");
+        // Finds the products of a supplier, in the order the supplier sort lists them
+        db.execSQL("CREATE INDEX " + INDEX_PRODUCT_SUPPLIER_ID + " ON " + inventory
+                + " (" + InventoryEntry.COLUMN_PRODUCT_SUPPLIER_ID + ", " + InventoryEntry._ID + ");");
+
+        String supplierColumns = "s." + SupplierEntry.COLUMN_NAME + " AS " + InventoryEntry.COLUMN_PRODUCT_SUPPLIER
+                + ", s." + SupplierEntry.COLUMN_PHONE_NUMBER + " AS " + InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NUMBER;
+        String onSupplier = " ON i." + InventoryEntry.COLUMN_PRODUCT_SUPPLIER_ID + " = s." + SupplierEntry._ID;
+
+        db.execSQL("CREATE VIEW " + PRODUCTS_VIEW_NAME + " AS SELECT i.*, " + supplierColumns + " FROM "
+                + inventory + " i JOIN " + SupplierEntry.TABLE_NAME + " s" + onSupplier + ";");
+        // CROSS JOIN keeps SQLite from reordering the join
+        db.execSQL("CREATE VIEW " + PRODUCTS_BY_SUPPLIER_VIEW_NAME + " AS SELECT i.*, " + supplierColumns
+                + " FROM " + SupplierEntry.TABLE_NAME + " s CROSS JOIN " + inventory + " i" + onSupplier + ";");
+
+        createSupplierSearchIndex(db);
+        createSupplierStatsTriggers(db);
+        createLowStockTriggers(db);
+
+        String touchNew = "UPDATE " + inventory + " SET " + InventoryEntry.COLUMN_PRODUCT_MODIFIED
+                + " = " + SQL_NOW_MILLIS + " WHERE " + InventoryEntry._ID + " = new." + InventoryEntry._ID + "; END;";
+
+        db.execSQL("CREATE TRIGGER " + inventory + "_modified_after_insert AFTER INSERT ON "
+                + inventory + " BEGIN " + touchNew);
+        db.execSQL("CREATE TRIGGER " + inventory + "_modified_after_update AFTER UPDATE OF "
+                + InventoryEntry.COLUMN_PRODUCT_NAME + ", " + InventoryEntry.COLUMN_PRODUCT_PRICE + ", "
+                + InventoryEntry.COLUMN_PRODUCT_QUANTITY + ", " + InventoryEntry.COLUMN_PRODUCT_SUPPLIER_ID + ", "
+                + InventoryEntry.COLUMN_PRODUCT_REORDER_THRESHOLD + " ON " + inventory + " BEGIN " + touchNew);
+        // A new number changes what every product of the supplier reads as
+        db.execSQL("CREATE TRIGGER " + SupplierEntry.TABLE_NAME + "_modified_after_update AFTER UPDATE OF "
+                + SupplierEntry.COLUMN_PHONE_NUMBER + " ON " + SupplierEntry.TABLE_NAME + " BEGIN UPDATE "
+                + inventory + " SET " + InventoryEntry.COLUMN_PRODUCT_MODIFIED + " = " + SQL_NOW_MILLIS
+                + " WHERE " + InventoryEntry.COLUMN_PRODUCT_SUPPLIER_ID + " = new." + SupplierEntry._ID + "; END;");
+    }
+
+    /**
+     * Add the time the photo of each product was last set, which is all the database holds of
+     * it: the photos themselves are files, so the rows stay small. No product has one yet. A new
+     * photo counts as a change to the product, so the trigger for the modified time is created
+     * again to cover it.
+     */
+    private void addPhotoTimes(SQLiteDatabase db) {
+        String inventory = InventoryEntry.TABLE_NAME;
+
+        db.execSQL("ALTER TABLE " + inventory + " ADD COLUMN "
+                + InventoryEntry.COLUMN_PRODUCT_PHOTO_TIME + " INTEGER NOT NULL DEFAULT 0;");
+
+        String touchNew = "UPDATE " + inventory + " SET " + InventoryEntry.COLUMN_PRODUCT_MODIFIED
+                + " = " + SQL_NOW_MILLIS + " WHERE " + InventoryEntry._ID + " = new." + InventoryEntry._ID + "; END;";
+
+        db.execSQL("DROP TRIGGER " + inventory + "_modified_after_update;");
+        db.execSQL("CREATE TRIGGER " + inventory + "_modified_after_update AFTER UPDATE OF "
+                + InventoryEntry.COLUMN_PRODUCT_NAME + ", " + InventoryEntry.COLUMN_PRODUCT_PRICE + ", "
+                + InventoryEntry.COLUMN_PRODUCT_QUANTITY + ", " + InventoryEntry.COLUMN_PRODUCT_SUPPLIER_ID + ", "
+                + InventoryEntry.COLUMN_PRODUCT_REORDER_THRESHOLD + ", " + InventoryEntry.COLUMN_PRODUCT_PHOTO_TIME
+                + " ON " + inventory + " BEGIN " + touchNew);
+    }
+
+    /**
+     * Add the SKU of each product, with a unique index that both keeps two products from having
+     * the same SKU and finds a product by its SKU in a single probe. Existing products have none,
+     * and any number of products may have none.
+     */
+    private void addSkus(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + InventoryEntry.TABLE_NAME + " ADD COLUMN "
+                + InventoryEntry.COLUMN_PRODUCT_SKU + " TEXT;");
+        db.execSQL("CREATE UNIQUE INDEX " + INDEX_PRODUCT_SKU + " ON " + InventoryEntry.TABLE_NAME
+                + " (" + InventoryEntry.COLUMN_PRODUCT_SKU + ");");
+
+        String touchNew = "UPDATE " + InventoryEntry.TABLE_NAME + " SET " + InventoryEntry.COLUMN_PRODUCT_MODIFIED
+                + " = " + SQL_NOW_MILLIS + " WHERE " + InventoryEntry._ID + " = new." + InventoryEntry._ID + "; END;";
+
+        db.execSQL("DROP TRIGGER " + InventoryEntry.TABLE_NAME + "_modified_after_update;");
+        db.execSQL("CREATE TRIGGER " + InventoryEntry.TABLE_NAME + "_modified_after_update AFTER UPDATE OF "
+                + InventoryEntry.COLUMN_PRODUCT_NAME + ", " + InventoryEntry.COLUMN_PRODUCT_PRICE + ", "
+                + InventoryEntry.COLUMN_PRODUCT_QUANTITY + ", " + InventoryEntry.COLUMN_PRODUCT_SUPPLIER_ID + ", "
+                + InventoryEntry.COLUMN_PRODUCT_REORDER_THRESHOLD + ", " + InventoryEntry.COLUMN_PRODUCT_PHOTO_TIME + ", "
+                + InventoryEntry.COLUMN_PRODUCT_SKU + " ON " + InventoryEntry.TABLE_NAME + " BEGIN " + touchNew);
+    }
+
+    /**
+     * Create the full-text index again over the normalized tables, reading the supplier names
+     * through a view, with triggers that look up the name of the supplier of each product as it
+     * is indexed. A supplier's name never changes, so only changes to the products update it.
+     */
+    private static void createSupplierSearchIndex(SQLiteDatabase db) {
+        String indexedColumns = InventoryEntry.COLUMN_PRODUCT_NAME + ", " + InventoryEntry.COLUMN_PRODUCT_SUPPLIER;
+        String insertNew = "INSERT INTO " + SEARCH_TABLE_NAME + " (docid, " + indexedColumns + ") VALUES (new."
+                + InventoryEntry._ID + ", new." + InventoryEntry.COLUMN_PRODUCT_NAME + ", "
+                + supplierNameOf("new") + "); END;";
+        String deleteOld = "DELETE FROM " + SEARCH_TABLE_NAME + " WHERE docid = old." + InventoryEntry._ID + "; END;";
+        String updatedColumns = InventoryEntry.COLUMN_PRODUCT_NAME + ", " + InventoryEntry.COLUMN_PRODUCT_SUPPLIER_ID;
+
+        db.execSQL("CREATE VIEW " + SEARCH_CONTENT_VIEW_NAME + " AS SELECT i." + InventoryEntry._ID
+                + " AS rowid, i." + InventoryEntry.COLUMN_PRODUCT_NAME + " AS " + InventoryEntry.COLUMN_PRODUCT_NAME
+                + ", s." + SupplierEntry.COLUMN_NAME + " AS " + InventoryEntry.COLUMN_PRODUCT_SUPPLIER + " FROM "
+                + InventoryEntry.TABLE_NAME + " i JOIN " + SupplierEntry.TABLE_NAME + " s ON i."
+                + InventoryEntry.COLUMN_PRODUCT_SUPPLIER_ID + " = s." + SupplierEntry._ID + ";");
+
+        db.execSQL("CREATE VIRTUAL TABLE " + SEARCH_TABLE_NAME + " USING fts4(content=\""
+                + SEARCH_CONTENT_VIEW_NAME + "\", " + indexedColumns + ");");
+
+        db.execSQL("CREATE TRIGGER " + SEARCH_TABLE_NAME + "_after_insert AFTER INSERT ON "
+                + InventoryEntry.TABLE_NAME + " BEGIN " + insertNew);
+        db.execSQL("CREATE TRIGGER " + SEARCH_TABLE_NAME + "_before_update BEFORE UPDATE OF "
+                + updatedColumns + " ON " + InventoryEntry.TABLE_NAME + " BEGIN " + deleteOld);
+        db.execSQL("CREATE TRIGGER " + SEARCH_TABLE_NAME + "_after_update AFTER UPDATE OF "
+                + updatedColumns + " ON " + InventoryEntry.TABLE_NAME + " BEGIN " + insertNew);
+        db.execSQL("CREATE TRIGGER " + SEARCH_TABLE_NAME + "_before_delete BEFORE DELETE ON "
+                + InventoryEntry.TABLE_NAME + " BEGIN " + deleteOld);
+
+        db.execSQL("INSERT INTO " + SEARCH_TABLE_NAME + " (" + SEARCH_TABLE_NAME + ") VALUES ('rebuild');");
+    }
+
+    /**
+     * Count the totals per supplier again and create their triggers over the normalized tables,
+     * which work as before with the supplier name looked up from the supplier of each product.
+     */
+    private static void createSupplierStatsTriggers(SQLiteDatabase db) {
+        db.execSQL("DELETE FROM " + StatsEntry.TABLE_NAME + ";");
+        db.execSQL("INSERT INTO " + StatsEntry.TABLE_NAME + " SELECT s." + SupplierEntry.COLUMN_NAME
+                + ", COUNT(*), SUM(i." + InventoryEntry.COLUMN_PRODUCT_QUANTITY + "), SUM(i."
+                + InventoryEntry.COLUMN_PRODUCT_PRICE + " * i." + InventoryEntry.COLUMN_PRODUCT_QUANTITY + "), SUM(i."
+                + InventoryEntry.COLUMN_PRODUCT_QUANTITY + " = 0) FROM " + InventoryEntry.TABLE_NAME + " i JOIN "
+                + SupplierEntry.TABLE_NAME + " s ON i." + InventoryEntry.COLUMN_PRODUCT_SUPPLIER_ID + " = s."
+                + SupplierEntry._ID + " GROUP BY s." + SupplierEntry._ID + ";");
+
+        String addNew = "INSERT OR IGNORE INTO " + StatsEntry.TABLE_NAME + " VALUES (" + supplierNameOf("new")
+                + ", 0, 0, 0, 0); " + updateStats("new", "+", supplierNameOf("new"));
+        String removeOld = updateStats("old", "-", supplierNameOf("old")) + "DELETE FROM " + StatsEntry.TABLE_NAME
+                + " WHERE " + StatsEntry.COLUMN_SUPPLIER + " = " + supplierNameOf("old")
+                + " AND " + StatsEntry.COLUMN_PRODUCT_COUNT + " = 0; ";
+
+        db.execSQL("CREATE TRIGGER " + StatsEntry.TABLE_NAME + "_after_insert AFTER INSERT ON "
+                + InventoryEntry.TABLE_NAME + " BEGIN " + addNew + "END;");
+        db.execSQL("CREATE TRIGGER " + StatsEntry.TABLE_NAME + "_after_update AFTER UPDATE OF "
+                + InventoryEntry.COLUMN_PRODUCT_PRICE + ", " + InventoryEntry.COLUMN_PRODUCT_QUANTITY + ", "
+                + InventoryEntry.COLUMN_PRODUCT_SUPPLIER_ID + " ON " + InventoryEntry.TABLE_NAME
+                + " BEGIN " + removeOld + addNew + "END;");
+        db.execSQL("CREATE TRIGGER " + StatsEntry.TABLE_NAME + "_after_delete AFTER DELETE ON "
+                + InventoryEntry.TABLE_NAME + " BEGIN " + removeOld + "END;");
+    }
+
+    /**
+     * Return the SQL expression for the name of the supplier of the "new" or "old" row in a
+     * trigger on the inventory table.
+     */
+    private static String supplierNameOf(String row) {
+        return "(SELECT " + SupplierEntry.COLUMN_NAME + " FROM " + SupplierEntry.TABLE_NAME + " WHERE "
+                + SupplierEntry._ID + " = " + row + "." + InventoryEntry.COLUMN_PRODUCT_SUPPLIER_ID + ")";
+    }
+
+    /**
+     * Return the trigger statement that adds the "new" row to, or takes the "old" row out of,
+     * the totals of its supplier, whose name is the given SQL expression.
+     */
+    private static String updateStats(String row, String sign, String supplier) {
+        return "UPDATE " + StatsEntry.TABLE_NAME + " SET "
+                + StatsEntry.COLUMN_PRODUCT_COUNT + " = " + StatsEntry.COLUMN_PRODUCT_COUNT + " " + sign + " 1, "
+                + StatsEntry.COLUMN_TOTAL_UNITS + " = " + StatsEntry.COLUMN_TOTAL_UNITS + " " + sign + " "
+                + row + "." + InventoryEntry.COLUMN_PRODUCT_QUANTITY + ", "
+                + StatsEntry.COLUMN_STOCK_VALUE + " = " + StatsEntry.COLUMN_STOCK_VALUE + " " + sign + " "
+                + row + "." + InventoryEntry.COLUMN_PRODUCT_PRICE + " * " + row + "." + InventoryEntry.COLUMN_PRODUCT_QUANTITY + ", "
+                + StatsEntry.COLUMN_OUT_OF_STOCK_COUNT + " = " + StatsEntry.COLUMN_OUT_OF_STOCK_COUNT + " " + sign + " ("
+                + row + "." + InventoryEntry.COLUMN_PRODUCT_QUANTITY + " = 0)"
+                + " WHERE " + StatsEntry.COLUMN_SUPPLIER + " = " + supplier + "; ";
     }
 }
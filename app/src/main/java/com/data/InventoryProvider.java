@@ -1,211 +1,1673 @@
 package com.data;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.MatrixCursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
+import android.os.Bundle;
+import android.os.CancellationSignal;
+import android.os.ParcelFileDescriptor;
+import android.text.TextUtils;
 import android.util.Log;
 
 import com.data.InventoryContract.InventoryEntry;
+import com.data.InventoryContract.MetricsEntry;
+import com.data.InventoryContract.PendingSaleEntry;
+import com.data.InventoryContract.StatsEntry;
+import com.data.InventoryContract.StockLedgerEntry;
+import com.data.InventoryContract.SupplierEntry;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public class InventoryProvider extends ContentProvider {
 
-    public static final String LOG_TAG = InventoryProvider.class.getSimpleName();
+    public static final String LOG_TAG = InventoryProvider.class.getSimpleName();
+
+    private static final int INVENTORY = 100;
+
+    private static final int INVENTORY_ID = 101;
+
+    private static final int INVENTORY_SEARCH = 102;
+
+    private static final int INVENTORY_LOW_STOCK = 103;
+
+    private static final int INVENTORY_PHOTO = 104;
+
+    private static final int INVENTORY_THUMBNAIL = 105;
+
+    private static final int INVENTORY_SKU = 106;
+
+    private static final int PENDING_SALES = 200;
+
+    private static final int STATS = 300;
+
+    private static final int STATS_SUPPLIERS = 301;
+
+    private static final int STOCK_LEDGER = 400;
+
+    private static final int METRICS = 500;
+
+    /**
+     * How often the stock ledger is compacted, at most.
+     */
+    private static final long LEDGER_COMPACTION_INTERVAL_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private static final UriMatcher sUriMatcher = new UriMatcher(UriMatcher.NO_MATCH);
+
+    static {
+
+        sUriMatcher.addURI(InventoryContract.CONTENT_AUTHORITY, InventoryContract.PATH_INVENTORY, INVENTORY);
+
+        sUriMatcher.addURI(InventoryContract.CONTENT_AUTHORITY, InventoryContract.PATH_INVENTORY + "/#", INVENTORY_ID);
+
+        sUriMatcher.addURI(InventoryContract.CONTENT_AUTHORITY,
+                InventoryContract.PATH_INVENTORY + "/" + InventoryContract.PATH_SEARCH + "/*", INVENTORY_SEARCH);
+
+        sUriMatcher.addURI(InventoryContract.CONTENT_AUTHORITY,
+                InventoryContract.PATH_INVENTORY + "/" + InventoryContract.PATH_LOW_STOCK, INVENTORY_LOW_STOCK);
+
+        sUriMatcher.addURI(InventoryContract.CONTENT_AUTHORITY,
+                InventoryContract.PATH_INVENTORY + "/#/" + InventoryContract.PATH_PHOTO, INVENTORY_PHOTO);
+
+        sUriMatcher.addURI(InventoryContract.CONTENT_AUTHORITY,
+                InventoryContract.PATH_INVENTORY + "/#/" + InventoryContract.PATH_THUMBNAIL, INVENTORY_THUMBNAIL);
+
+        sUriMatcher.addURI(InventoryContract.CONTENT_AUTHORITY,
+                InventoryContract.PATH_INVENTORY + "/" + InventoryContract.PATH_SKU + "/*", INVENTORY_SKU);
+
+        sUriMatcher.addURI(InventoryContract.CONTENT_AUTHORITY, InventoryContract.PATH_PENDING_SALES, PENDING_SALES);
+
+        sUriMatcher.addURI(InventoryContract.CONTENT_AUTHORITY, InventoryContract.PATH_STATS, STATS);
+
+        sUriMatcher.addURI(InventoryContract.CONTENT_AUTHORITY,
+                InventoryContract.PATH_STATS + "/" + InventoryContract.PATH_SUPPLIERS, STATS_SUPPLIERS);
+
+        sUriMatcher.addURI(InventoryContract.CONTENT_AUTHORITY, InventoryContract.PATH_STOCK_LEDGER, STOCK_LEDGER);
+
+        sUriMatcher.addURI(InventoryContract.CONTENT_AUTHORITY, InventoryContract.PATH_METRICS, METRICS);
+    }
+
+    /**
+     * Set while {@link #applyBatch} runs on the calling thread, so the individual operations
+     * skip their own change notifications and a single one is sent when the batch commits.
+     * Holds the ids of the products deleted in the batch that have a photo, whose files are only
+     * removed once the batch commits, so a batch that is rolled back keeps them.
+     */
+    private final ThreadLocal<List<Long>> mApplyingBatch = new ThreadLocal<>();
+
+    /**
+     * Set when a write on the calling thread gave an existing supplier a new phone number, which
+     * changes every product of that supplier and not only the ones written.
+     */
+    private final ThreadLocal<Boolean> mSupplierChanged = new ThreadLocal<>();
+
+    /**
+     * Replaced, along with the database file, when a backup is restored.
+     */
+    private volatile InventoryDbHelper mDbHelper;
+
+    /**
+     * Held for reading by every operation of the provider, and for writing while a backup is
+     * restored, so no operation ever uses a database that is being closed and replaced.
+     */
+    private final ReentrantReadWriteLock mDatabaseLock = new ReentrantReadWriteLock();
+
+    /**
+     * Statements for the hot write paths, compiled the first time one of them is needed.
+     */
+    private InventoryStatements mStatements;
+
+    private final ProductRowCache mRowCache = new ProductRowCache();
+
+    private ProductPhotos mPhotos;
+
+    private final ProviderMetrics mMetrics = new ProviderMetrics(
+            new int[]{INVENTORY, INVENTORY_ID, INVENTORY_SEARCH, INVENTORY_LOW_STOCK, INVENTORY_PHOTO,
+                    INVENTORY_THUMBNAIL, INVENTORY_SKU, PENDING_SALES, STATS, STATS_SUPPLIERS, STOCK_LEDGER,
+                    METRICS},
+            new String[]{
+                    InventoryContract.PATH_INVENTORY,
+                    InventoryContract.PATH_INVENTORY + "/#",
+                    InventoryContract.PATH_INVENTORY + "/" + InventoryContract.PATH_SEARCH + "/*",
+                    InventoryContract.PATH_INVENTORY + "/" + InventoryContract.PATH_LOW_STOCK,
+                    InventoryContract.PATH_INVENTORY + "/#/" + InventoryContract.PATH_PHOTO,
+                    InventoryContract.PATH_INVENTORY + "/#/" + InventoryContract.PATH_THUMBNAIL,
+                    InventoryContract.PATH_INVENTORY + "/" + InventoryContract.PATH_SKU + "/*",
+                    InventoryContract.PATH_PENDING_SALES,
+                    InventoryContract.PATH_STATS,
+                    InventoryContract.PATH_STATS + "/" + InventoryContract.PATH_SUPPLIERS,
+                    InventoryContract.PATH_STOCK_LEDGER,
+                    InventoryContract.PATH_METRICS});
+
+    /**
+     * When the stock ledger was last compacted by this process, 0 if it wasn't yet.
+     */
+    private long mLastLedgerCompactionTime;
+
+    @Override
+    public boolean onCreate() {
+        mDbHelper = new InventoryDbHelper(getContext());
+        mPhotos = new ProductPhotos(getContext());
+        return true;
+    }
+
+    private synchronized InventoryStatements getStatements() {
+        if (mStatements == null) {
+            mStatements = new InventoryStatements(mDbHelper.getWritableDatabase());
+        }
+        return mStatements;
+    }
+
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
+                        String sortOrder) {
+        return query(uri, projection, selection, selectionArgs, sortOrder, null);
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
+                        String sortOrder, CancellationSignal cancellationSignal) {
+        long start = System.nanoTime();
+        int match = sUriMatcher.match(uri);
+
+        Cursor cursor;
+        mDatabaseLock.readLock().lock();
+        try {
+            cursor = query(match, uri, projection, selection, selectionArgs, sortOrder, cancellationSignal);
+            // Counting the rows runs the query, which otherwise only runs once the caller first
+            // moves the cursor, so the latency covers it
+            cursor.getCount();
+        } finally {
+            mDatabaseLock.readLock().unlock();
+        }
+
+        mMetrics.record(ProviderMetrics.QUERY, match, start, cursor.getCount());
+        return cursor;
+    }
+
+    private Cursor query(int match, Uri uri, String[] projection, String selection, String[] selectionArgs,
+                         String sortOrder, CancellationSignal cancellationSignal) {
+
+        SQLiteDatabase database = mDbHelper.getReadableDatabase();
+
+        Cursor cursor;
+
+        switch (match) {
+            case INVENTORY:
+                String limit = uri.getQueryParameter(InventoryEntry.QUERY_PARAMETER_LIMIT);
+                if (limit != null) {
+                    limit = String.valueOf(parsePagingParameter(limit));
+                }
+
+                if (uri.getBooleanQueryParameter(InventoryEntry.QUERY_PARAMETER_IN_STOCK, false)) {
+                    selection = DatabaseUtils.concatenateWhere(selection, InventoryDbHelper.IN_STOCK_SELECTION);
+                }
+
+                String sort = uri.getQueryParameter(InventoryEntry.QUERY_PARAMETER_SORT);
+                String sortKey = sortKeyOf(sort);
+                if (sortKey != null && sortOrder != null) {
+                    throw new IllegalArgumentException("Cannot combine a sort order with sorting by " + sort);
+                }
+
+                String afterId = uri.getQueryParameter(InventoryEntry.QUERY_PARAMETER_AFTER_ID);
+                if (afterId != null && sortKey == null && sortOrder != null) {
+                    throw new IllegalArgumentException("Cannot combine a sort order with paging after an _id");
+                }
+                if (afterId != null && sortKey != null) {
+                    String afterValue = sortValueOf(sort,
+                            uri.getQueryParameter(InventoryEntry.QUERY_PARAMETER_AFTER_VALUE));
+                    // Written so SQLite can seek the sort index to the first key at or after the
+                    // value, rather than scan it for the keys after the value and _id
+                    selection = DatabaseUtils.concatenateWhere(selection, sortKey + ">=? AND ("
+                            + sortKey + ">? OR " + InventoryEntry._ID + ">?)");
+                    selectionArgs = DatabaseUtils.appendSelectionArgs(selectionArgs,
+                            new String[]{afterValue, afterValue, String.valueOf(parsePagingParameter(afterId))});
+                } else if (afterId != null) {
+                    selection = DatabaseUtils.concatenateWhere(selection, InventoryEntry._ID + ">?");
+                    selectionArgs = DatabaseUtils.appendSelectionArgs(selectionArgs,
+                            new String[]{String.valueOf(parsePagingParameter(afterId))});
+                }
+
+                String changedSince = uri.getQueryParameter(InventoryEntry.QUERY_PARAMETER_CHANGED_SINCE);
+                if (changedSince != null) {
+                    selection = DatabaseUtils.concatenateWhere(selection,
+                            InventoryEntry.COLUMN_PRODUCT_MODIFIED + ">=?");
+                    selectionArgs = DatabaseUtils.appendSelectionArgs(selectionArgs,
+                            new String[]{String.valueOf(parsePagingParameter(changedSince))});
+                }
+
+                // Pages only line up if they are read in the same order as the keys they start after
+                if (sortKey != null) {
+                    sortOrder = sortKey + ", " + InventoryEntry._ID;
+                } else if (afterId != null || (limit != null && sortOrder == null)) {
+                    sortOrder = InventoryEntry._ID;
+                }
+
+                String source = InventoryEntry.SORT_SUPPLIER.equals(sort)
+                        ? InventoryDbHelper.PRODUCTS_BY_SUPPLIER_VIEW_NAME
+                        : productSource(projection, selection, sortOrder);
+
+                cursor = database.query(false, source, projection, selection, selectionArgs,
+                        null, null, sortOrder, limit, cancellationSignal);
+                break;
+            case INVENTORY_ID:
+                cursor = queryProduct(database, ContentUris.parseId(uri), projection);
+                break;
+
+            case INVENTORY_SEARCH:
+                cursor = searchInventory(database, uri, projection, selection, selectionArgs, sortOrder,
+                        cancellationSignal);
+                break;
+
+            case INVENTORY_SKU:
+                // A single probe of the unique SKU index
+                selection = DatabaseUtils.concatenateWhere(selection, InventoryEntry.COLUMN_PRODUCT_SKU + "=?");
+                selectionArgs = DatabaseUtils.appendSelectionArgs(selectionArgs,
+                        new String[]{uri.getLastPathSegment()});
+                cursor = database.query(productSource(projection, selection, sortOrder), projection,
+                        selection, selectionArgs, null, null, sortOrder);
+                // The product changes through its own URI, and a SKU can move to another product
+                cursor.setNotificationUri(getContext().getContentResolver(), InventoryEntry.CONTENT_URI);
+                return cursor;
+
+            case PENDING_SALES:
+                cursor = database.query(PendingSaleEntry.TABLE_NAME, projection, selection, selectionArgs,
+                        null, null, sortOrder);
+                break;
+
+            case INVENTORY_LOW_STOCK:
+                selection = DatabaseUtils.concatenateWhere(selection, InventoryDbHelper.LOW_STOCK_SELECTION);
+                if (sortOrder == null) {
+                    sortOrder = InventoryEntry.COLUMN_PRODUCT_QUANTITY;
+                }
+                cursor = database.query(productSource(projection, selection, sortOrder), projection,
+                        selection, selectionArgs, null, null, sortOrder);
+                // Products drop below their threshold through changes to the products themselves
+                cursor.setNotificationUri(getContext().getContentResolver(), InventoryEntry.CONTENT_URI);
+                return cursor;
+
+            case STOCK_LEDGER:
+                cursor = database.query(StockLedgerEntry.TABLE_NAME, projection, selection, selectionArgs,
+                        null, null, sortOrder);
+                break;
+
+            case STATS:
+                cursor = database.query(StatsEntry.TABLE_NAME, totalsProjection(projection), null, null,
+                        null, null, null);
+                // The totals change with the products, and not through this URI
+                cursor.setNotificationUri(getContext().getContentResolver(), InventoryEntry.CONTENT_URI);
+                return cursor;
+
+            case STATS_SUPPLIERS:
+                if (sortOrder == null) {
+                    sortOrder = StatsEntry.COLUMN_SUPPLIER;
+                }
+                cursor = database.query(StatsEntry.TABLE_NAME, projection, selection, selectionArgs,
+                        null, null, sortOrder);
+                cursor.setNotificationUri(getContext().getContentResolver(), InventoryEntry.CONTENT_URI);
+                return cursor;
+
+            case METRICS:
+                return mMetrics.query(projection);
+
+            default:
+                throw new IllegalArgumentException("Cannot query unknown URI " + uri);
+        }
+
+        cursor.setNotificationUri(getContext().getContentResolver(), uri);
+        return cursor;
+    }
+
+    /**
+     * Turn the columns requested from {@link StatsEntry#CONTENT_URI} into sums over the totals
+     * per supplier, which there are far fewer of than products.
+     */
+    private static String[] totalsProjection(String[] projection) {
+        if (projection == null) {
+            projection = new String[]{
+                    StatsEntry.COLUMN_PRODUCT_COUNT,
+                    StatsEntry.COLUMN_TOTAL_UNITS,
+                    StatsEntry.COLUMN_STOCK_VALUE,
+                    StatsEntry.COLUMN_OUT_OF_STOCK_COUNT};
+        }
+
+        String[] sums = new String[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            String column = projection[i];
+            if (!column.equals(StatsEntry.COLUMN_PRODUCT_COUNT)
+                    && !column.equals(StatsEntry.COLUMN_TOTAL_UNITS)
+                    && !column.equals(StatsEntry.COLUMN_STOCK_VALUE)
+                    && !column.equals(StatsEntry.COLUMN_OUT_OF_STOCK_COUNT)) {
+                throw new IllegalArgumentException("Unknown total " + column);
+            }
+            sums[i] = "IFNULL(SUM(" + column + "), 0) AS " + column;
+        }
+        return sums;
+    }
+
+
+    /**
+     * Read a single product, from the row cache if it holds it. Rows read inside a transaction
+     * on this thread may not be committed yet, so those bypass the cache.
+     */
+    private Cursor queryProduct(SQLiteDatabase database, long id, String[] projection) {
+        String selection = InventoryEntry._ID + "=?";
+        String[] selectionArgs = new String[]{String.valueOf(id)};
+
+        if (!database.inTransaction() && mRowCache.canServe(projection)) {
+            Cursor cursor = mRowCache.get(id, projection);
+            if (cursor != null) {
+                return cursor;
+            }
+
+            long generation = mRowCache.getGeneration();
+            Cursor row = database.query(InventoryDbHelper.PRODUCTS_VIEW_NAME, null, selection, selectionArgs,
+                    null, null, null);
+            try {
+                cursor = mRowCache.put(id, row, generation, projection);
+            } finally {
+                row.close();
+            }
+            if (cursor != null) {
+                return cursor;
+            }
+        }
+
+        return database.query(productSource(projection, null, null), projection, selection, selectionArgs,
+                null, null, null);
+    }
+
+    /**
+     * Return what to read products from: the inventory table itself, unless the query involves
+     * the supplier columns or asks for all columns, in which case the view that joins in the
+     * suppliers. Most reads, like the catalog list, never pay for the join.
+     */
+    private static String productSource(String[] projection, String selection, String sortOrder) {
+        if (projection == null || mentionsSupplier(selection) || mentionsSupplier(sortOrder)) {
+            return InventoryDbHelper.PRODUCTS_VIEW_NAME;
+        }
+        for (String column : projection) {
+            if (mentionsSupplier(column)) {
+                return InventoryDbHelper.PRODUCTS_VIEW_NAME;
+            }
+        }
+        return InventoryEntry.TABLE_NAME;
+    }
+
+    /**
+     * Return the selection as one the inventory table itself can be written with. A selection
+     * on the supplier columns selects the _ids of the matching products from the view instead.
+     */
+    private static String productSelection(String selection) {
+        if (!mentionsSupplier(selection)) {
+            return selection;
+        }
+        return InventoryEntry._ID + " IN (SELECT " + InventoryEntry._ID + " FROM "
+                + InventoryDbHelper.PRODUCTS_VIEW_NAME + " WHERE " + selection + ")";
+    }
+
+    /**
+     * Return true if the SQL names one of the supplier columns the inventory table doesn't have.
+     * The SQL is split into identifiers, bare or quoted, so string literals and longer names
+     * like {@link InventoryEntry#COLUMN_PRODUCT_SUPPLIER_ID} don't count.
+     */
+    private static boolean mentionsSupplier(String sql) {
+        if (sql == null) {
+            return false;
+        }
+
+        int length = sql.length();
+        int i = 0;
+        while (i < length) {
+            char c = sql.charAt(i);
+            if (c == '\'') {
+                // A string literal, in which a quote is escaped by doubling it
+                i++;
+                while (i < length) {
+                    if (sql.charAt(i) == '\'') {
+                        if (i + 1 < length && sql.charAt(i + 1) == '\'') {
+                            i += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    i++;
+                }
+                i++;
+            } else if (c == '"' || c == '`' || c == '[') {
+                char close = c == '[' ? ']' : c;
+                int end = sql.indexOf(close, i + 1);
+                if (end == -1) {
+                    end = length;
+                }
+                if (isSupplierColumn(sql.substring(i + 1, end))) {
+                    return true;
+                }
+                i = end + 1;
+            } else if (Character.isLetterOrDigit(c) || c == '_') {
+                int start = i;
+                while (i < length && (Character.isLetterOrDigit(sql.charAt(i)) || sql.charAt(i) == '_')) {
+                    i++;
+                }
+                if (isSupplierColumn(sql.substring(start, i))) {
+                    return true;
+                }
+            } else {
+                i++;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isSupplierColumn(String name) {
+        return name.equalsIgnoreCase(InventoryEntry.COLUMN_PRODUCT_SUPPLIER)
+                || name.equalsIgnoreCase(InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NUMBER);
+    }
+
+    /**
+     * Find the products whose name or supplier contains a word starting with each word of the
+     * search text, using the full-text index. Unless a sort order is given, products whose name
+     * starts with the first word come first, then shorter names before longer ones, since those
+     * are the closest matches.
+     */
+    private Cursor searchInventory(SQLiteDatabase database, Uri uri, String[] projection, String selection,
+                                   String[] selectionArgs, String sortOrder,
+                                   CancellationSignal cancellationSignal) {
+
+        String source = productSource(projection, selection, sortOrder);
+        String text = uri.getLastPathSegment();
+
+        // Only letters and digits are kept, so nothing the user types is taken as FTS syntax
+        StringBuilder match = new StringBuilder();
+        String firstWord = null;
+        for (String word : text.split("[^\\p{L}\\p{N}]+")) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            if (firstWord == null) {
+                firstWord = word;
+            } else {
+                match.append(' ');
+            }
+            match.append(word).append('*');
+        }
+
+        if (firstWord == null) {
+            return new MatrixCursor(projection != null ? projection : new String[]{InventoryEntry._ID});
+        }
+
+        selection = DatabaseUtils.concatenateWhere(selection, InventoryEntry._ID + " IN (SELECT docid FROM "
+                + InventoryDbHelper.SEARCH_TABLE_NAME + " WHERE " + InventoryDbHelper.SEARCH_TABLE_NAME + " MATCH ?)");
+        selectionArgs = DatabaseUtils.appendSelectionArgs(selectionArgs, new String[]{match.toString()});
+
+        if (sortOrder == null) {
+            sortOrder = InventoryEntry.COLUMN_PRODUCT_NAME + " LIKE ? DESC, length("
+                    + InventoryEntry.COLUMN_PRODUCT_NAME + "), " + InventoryEntry.COLUMN_PRODUCT_NAME;
+            selectionArgs = DatabaseUtils.appendSelectionArgs(selectionArgs, new String[]{firstWord + "%"});
+        }
+
+        String limit = uri.getQueryParameter(InventoryEntry.QUERY_PARAMETER_LIMIT);
+        if (limit != null) {
+            limit = String.valueOf(parsePagingParameter(limit));
+        }
+
+        return database.query(false, source, projection, selection, selectionArgs,
+                null, null, sortOrder, limit, cancellationSignal);
+    }
+
+    /**
+     * Return the key to order products by for the given value of
+     * {@link InventoryEntry#QUERY_PARAMETER_SORT}, or null if it is null. Only keys with a sort
+     * index are allowed, so a sorted page is always an index walk.
+     */
+    private static String sortKeyOf(String sort) {
+        if (sort == null) {
+            return null;
+        }
+        switch (sort) {
+            case InventoryEntry.SORT_NAME:
+                return InventoryDbHelper.SORT_KEY_NAME;
+            case InventoryEntry.SORT_PRICE:
+                return InventoryDbHelper.SORT_KEY_PRICE;
+            case InventoryEntry.SORT_QUANTITY:
+                return InventoryDbHelper.SORT_KEY_QUANTITY;
+            case InventoryEntry.SORT_SUPPLIER:
+                return InventoryDbHelper.SORT_KEY_SUPPLIER;
+            default:
+                throw new IllegalArgumentException("Cannot sort products by " + sort);
+        }
+    }
+
+    /**
+     * Check the value a page sorted the given way starts after. Prices and quantities must be
+     * whole numbers, which SQLite then compares with the column as numbers.
+     */
+    private static String sortValueOf(String sort, String value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Paging products sorted by " + sort
+                    + " needs the value to start after");
+        }
+        if (sort.equals(InventoryEntry.SORT_PRICE) || sort.equals(InventoryEntry.SORT_QUANTITY)) {
+            return String.valueOf(Long.parseLong(value));
+        }
+        return value;
+    }
+
+    /**
+     * Parse the value of a paging query parameter, which must be a non-negative number.
+     */
+    private static long parsePagingParameter(String value) {
+        long number = Long.parseLong(value);
+        if (number < 0) {
+            throw new IllegalArgumentException("Paging parameter must not be negative: " + value);
+        }
+        return number;
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues contentValues) {
+        long start = System.nanoTime();
+        int match = sUriMatcher.match(uri);
+
+        Uri newUri;
+        mDatabaseLock.readLock().lock();
+        try {
+            newUri = insert(match, uri, contentValues);
+        } finally {
+            mDatabaseLock.readLock().unlock();
+        }
+
+        mMetrics.record(ProviderMetrics.INSERT, match, start, newUri != null ? 1 : 0);
+        return newUri;
+    }
+
+    private Uri insert(int match, Uri uri, ContentValues contentValues) {
+        switch (match) {
+            case INVENTORY:
+                return insertInventory(uri, contentValues);
+            case PENDING_SALES:
+                return insertPendingSale(uri, contentValues);
+            default:
+                throw new IllegalArgumentException("Insertion is not supported for " + uri);
+        }
+    }
+
+    /**
+     * Append a sale to the pending sales journal. Listeners are not notified, because the
+     * quantity of the product only changes once the journal is drained.
+     */
+    private Uri insertPendingSale(Uri uri, ContentValues values) {
+
+        if (values.getAsLong(PendingSaleEntry.COLUMN_PRODUCT_ID) == null) {
+            throw new IllegalArgumentException("Pending sale requires a product");
+        }
+
+        if (values.getAsInteger(PendingSaleEntry.COLUMN_QUANTITY_DELTA) == null) {
+            throw new IllegalArgumentException("Pending sale requires a quantity");
+        }
+
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+
+        long id = database.insert(PendingSaleEntry.TABLE_NAME, null, values);
+        if (id == -1) {
+            Log.e(LOG_TAG, "Failed to insert row for " + uri);
+            return null;
+        }
+
+        return ContentUris.withAppendedId(uri, id);
+    }
+
+    /**
+     * Insert a product into the database with the given content values. Return the new content URI
+     * for that specific row in the database.
+     */
+    private Uri insertInventory(Uri uri, ContentValues values) {
+
+        validateInventory(values);
+
+        // Get writable database
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+
+        // Insert the new product with the given values, together with its initial stock
+        long id;
+        database.beginTransactionNonExclusive();
+        try {
+            id = insertProduct(database, values);
+            // A product that couldn't be inserted leaves its supplier as it was
+            if (id != -1) {
+                database.setTransactionSuccessful();
+            }
+        } finally {
+            database.endTransaction();
+            // A new number for an existing supplier also changes its other products. Taken even
+            // if the insert threw, so a later write on this thread doesn't report it
+            takeSupplierChange();
+        }
+
+        // If the ID is -1, then the insertion failed. Log an error and return null.
+        if (id == -1) {
+            Log.e(LOG_TAG, "Failed to insert row for " + uri);
+            return null;
+        }
+
+        //Notify all listeners that the data has been changed for the pet content URI
+        notifyChange(uri);
+
+        // Return the new URI with the ID (of the newly inserted row) appended at the end
+        return ContentUris.withAppendedId(uri, id);
+    }
+
+    /**
+     * Check that the given content values describe a complete product, throwing an
+     * {@link IllegalArgumentException} for the first attribute that is missing or invalid.
+     * Public so importers can reject invalid rows one by one before inserting them.
+     */
+    public static void validateInventory(ContentValues values) {
+
+        String name = values.getAsString(InventoryEntry.COLUMN_PRODUCT_NAME);
+        if (name == null) {
+            throw new IllegalArgumentException("Product must have a name");
+        }
+
+        Integer price = values.getAsInteger(InventoryEntry.COLUMN_PRODUCT_PRICE);
+        if (price == null) {
+            throw new IllegalArgumentException("Product must have a price");
+        }
+        if (price < 0) {
+            throw new IllegalArgumentException("price must be greater than zero");
+        }
+
+        Integer quantity = values.getAsInteger(InventoryEntry.COLUMN_PRODUCT_QUANTITY);
+        if (quantity != null && quantity < 0) {
+            throw new IllegalArgumentException("Quantity must be greater than 0");
+        }
+
+        Integer reorderThreshold = values.getAsInteger(InventoryEntry.COLUMN_PRODUCT_REORDER_THRESHOLD);
+        if (reorderThreshold != null && reorderThreshold < 0) {
+            throw new IllegalArgumentException("Reorder threshold must not be negative");
+        }
+
+        String supplierName = values.getAsString(InventoryEntry.COLUMN_PRODUCT_SUPPLIER);
+        if (supplierName == null) {
+            throw new IllegalArgumentException("Requires a supplier name");
+        }
+
+        String supplierNumber = values.getAsString(InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NUMBER);
+        if (supplierNumber == null) {
+            throw new IllegalArgumentException("Requires a supplier number");
+        }
+
+        String sku = values.getAsString(InventoryEntry.COLUMN_PRODUCT_SKU);
+        if (sku != null && sku.isEmpty()) {
+            throw new IllegalArgumentException("SKU must not be empty");
+        }
+    }
+
+    /**
+     * Insert a product that has already been validated, through the compiled insert statement
+     * when the values allow it, and record its initial stock in the ledger. Its supplier is
+     * added if it is new, and removed again if the product couldn't be inserted. Call inside a
+     * transaction. Return the _id of the new row, or -1 if it couldn't be inserted.
+     */
+    private long insertProduct(SQLiteDatabase database, ContentValues values) {
+        InventoryStatements statements = getStatements();
+
+        long supplierId = resolveSupplier(statements, values.getAsString(InventoryEntry.COLUMN_PRODUCT_SUPPLIER),
+                values.getAsString(InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NUMBER));
+
+        long id;
+        if (InventoryStatements.canInsertProduct(values)) {
+            id = statements.insertProduct(values, supplierId);
+        } else {
+            id = database.insert(InventoryEntry.TABLE_NAME, null, withSupplierId(values, supplierId));
+        }
+
+        if (id == -1) {
+            deleteUnusedSupplier(database, supplierId);
+            return -1;
+        }
+
+        Integer quantity = values.getAsInteger(InventoryEntry.COLUMN_PRODUCT_QUANTITY);
+        if (quantity != null && quantity > 0) {
+            statements.insertLedgerEntry(id, StockLedgerEntry.KIND_RESTOCK, quantity, quantity,
+                    System.currentTimeMillis());
+        }
+
+        return id;
+    }
+
+    /**
+     * Return the _id of the supplier with the given name, adding it with the given phone number
+     * if there is none. Otherwise a phone number, if given, replaces the one the supplier has.
+     * Call inside a transaction.
+     */
+    private long resolveSupplier(InventoryStatements statements, String name, String phoneNumber) {
+        long id = statements.querySupplierId(name);
+        if (id == -1) {
+            if (phoneNumber == null) {
+                throw new IllegalArgumentException("New supplier " + name + " requires a supplier number");
+            }
+            return statements.insertSupplier(name, phoneNumber);
+        }
+
+        if (phoneNumber != null && statements.updateSupplierPhoneNumber(id, phoneNumber)) {
+            mSupplierChanged.set(Boolean.TRUE);
+        }
+        return id;
+    }
+
+    /**
+     * Remove the given supplier if no product has it, which is the case when it was added for a
+     * write that then didn't change any product. Call inside a transaction.
+     */
+    private static void deleteUnusedSupplier(SQLiteDatabase database, long supplierId) {
+        String id = String.valueOf(supplierId);
+        database.delete(SupplierEntry.TABLE_NAME, SupplierEntry._ID + "=? AND NOT EXISTS (SELECT 1 FROM "
+                        + InventoryEntry.TABLE_NAME + " WHERE " + InventoryEntry.COLUMN_PRODUCT_SUPPLIER_ID + "=?)",
+                new String[]{id, id});
+    }
+
+    /**
+     * Return a copy of the values with the supplier columns replaced by the _id of the supplier.
+     */
+    private static ContentValues withSupplierId(ContentValues values, long supplierId) {
+        ContentValues row = new ContentValues(values);
+        row.remove(InventoryEntry.COLUMN_PRODUCT_SUPPLIER);
+        row.remove(InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NUMBER);
+        row.put(InventoryEntry.COLUMN_PRODUCT_SUPPLIER_ID, supplierId);
+        return row;
+    }
+
+    /**
+     * Return true if a write on this thread gave a supplier a new phone number since this was
+     * last called, after dropping every cached row, since any of them may be of that supplier.
+     * Call once the transaction of every write has ended, even one that threw, so the flag
+     * never outlives the write that set it.
+     */
+    private boolean takeSupplierChange() {
+        if (mSupplierChanged.get() == null) {
+            return false;
+        }
+        mSupplierChanged.remove();
+        mRowCache.invalidateAll();
+        return true;
+    }
+
+    /**
+     * Insert all of the given products inside a single transaction. Every row is validated the
+     * same way as {@link #insert}, and if any row is invalid nothing is inserted. Listeners are
+     * notified once, after the transaction has been committed.
+     */
+    @Override
+    public int bulkInsert(Uri uri, ContentValues[] valuesArray) {
+        long start = System.nanoTime();
+        int match = sUriMatcher.match(uri);
+
+        int rowsInserted;
+        mDatabaseLock.readLock().lock();
+        try {
+            rowsInserted = bulkInsert(match, uri, valuesArray);
+        } finally {
+            mDatabaseLock.readLock().unlock();
+        }
+
+        mMetrics.record(ProviderMetrics.BULK_INSERT, match, start, rowsInserted);
+        return rowsInserted;
+    }
+
+    private int bulkInsert(int match, Uri uri, ContentValues[] valuesArray) {
+        if (match != INVENTORY) {
+            throw new IllegalArgumentException("Bulk insertion is not supported for " + uri);
+        }
+
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+
+        int rowsInserted = 0;
+
+        database.beginTransactionNonExclusive();
+        try {
+            for (ContentValues values : valuesArray) {
+                validateInventory(values);
+                if (insertProduct(database, values) == -1) {
+                    Log.e(LOG_TAG, "Failed to insert row for " + uri);
+                } else {
+                    rowsInserted++;
+                }
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+            takeSupplierChange();
+        }
+
+        if (rowsInserted != 0) {
+            mDbHelper.checkpoint();
+            notifyChange(uri);
+        }
+
+        return rowsInserted;
+    }
+
+    /**
+     * Apply the given operations inside a single transaction, so either all of them take effect
+     * or none do. The per-operation change notifications are suppressed and replaced by a single
+     * notification once the transaction has been committed.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        // The operations take the lock again, which a thread already holding it always can
+        mDatabaseLock.readLock().lock();
+        try {
+            return applyBatchInTransaction(operations);
+        } finally {
+            mDatabaseLock.readLock().unlock();
+        }
+    }
+
+    private ContentProviderResult[] applyBatchInTransaction(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+
+        ContentProviderResult[] results;
+
+        List<Long> deletedPhotoIds = new ArrayList<>();
+        mApplyingBatch.set(deletedPhotoIds);
+        database.beginTransactionNonExclusive();
+        try {
+            results = super.applyBatch(operations);
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+            mApplyingBatch.remove();
+        }
+
+        for (long id : deletedPhotoIds) {
+            mPhotos.deletePhoto(id);
+        }
+
+        // Rows may have been read into the cache while the batch was still uncommitted
+        mRowCache.invalidateAll();
+
+        if (!operations.isEmpty()) {
+            mDbHelper.checkpoint();
+            notifyChange(InventoryEntry.CONTENT_URI);
+        }
+
+        return results;
+    }
+
+    /**
+     * Notify all listeners that the data behind the given URI has changed, unless a batch is
+     * being applied on this thread, in which case {@link #applyBatch} notifies once at the end.
+     *
+     * A product URI means only the contents of that row changed, or that it was deleted.
+     * The {@link InventoryEntry#CONTENT_URI} itself means any number of products may have been
+     * added, removed or changed. Observers of the whole table should register for descendants
+     * so they receive both.
+     */
+    private void notifyChange(Uri uri) {
+        if (mApplyingBatch.get() == null) {
+            long start = System.nanoTime();
+            getContext().getContentResolver().notifyChange(uri, null);
+            mMetrics.record(ProviderMetrics.NOTIFY, sUriMatcher.match(uri), start, 0);
+        }
+    }
+
+
+    /**
+     * Record in the stock ledger that the quantity of the products matching the selection is
+     * about to be set to the given value, for each of them whose quantity is different. Call in
+     * the same transaction as the update, before it.
+     */
+    private void recordCorrections(SQLiteDatabase database, int quantity, String selection,
+                                   String[] selectionArgs) {
+        selection = DatabaseUtils.concatenateWhere(selection, InventoryEntry.COLUMN_PRODUCT_QUANTITY + " != ?");
+
+        // The new quantity and time come first in the statement, then the selection arguments
+        Object[] bindArgs = new Object[4 + (selectionArgs == null ? 0 : selectionArgs.length)];
+        bindArgs[0] = quantity;
+        bindArgs[1] = quantity;
+        bindArgs[2] = System.currentTimeMillis();
+        if (selectionArgs != null) {
+            System.arraycopy(selectionArgs, 0, bindArgs, 3, selectionArgs.length);
+        }
+        bindArgs[bindArgs.length - 1] = quantity;
+
+        database.execSQL("INSERT INTO " + StockLedgerEntry.TABLE_NAME + " ("
+                + StockLedgerEntry.COLUMN_PRODUCT_ID + ", " + StockLedgerEntry.COLUMN_KIND + ", "
+                + StockLedgerEntry.COLUMN_QUANTITY_DELTA + ", " + StockLedgerEntry.COLUMN_QUANTITY + ", "
+                + StockLedgerEntry.COLUMN_TIME + ") SELECT " + InventoryEntry._ID + ", '"
+                + StockLedgerEntry.KIND_CORRECTION + "', ? - " + InventoryEntry.COLUMN_PRODUCT_QUANTITY
+                + ", ?, ? FROM " + InventoryEntry.TABLE_NAME + " WHERE " + selection, bindArgs);
+    }
+
+    /**
+     * Drop the cached rows a write to the given URI may have changed: just the one row for a
+     * product URI, all of them otherwise.
+     */
+    private void invalidateRows(Uri uri) {
+        if (sUriMatcher.match(uri) == INVENTORY_ID) {
+            mRowCache.invalidate(ContentUris.parseId(uri));
+        } else {
+            mRowCache.invalidateAll();
+        }
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues contentValues, String selection, String[] selectionArgs) {
+        long start = System.nanoTime();
+        int match = sUriMatcher.match(uri);
+
+        int rowsUpdated;
+        mDatabaseLock.readLock().lock();
+        try {
+            rowsUpdated = update(match, uri, contentValues, selection, selectionArgs);
+        } finally {
+            mDatabaseLock.readLock().unlock();
+        }
+
+        mMetrics.record(ProviderMetrics.UPDATE, match, start, rowsUpdated);
+        return rowsUpdated;
+    }
+
+    private int update(int match, Uri uri, ContentValues contentValues, String selection,
+                       String[] selectionArgs) {
+        switch (match) {
+            case INVENTORY:
+                return updateInventory(uri, contentValues, selection, selectionArgs);
+            case INVENTORY_ID:
+                // For the INVENTORY_ID code, extract out the ID from the URI,
+                // so we know which row to update. Selection will be "_id=?" and selection
+                // arguments will be a String array containing the actual ID.
+                selection = InventoryEntry._ID + "=?";
+                selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
+                return updateInventory(uri, contentValues, selection, selectionArgs);
+            default:
+                throw new IllegalArgumentException("Update is not supported for " + uri);
+        }
+    }
+
+    private int updateInventory(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+
+        if (values.containsKey(InventoryEntry.COLUMN_PRODUCT_NAME)) {
+            String name = values.getAsString(InventoryEntry.COLUMN_PRODUCT_NAME);
+            if (name == null) {
+                throw new IllegalArgumentException("Product requires a name");
+            }
+        }
+
+        if (values.containsKey(InventoryEntry.COLUMN_PRODUCT_PRICE)) {
+            Integer price = values.getAsInteger(InventoryEntry.COLUMN_PRODUCT_PRICE);
+            if (price != null && price < 0) {
+                throw new IllegalArgumentException("Must enter a price greater than 0");
+            }
+        }
+
+        if (values.containsKey(InventoryEntry.COLUMN_PRODUCT_QUANTITY)) {
+            Integer quantity = values.getAsInteger(InventoryEntry.COLUMN_PRODUCT_QUANTITY);
+            if (quantity != null && quantity < 0) {
+                throw new IllegalArgumentException("Must enter a valid quantity");
+            }
+        }
+
+        if (values.containsKey(InventoryEntry.COLUMN_PRODUCT_REORDER_THRESHOLD)) {
+            Integer reorderThreshold = values.getAsInteger(InventoryEntry.COLUMN_PRODUCT_REORDER_THRESHOLD);
+            if (reorderThreshold == null || reorderThreshold < 0) {
+                throw new IllegalArgumentException("Must enter a valid reorder threshold");
+            }
+        }
+
+        // The number belongs to the supplier, so it is only changed for a supplier named with it
+        if (values.containsKey(InventoryEntry.COLUMN_PRODUCT_SUPPLIER)) {
+            if (values.getAsString(InventoryEntry.COLUMN_PRODUCT_SUPPLIER) == null) {
+                throw new IllegalArgumentException("Product requires a supplier name");
+            }
+        } else if (values.containsKey(InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NUMBER)) {
+            throw new IllegalArgumentException("Supplier number can only be changed together with the supplier name");
+        }
+
+        if (values.containsKey(InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NUMBER)
+                && values.getAsString(InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NUMBER) == null) {
+            throw new IllegalArgumentException("Product requires a supplier number");
+        }
+
+        // Null removes the SKU
+        if (values.containsKey(InventoryEntry.COLUMN_PRODUCT_SKU)) {
+            String sku = values.getAsString(InventoryEntry.COLUMN_PRODUCT_SKU);
+            if (sku != null && sku.isEmpty()) {
+                throw new IllegalArgumentException("SKU must not be empty");
+            }
+        }
 
-    private static final int INVENTORY = 100;
+        if (values.size() == 0) {
+            return 0;
+        }
 
-    private static final int INVENTORY_ID = 101;
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
 
-    private static final UriMatcher sUriMatcher = new UriMatcher(UriMatcher.NO_MATCH);
+        selection = productSelection(selection);
 
-    static {
+        int rowsUpdated;
+        boolean supplierChanged;
 
-        sUriMatcher.addURI(InventoryContract.CONTENT_AUTHORITY, InventoryContract.PATH_INVENTORY, INVENTORY);
+        database.beginTransactionNonExclusive();
+        try {
+            ContentValues row = values;
+            long supplierId = -1;
+            if (values.containsKey(InventoryEntry.COLUMN_PRODUCT_SUPPLIER)) {
+                supplierId = resolveSupplier(getStatements(),
+                        values.getAsString(InventoryEntry.COLUMN_PRODUCT_SUPPLIER),
+                        values.getAsString(InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NUMBER));
+                row = withSupplierId(values, supplierId);
+            }
 
-        sUriMatcher.addURI(InventoryContract.CONTENT_AUTHORITY, InventoryContract.PATH_INVENTORY + "/#", INVENTORY_ID);
-    }
+            Integer quantity = values.getAsInteger(InventoryEntry.COLUMN_PRODUCT_QUANTITY);
+            if (quantity != null) {
+                recordCorrections(database, quantity, selection, selectionArgs);
+            }
+            rowsUpdated = database.update(InventoryEntry.TABLE_NAME, row, selection, selectionArgs);
+            if (rowsUpdated == 0 && supplierId != -1) {
+                deleteUnusedSupplier(database, supplierId);
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+            supplierChanged = takeSupplierChange();
+        }
 
-    private InventoryDbHelper mDbHelper;
+        if (supplierChanged) {
+            // Every product of the supplier changed, not only the ones updated
+            notifyChange(InventoryEntry.CONTENT_URI);
+        } else if (rowsUpdated != 0) {
+            invalidateRows(uri);
+            notifyChange(uri);
 
-    @Override
-    public boolean onCreate() {
-        mDbHelper = new InventoryDbHelper(getContext());
-        return true;
-    }
+        }
 
+        return rowsUpdated;
+    }
 
+    /**
+     * Handle the {@link InventoryEntry#METHOD_ADJUST_QUANTITY} method, which changes the quantity
+     * of a single product relative to its current value, and the
+     * {@link InventoryEntry#METHOD_ADJUST_QUANTITY_BY_SKU},
+     * {@link PendingSaleEntry#METHOD_DRAIN_PENDING_SALES}, {@link InventoryEntry#METHOD_CHECK_LOW_STOCK},
+     * {@link StockLedgerEntry#METHOD_GET_QUANTITY_AT}, {@link StockLedgerEntry#METHOD_COMPACT_LEDGER},
+     * {@link InventoryEntry#METHOD_GET_ROW_CACHE_STATS} and {@link InventoryEntry#METHOD_SET_PHOTO}
+     * methods. A missing or malformed argument or extra throws an {@link IllegalArgumentException}.
+     */
     @Override
-    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
-                        String sortOrder) {
+    public Bundle call(String method, String arg, Bundle extras) {
+        // Takes the lock for writing, which can't be done while holding it for reading
+        if (InventoryContract.METHOD_RESTORE_DATABASE.equals(method)) {
+            restoreDatabase(requireFile(arg));
+            return null;
+        }
 
-        SQLiteDatabase database = mDbHelper.getReadableDatabase();
+        mDatabaseLock.readLock().lock();
+        try {
+            return callMethod(method, arg, extras);
+        } finally {
+            mDatabaseLock.readLock().unlock();
+        }
+    }
 
-        Cursor cursor;
+    private Bundle callMethod(String method, String arg, Bundle extras) {
+        if (InventoryEntry.METHOD_ADJUST_QUANTITY.equals(method)) {
+            long id = requireProductId(arg);
+            int delta = requireExtras(extras, InventoryEntry.EXTRA_QUANTITY_DELTA)
+                    .getInt(InventoryEntry.EXTRA_QUANTITY_DELTA);
 
-        int match = sUriMatcher.match(uri);
-        switch (match) {
-            case INVENTORY:
-                cursor = database.query(InventoryEntry.TABLE_NAME, projection, selection, selectionArgs,
-                        null, null, sortOrder);
-                break;
-            case INVENTORY_ID:
+            int quantity = adjustQuantity(id, delta);
+            if (quantity < 0) {
+                return null;
+            }
 
-                selection = InventoryEntry._ID + "=?";
-                selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
+            Bundle result = new Bundle();
+            result.putInt(InventoryEntry.EXTRA_QUANTITY, quantity);
+            return result;
+        }
+        if (InventoryEntry.METHOD_ADJUST_QUANTITY_BY_SKU.equals(method)) {
+            if (TextUtils.isEmpty(arg)) {
+                throw new IllegalArgumentException("Requires a SKU");
+            }
+            return adjustQuantityBySku(arg, requireExtras(extras, InventoryEntry.EXTRA_QUANTITY_DELTA)
+                    .getInt(InventoryEntry.EXTRA_QUANTITY_DELTA));
+        }
+        if (PendingSaleEntry.METHOD_DRAIN_PENDING_SALES.equals(method)) {
+            return drainPendingSales();
+        }
+        if (InventoryEntry.METHOD_CHECK_LOW_STOCK.equals(method)) {
+            Bundle result = new Bundle();
+            result.putLongArray(InventoryEntry.EXTRA_LOW_STOCK_IDS, checkLowStock());
+            return result;
+        }
+        if (StockLedgerEntry.METHOD_GET_QUANTITY_AT.equals(method)) {
+            int quantity = mDbHelper.queryQuantityAt(requireProductId(arg),
+                    requireExtras(extras, StockLedgerEntry.EXTRA_TIME).getLong(StockLedgerEntry.EXTRA_TIME));
+            if (quantity < 0) {
+                return null;
+            }
 
-                cursor = database.query(InventoryEntry.TABLE_NAME, projection, selection, selectionArgs,
-                        null, null, sortOrder);
-                break;
+            Bundle result = new Bundle();
+            result.putInt(StockLedgerEntry.EXTRA_QUANTITY, quantity);
+            return result;
+        }
+        if (StockLedgerEntry.METHOD_COMPACT_LEDGER.equals(method)) {
+            Bundle result = new Bundle();
+            result.putInt(StockLedgerEntry.EXTRA_COMPACTED_COUNT, compactLedger());
+            return result;
+        }
+        if (InventoryContract.METHOD_BACK_UP_DATABASE.equals(method)) {
+            try {
+                mDbHelper.backUpTo(requireFile(arg));
+            } catch (IOException e) {
+                throw new IllegalStateException(e.getMessage(), e);
+            }
+            return null;
+        }
+        if (InventoryEntry.METHOD_GET_ROW_CACHE_STATS.equals(method)) {
+            Bundle result = new Bundle();
+            result.putInt(InventoryEntry.EXTRA_CACHE_SIZE, mRowCache.size());
+            result.putInt(InventoryEntry.EXTRA_CACHE_HITS, mRowCache.hitCount());
+            result.putInt(InventoryEntry.EXTRA_CACHE_MISSES, mRowCache.missCount());
+            result.putInt(InventoryEntry.EXTRA_CACHE_EVICTIONS, mRowCache.evictionCount());
+            return result;
+        }
+        if (InventoryEntry.METHOD_SET_PHOTO.equals(method)) {
+            Uri source = extras != null ? (Uri) extras.getParcelable(InventoryEntry.EXTRA_PHOTO_SOURCE) : null;
+            long photoTime = setPhoto(requireProductId(arg), source);
+            if (photoTime < 0) {
+                return null;
+            }
 
-            default:
-                throw new IllegalArgumentException("Cannot query unknown URI " + uri);
+            Bundle result = new Bundle();
+            result.putLong(InventoryEntry.EXTRA_PHOTO_TIME, photoTime);
+            return result;
         }
+        return super.call(method, arg, extras);
+    }
 
-        cursor.setNotificationUri(getContext().getContentResolver(), uri);
-        return cursor;
+    /**
+     * Return the product id passed as the argument of a method.
+     */
+    private static long requireProductId(String arg) {
+        if (arg == null) {
+            throw new IllegalArgumentException("Requires a product id");
+        }
+        try {
+            return Long.parseLong(arg);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid product id: " + arg);
+        }
     }
 
+    /**
+     * Return the extras of a method, which must hold the given key.
+     */
+    private static Bundle requireExtras(Bundle extras, String key) {
+        if (extras == null || !extras.containsKey(key)) {
+            throw new IllegalArgumentException("Requires " + key);
+        }
+        return extras;
+    }
 
-    @Override
-    public Uri insert(Uri uri, ContentValues contentValues) {
-        final int match = sUriMatcher.match(uri);
-        switch (match) {
-            case INVENTORY:
-                return insertInventory(uri, contentValues);
-            default:
-                throw new IllegalArgumentException("Insertion is not supported for " + uri);
+    /**
+     * Return the file passed as the argument of a method.
+     */
+    private static File requireFile(String arg) {
+        if (TextUtils.isEmpty(arg)) {
+            throw new IllegalArgumentException("Requires a file");
         }
+        return new File(arg);
     }
 
     /**
-     * Insert a product into the database with the given content values. Return the new content URI
-     * for that specific row in the database.
+     * Set the photo of the given product to a copy of the image at the source, or remove it if
+     * the source is null, then record when in the row of the product. The file is written first,
+     * so the row never points at a photo that isn't there yet. Return the new photo time, or -1
+     * if the product does not exist, in which case no photo is kept for it.
      */
-    private Uri insertInventory(Uri uri, ContentValues values) {
+    private long setPhoto(long id, Uri source) {
+        long photoTime = 0;
+        if (source != null) {
+            try {
+                InputStream input = getContext().getContentResolver().openInputStream(source);
+                if (input == null) {
+                    throw new IllegalArgumentException("Cannot read photo from " + source);
+                }
+                try {
+                    mPhotos.setPhoto(id, input);
+                } finally {
+                    input.close();
+                }
+            } catch (FileNotFoundException e) {
+                throw new IllegalArgumentException("Cannot read photo from " + source, e);
+            } catch (IOException e) {
+                throw new IllegalStateException(e.getMessage(), e);
+            }
+            photoTime = System.currentTimeMillis();
+        }
 
-        String name = values.getAsString(InventoryEntry.COLUMN_PRODUCT_NAME);
-        if (name == null) {
-            throw new IllegalArgumentException("Product must have a name");
+        ContentValues values = new ContentValues();
+        values.put(InventoryEntry.COLUMN_PRODUCT_PHOTO_TIME, photoTime);
+        int rowsUpdated = mDbHelper.getWritableDatabase().update(InventoryEntry.TABLE_NAME, values,
+                InventoryEntry._ID + "=?", new String[]{String.valueOf(id)});
+
+        // A product deleted meanwhile had its photo removed already, if it had one, so this one
+        // would never be removed otherwise
+        if (source == null || rowsUpdated == 0) {
+            mPhotos.deletePhoto(id);
+        }
+        if (rowsUpdated == 0) {
+            return -1;
         }
 
-        Integer price = values.getAsInteger(InventoryEntry.COLUMN_PRODUCT_PRICE);
-        if (price < 0) {
-            throw new IllegalArgumentException("price must be greater than zero");
+        mRowCache.invalidate(id);
+        notifyChange(ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, id));
+        return photoTime;
+    }
+
+    /**
+     * Open the photo or thumbnail of a product for reading; the default
+     * {@link #openAssetFile} serves them through this as well. Photos are only written through
+     * {@link InventoryEntry#METHOD_SET_PHOTO}, which also keeps the photo time of the product in
+     * step with the file.
+     */
+    @Override
+    public ParcelFileDescriptor openFile(Uri uri, String mode) throws FileNotFoundException {
+        long start = System.nanoTime();
+        int match = sUriMatcher.match(uri);
+
+        if (match != INVENTORY_PHOTO && match != INVENTORY_THUMBNAIL) {
+            throw new FileNotFoundException("No file at " + uri);
+        }
+        if (!"r".equals(mode)) {
+            throw new FileNotFoundException("Photos can only be opened for reading, not " + mode);
         }
 
-        Integer quantity = values.getAsInteger(InventoryEntry.COLUMN_PRODUCT_QUANTITY);
-        if (quantity != null && quantity < 0) {
-            throw new IllegalArgumentException("Quantity must be greater than 0");
+        long id = Long.parseLong(uri.getPathSegments().get(1));
+        ParcelFileDescriptor descriptor;
+        mDatabaseLock.readLock().lock();
+        try {
+            File file = match == INVENTORY_PHOTO ? mPhotos.getPhoto(id) : mPhotos.getThumbnail(id);
+            descriptor = ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY);
+        } finally {
+            mDatabaseLock.readLock().unlock();
         }
 
-        String supplierName = values.getAsString(InventoryEntry.COLUMN_PRODUCT_SUPPLIER);
-        if (supplierName == null) {
-            throw new IllegalArgumentException("Requires a supplier name");
+        mMetrics.record(ProviderMetrics.OPEN_FILE, match, start, 1);
+        return descriptor;
+    }
+
+    /**
+     * Replace the database file with the backup and reopen it, upgrading it if it was made by an
+     * older version. Waits for the operations under way to finish and holds off new ones until
+     * the backup is in place. Cursors returned before keep reading from the old database.
+     * Holding the lock for writing also keeps restores apart; taking the provider's monitor here
+     * as well would deadlock with operations, which take it while holding the lock for reading.
+     */
+    private void restoreDatabase(File backup) {
+        InventoryDbHelper.checkBackup(backup);
+
+        mDatabaseLock.writeLock().lock();
+        try {
+            File databaseFile = new File(mDbHelper.getWritableDatabase().getPath());
+
+            // Move everything in the log into the database file first, so it is whole on its
+            // own and the old database is intact if the move fails
+            mDbHelper.checkpointFully();
+
+            if (mStatements != null) {
+                mStatements.close();
+                mStatements = null;
+            }
+            mDbHelper.close();
+            new File(databaseFile.getPath() + "-wal").delete();
+            new File(databaseFile.getPath() + "-shm").delete();
+
+            boolean moved = backup.renameTo(databaseFile);
+
+            mDbHelper = new InventoryDbHelper(getContext());
+            mRowCache.invalidateAll();
+            mLastLedgerCompactionTime = 0;
+
+            if (!moved) {
+                throw new IllegalStateException("Failed to move " + backup + " to " + databaseFile);
+            }
+        } finally {
+            mDatabaseLock.writeLock().unlock();
         }
 
-        String supplierNumber = values.getAsString(InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NUMBER);
-        if (supplierNumber == null) {
-            throw new IllegalArgumentException("Requires a supplier number");
+        // Every table changed, so let every observer know
+        getContext().getContentResolver().notifyChange(InventoryContract.BASE_CONTENT_URI, null);
+    }
+
+    /**
+     * Add the delta to the quantity of the given product in the database itself, so concurrent
+     * sales and edits can't overwrite each other. Return the new quantity, or -1 if the product
+     * does not exist or the quantity would become negative, in which case nothing is changed.
+     */
+    private int adjustQuantity(long id, int delta) {
+
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        InventoryStatements statements = getStatements();
+
+        int quantity;
+
+        database.beginTransactionNonExclusive();
+        try {
+            quantity = applyQuantityDelta(statements, id, delta);
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        if (quantity >= 0) {
+            mRowCache.invalidate(id);
+            notifyChange(ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, id));
         }
 
+        return quantity;
+    }
+
+    /**
+     * Find the product with the given SKU and adjust its quantity as {@link #adjustQuantity}
+     * does, in the same transaction, so a sale read by a scanner takes one call and one index
+     * probe. Return the result of {@link InventoryEntry#METHOD_ADJUST_QUANTITY_BY_SKU}.
+     */
+    private Bundle adjustQuantityBySku(String sku, int delta) {
 
-        // Get writable database
         SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        InventoryStatements statements = getStatements();
+
+        long id;
+        int quantity = -1;
+        boolean adjusted = false;
+
+        database.beginTransactionNonExclusive();
+        try {
+            id = statements.queryProductIdBySku(sku);
+            if (id != -1) {
+                quantity = applyQuantityDelta(statements, id, delta);
+                adjusted = quantity >= 0;
+                if (!adjusted) {
+                    quantity = statements.queryQuantity(id);
+                }
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
 
-        // Insert the new product with the given values
-        long id = database.insert(InventoryEntry.TABLE_NAME, null, values);
-        // If the ID is -1, then the insertion failed. Log an error and return null.
         if (id == -1) {
-            Log.e(LOG_TAG, "Failed to insert row for " + uri);
             return null;
         }
 
-        //Notify all listeners that the data has been changed for the pet content URI
-        getContext().getContentResolver().notifyChange(uri, null);
+        if (adjusted) {
+            mRowCache.invalidate(id);
+            notifyChange(ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, id));
+        }
 
-        // Return the new URI with the ID (of the newly inserted row) appended at the end
-        return ContentUris.withAppendedId(uri, id);
+        Bundle result = new Bundle();
+        result.putLong(InventoryEntry.EXTRA_PRODUCT_ID, id);
+        result.putInt(InventoryEntry.EXTRA_QUANTITY, quantity);
+        result.putBoolean(InventoryEntry.EXTRA_QUANTITY_ADJUSTED, adjusted);
+        return result;
     }
 
-
-    @Override
-    public int update(Uri uri, ContentValues contentValues, String selection, String[] selectionArgs) {
-        final int match = sUriMatcher.match(uri);
-        switch (match) {
-            case INVENTORY:
-                return updateInventory(uri, contentValues, selection, selectionArgs);
-            case INVENTORY_ID:
-                // For the INVENTORY_ID code, extract out the ID from the URI,
-                // so we know which row to update. Selection will be "_id=?" and selection
-                // arguments will be a String array containing the actual ID.
-                selection = InventoryEntry._ID + "=?";
-                selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
-                return updateInventory(uri, contentValues, selection, selectionArgs);
-            default:
-                throw new IllegalArgumentException("Update is not supported for " + uri);
+    /**
+     * Add the delta to the quantity of the product and record the change in the stock ledger,
+     * unless the product does not exist or the quantity would become negative. Call inside a
+     * transaction. Return the new quantity, or -1 if nothing was changed.
+     */
+    private static int applyQuantityDelta(InventoryStatements statements, long id, int delta) {
+        if (!statements.adjustQuantity(id, delta)) {
+            return -1;
         }
+        int quantity = statements.queryQuantity(id);
+        statements.insertLedgerEntry(id, movementKind(delta), delta, quantity, System.currentTimeMillis());
+        return quantity;
     }
 
-    private int updateInventory(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+    /**
+     * Apply the sales in the pending sales journal to their products one at a time, in the order
+     * they were made, and remove those applied from the journal, all in one transaction so a sale
+     * is never applied twice or lost if the process dies. A sale that would make the quantity
+     * negative, for example because the quantity was edited meanwhile, stays in the journal to be
+     * applied by a later drain. Sales of products that no longer exist are dropped.
+     */
+    private Bundle drainPendingSales() {
 
-        if (values.containsKey(InventoryEntry.COLUMN_PRODUCT_NAME)) {
-            String name = values.getAsString(InventoryEntry.COLUMN_PRODUCT_NAME);
-            if (name == null) {
-                throw new IllegalArgumentException("Product requires a name");
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+
+        // Deltas removed from the journal, summed per product
+        Map<Long, Integer> drained = new LinkedHashMap<>();
+        int kept = 0;
+
+        database.beginTransactionNonExclusive();
+        try {
+            String[] projection = {
+                    PendingSaleEntry._ID,
+                    PendingSaleEntry.COLUMN_PRODUCT_ID,
+                    PendingSaleEntry.COLUMN_QUANTITY_DELTA};
+
+            Cursor cursor = database.query(PendingSaleEntry.TABLE_NAME, projection, null, null,
+                    null, null, PendingSaleEntry._ID);
+
+            try {
+                InventoryStatements statements = getStatements();
+                while (cursor.moveToNext()) {
+                    long saleId = cursor.getLong(0);
+                    long productId = cursor.getLong(1);
+                    int delta = cursor.getInt(2);
+
+                    if (applyQuantityDelta(statements, productId, delta) < 0) {
+                        if (statements.queryQuantity(productId) >= 0) {
+                            kept++;
+                            continue;
+                        }
+                        Log.w(LOG_TAG, "Dropped pending sale of " + delta + " for deleted product " + productId);
+                    }
+
+                    database.delete(PendingSaleEntry.TABLE_NAME, PendingSaleEntry._ID + "=?",
+                            new String[]{String.valueOf(saleId)});
+                    Integer sum = drained.get(productId);
+                    drained.put(productId, (sum == null ? 0 : sum) + delta);
+                }
+            } finally {
+                cursor.close();
             }
+
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
         }
 
-        if (values.containsKey(InventoryEntry.COLUMN_PRODUCT_PRICE)) {
-            Integer price = values.getAsInteger(InventoryEntry.COLUMN_PRODUCT_PRICE);
-            if (price != null && price < 0) {
-                throw new IllegalArgumentException("Must enter a price greater than 0");
-            }
+        if (kept != 0) {
+            Log.w(LOG_TAG, "Kept " + kept + " pending sales that exceed the quantity in stock");
         }
 
-        if (values.containsKey(InventoryEntry.COLUMN_PRODUCT_QUANTITY)) {
-            Integer quantity = values.getAsInteger(InventoryEntry.COLUMN_PRODUCT_QUANTITY);
-            if (quantity != null && quantity < 0) {
-                throw new IllegalArgumentException("Must enter a valid quantity");
+        long[] productIds = new long[drained.size()];
+        int[] deltas = new int[drained.size()];
+        int i = 0;
+        for (Map.Entry<Long, Integer> entry : drained.entrySet()) {
+            productIds[i] = entry.getKey();
+            deltas[i] = entry.getValue();
+            i++;
+        }
+
+        // Only the quantities changed, so tell observers which rows rather than reloading everything
+        for (long productId : productIds) {
+            mRowCache.invalidate(productId);
+            notifyChange(ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, productId));
+        }
+
+        compactLedgerIfDue();
+
+        Bundle result = new Bundle();
+        result.putLongArray(PendingSaleEntry.EXTRA_PRODUCT_IDS, productIds);
+        result.putIntArray(PendingSaleEntry.EXTRA_QUANTITY_DELTAS, deltas);
+        return result;
+    }
+
+    /**
+     * Return the kind of stock ledger entry for a relative change in quantity.
+     */
+    private static String movementKind(int delta) {
+        return delta < 0 ? StockLedgerEntry.KIND_SALE : StockLedgerEntry.KIND_RESTOCK;
+    }
+
+    /**
+     * Compact the stock ledger if it wasn't for longer than the compaction interval.
+     */
+    private void compactLedgerIfDue() {
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            if (now - mLastLedgerCompactionTime < LEDGER_COMPACTION_INTERVAL_MILLIS) {
+                return;
             }
+            mLastLedgerCompactionTime = now;
         }
+        compactLedger();
+    }
 
+    /**
+     * Compact the stock ledger entries older than the retention period. Return the number of
+     * entries removed.
+     */
+    private int compactLedger() {
+        int entriesRemoved = mDbHelper.compactLedger(System.currentTimeMillis());
 
-        if (values.size() == 0) {
-            return 0;
+        if (entriesRemoved != 0) {
+            Log.i(LOG_TAG, "Compacted " + entriesRemoved + " stock ledger entries");
         }
 
+        return entriesRemoved;
+    }
+
+    /**
+     * Look at each product that changed since the last check, marked by triggers, and record
+     * which are now low on stock and which no longer are. Return the _ids of those that weren't
+     * low on stock at the last check but are now. Products that didn't change aren't looked at.
+     */
+    private long[] checkLowStock() {
+
         SQLiteDatabase database = mDbHelper.getWritableDatabase();
 
-        int rowsUpdated = database.update(InventoryEntry.TABLE_NAME, values, selection, selectionArgs);
+        String dirty = InventoryDbHelper.LOW_STOCK_DIRTY_TABLE_NAME;
+        String alerts = InventoryDbHelper.LOW_STOCK_ALERTS_TABLE_NAME;
+        String productId = InventoryDbHelper.COLUMN_LOW_STOCK_PRODUCT_ID;
 
-        if (rowsUpdated != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+        long[] lowStockIds;
+
+        database.beginTransactionNonExclusive();
+        try {
+            // CROSS JOIN makes SQLite go through the changed products rather than the low ones
+            Cursor cursor = database.rawQuery("SELECT d." + productId + " FROM " + dirty + " d CROSS JOIN "
+                    + InventoryEntry.TABLE_NAME + " i ON i." + InventoryEntry._ID + " = d." + productId
+                    + " WHERE i." + InventoryEntry.COLUMN_PRODUCT_QUANTITY + " <= i."
+                    + InventoryEntry.COLUMN_PRODUCT_REORDER_THRESHOLD + " AND NOT EXISTS (SELECT 1 FROM "
+                    + alerts + " a WHERE a." + productId + " = d." + productId + ")", null);
+            try {
+                lowStockIds = new long[cursor.getCount()];
+                while (cursor.moveToNext()) {
+                    lowStockIds[cursor.getPosition()] = cursor.getLong(0);
+                }
+            } finally {
+                cursor.close();
+            }
+
+            database.execSQL("DELETE FROM " + alerts + " WHERE " + productId + " IN (SELECT "
+                    + productId + " FROM " + dirty + ") AND NOT EXISTS (SELECT 1 FROM "
+                    + InventoryEntry.TABLE_NAME + " WHERE " + InventoryEntry._ID + " = " + productId
+                    + " AND " + InventoryDbHelper.LOW_STOCK_SELECTION + ")");
+
+            ContentValues values = new ContentValues();
+            for (long id : lowStockIds) {
+                values.put(productId, id);
+                database.insert(alerts, null, values);
+            }
+
+            database.delete(dirty, null, null);
 
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
         }
 
-        return rowsUpdated;
+        return lowStockIds;
     }
 
     @Override
     public int delete(Uri uri, String selection, String[] selectionArgs) {
+        long start = System.nanoTime();
+        int match = sUriMatcher.match(uri);
+
+        int rowsDeleted;
+        mDatabaseLock.readLock().lock();
+        try {
+            rowsDeleted = delete(match, uri, selection, selectionArgs);
+        } finally {
+            mDatabaseLock.readLock().unlock();
+        }
+
+        mMetrics.record(ProviderMetrics.DELETE, match, start, rowsDeleted);
+        return rowsDeleted;
+    }
+
+    private int delete(int match, Uri uri, String selection, String[] selectionArgs) {
 
         SQLiteDatabase database = mDbHelper.getWritableDatabase();
 
         int rowsDeleted;
 
-        final int match = sUriMatcher.match(uri);
+        long[] photoIds;
+
         switch (match) {
             case INVENTORY:
-                rowsDeleted = database.delete(InventoryEntry.TABLE_NAME, selection, selectionArgs);
+                selection = productSelection(selection);
+                database.beginTransactionNonExclusive();
+                try {
+                    photoIds = queryPhotoIds(database, selection, selectionArgs);
+                    rowsDeleted = database.delete(InventoryEntry.TABLE_NAME, selection, selectionArgs);
+                    database.setTransactionSuccessful();
+                } finally {
+                    database.endTransaction();
+                }
+                // Inside a batch the checkpoint would fail, and applyBatch makes one once it commits
+                if (rowsDeleted != 0 && mApplyingBatch.get() == null) {
+                    mDbHelper.checkpoint();
+                }
                 break;
 
             case INVENTORY_ID:
                 selection = InventoryEntry._ID + "=?";
                 selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
                 rowsDeleted = database.delete(InventoryEntry.TABLE_NAME, selection, selectionArgs);
+                photoIds = new long[]{ContentUris.parseId(uri)};
                 break;
 
             default:
@@ -213,7 +1675,9 @@ public class InventoryProvider extends ContentProvider {
         }
 
         if (rowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            deletePhotos(photoIds);
+            invalidateRows(uri);
+            notifyChange(uri);
         }
 
         return rowsDeleted;
@@ -221,6 +1685,51 @@ public class InventoryProvider extends ContentProvider {
 
     }
 
+    /**
+     * Remove the photos of the given deleted products, or leave them to {@link #applyBatch} to
+     * remove if a batch is being applied on this thread and the delete may still be rolled back.
+     */
+    private void deletePhotos(long[] ids) {
+        List<Long> deletedPhotoIds = mApplyingBatch.get();
+        for (long id : ids) {
+            if (deletedPhotoIds != null) {
+                deletedPhotoIds.add(id);
+            } else {
+                mPhotos.deletePhoto(id);
+            }
+        }
+    }
+
+    /**
+     * Return the _ids of the products matching the selection that have a photo.
+     */
+    private static long[] queryPhotoIds(SQLiteDatabase database, String selection, String[] selectionArgs) {
+        Cursor cursor = database.query(InventoryEntry.TABLE_NAME, new String[]{InventoryEntry._ID},
+                DatabaseUtils.concatenateWhere(selection, InventoryEntry.COLUMN_PRODUCT_PHOTO_TIME + " != 0"),
+                selectionArgs, null, null, null);
+        try {
+            long[] ids = new long[cursor.getCount()];
+            while (cursor.moveToNext()) {
+                ids[cursor.getPosition()] = cursor.getLong(0);
+            }
+            return ids;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Print the operation metrics and the state of the row cache, for
+     * {@code adb shell dumpsys activity provider InventoryProvider}.
+     */
+    @Override
+    public void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        mMetrics.dump(writer);
+        writer.println();
+        writer.println("Row cache: " + mRowCache.size() + " rows, " + mRowCache.hitCount() + " hits, "
+                + mRowCache.missCount() + " misses, " + mRowCache.evictionCount() + " evictions");
+    }
+
     @Override
     public String getType(Uri uri) {
         final int match = sUriMatcher.match(uri);
@@ -229,6 +1738,28 @@ public class InventoryProvider extends ContentProvider {
                 return InventoryEntry.CONTENT_LIST_TYPE;
             case INVENTORY_ID:
                 return InventoryEntry.CONTENT_ITEM_TYPE;
+            case INVENTORY_SEARCH:
+                return InventoryEntry.CONTENT_LIST_TYPE;
+            case INVENTORY_PHOTO:
+                try {
+                    return mPhotos.getPhotoType(Long.parseLong(uri.getPathSegments().get(1)));
+                } catch (FileNotFoundException e) {
+                    return null;
+                }
+            case INVENTORY_THUMBNAIL:
+                return InventoryEntry.THUMBNAIL_TYPE;
+            case INVENTORY_SKU:
+                return InventoryEntry.CONTENT_ITEM_TYPE;
+            case PENDING_SALES:
+                return PendingSaleEntry.CONTENT_LIST_TYPE;
+            case STOCK_LEDGER:
+                return StockLedgerEntry.CONTENT_LIST_TYPE;
+            case STATS:
+                return StatsEntry.CONTENT_ITEM_TYPE;
+            case STATS_SUPPLIERS:
+                return StatsEntry.CONTENT_LIST_TYPE;
+            case METRICS:
+                return MetricsEntry.CONTENT_LIST_TYPE;
             default:
                 throw new IllegalArgumentException("Unknown URI " + uri + " with match " + match);
         }
@@ -0,0 +1,230 @@
+package com.data;
+
+import android.content.ContentValues;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import com.data.InventoryContract.InventoryEntry;
+import com.data.InventoryContract.StockLedgerEntry;
+import com.data.InventoryContract.SupplierEntry;
+
+/**
+ * Compiled statements for the hot write paths of {@link InventoryProvider}: inserting a product,
+ * finding or adding its supplier, finding a product by SKU, and changing its quantity by a sale
+ * or restock. They are compiled once and reused with
+ * primitive arguments, which saves building the SQL text, boxing every value into ContentValues
+ * and preparing the statement again on every call.
+ *
+ * A statement holds on to its bound arguments until it runs, so each one is only used while
+ * holding its lock.
+ */
+final class InventoryStatements {
+
+    private static final String LOG_TAG = InventoryStatements.class.getSimpleName();
+
+    private final SQLiteStatement mInsertProduct;
+    private final SQLiteStatement mSelectSupplierId;
+    private final SQLiteStatement mInsertSupplier;
+    private final SQLiteStatement mUpdateSupplierPhoneNumber;
+    private final SQLiteStatement mSelectProductIdBySku;
+    private final SQLiteStatement mAdjustQuantity;
+    private final SQLiteStatement mSelectQuantity;
+    private final SQLiteStatement mInsertLedgerEntry;
+
+    InventoryStatements(SQLiteDatabase database) {
+        mInsertProduct = database.compileStatement("INSERT INTO " + InventoryEntry.TABLE_NAME + " ("
+                + InventoryEntry.COLUMN_PRODUCT_NAME + ", "
+                + InventoryEntry.COLUMN_PRODUCT_PRICE + ", "
+                + InventoryEntry.COLUMN_PRODUCT_QUANTITY + ", "
+                + InventoryEntry.COLUMN_PRODUCT_SUPPLIER_ID + ", "
+                + InventoryEntry.COLUMN_PRODUCT_REORDER_THRESHOLD + ", "
+                + InventoryEntry.COLUMN_PRODUCT_SKU + ") VALUES (?, ?, ?, ?, ?, ?)");
+
+        mSelectSupplierId = database.compileStatement("SELECT " + SupplierEntry._ID + " FROM "
+                + SupplierEntry.TABLE_NAME + " WHERE " + SupplierEntry.COLUMN_NAME + " = ?");
+
+        mInsertSupplier = database.compileStatement("INSERT INTO " + SupplierEntry.TABLE_NAME + " ("
+                + SupplierEntry.COLUMN_NAME + ", "
+                + SupplierEntry.COLUMN_PHONE_NUMBER + ") VALUES (?, ?)");
+
+        mUpdateSupplierPhoneNumber = database.compileStatement("UPDATE " + SupplierEntry.TABLE_NAME
+                + " SET " + SupplierEntry.COLUMN_PHONE_NUMBER + " = ?"
+                + " WHERE " + SupplierEntry._ID + " = ?"
+                + " AND " + SupplierEntry.COLUMN_PHONE_NUMBER + " != ?");
+
+        mSelectProductIdBySku = database.compileStatement("SELECT " + InventoryEntry._ID + " FROM "
+                + InventoryEntry.TABLE_NAME + " WHERE " + InventoryEntry.COLUMN_PRODUCT_SKU + " = ?");
+
+        mAdjustQuantity = database.compileStatement("UPDATE " + InventoryEntry.TABLE_NAME
+                + " SET " + InventoryEntry.COLUMN_PRODUCT_QUANTITY + " = "
+                + InventoryEntry.COLUMN_PRODUCT_QUANTITY + " + ?"
+                + " WHERE " + InventoryEntry._ID + " = ?"
+                + " AND " + InventoryEntry.COLUMN_PRODUCT_QUANTITY + " + ? >= 0");
+
+        mSelectQuantity = database.compileStatement("SELECT " + InventoryEntry.COLUMN_PRODUCT_QUANTITY
+                + " FROM " + InventoryEntry.TABLE_NAME + " WHERE " + InventoryEntry._ID + " = ?");
+
+        mInsertLedgerEntry = database.compileStatement("INSERT INTO " + StockLedgerEntry.TABLE_NAME + " ("
+                + StockLedgerEntry.COLUMN_PRODUCT_ID + ", "
+                + StockLedgerEntry.COLUMN_KIND + ", "
+                + StockLedgerEntry.COLUMN_QUANTITY_DELTA + ", "
+                + StockLedgerEntry.COLUMN_QUANTITY + ", "
+                + StockLedgerEntry.COLUMN_TIME + ") VALUES (?, ?, ?, ?, ?)");
+    }
+
+    /**
+     * Return true if {@link #insertProduct} can insert the given values, which is the case when
+     * they hold nothing but the attributes of a product.
+     */
+    static boolean canInsertProduct(ContentValues values) {
+        for (String column : values.keySet()) {
+            if (!column.equals(InventoryEntry.COLUMN_PRODUCT_NAME)
+                    && !column.equals(InventoryEntry.COLUMN_PRODUCT_PRICE)
+                    && !column.equals(InventoryEntry.COLUMN_PRODUCT_QUANTITY)
+                    && !column.equals(InventoryEntry.COLUMN_PRODUCT_SUPPLIER)
+                    && !column.equals(InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NUMBER)
+                    && !column.equals(InventoryEntry.COLUMN_PRODUCT_REORDER_THRESHOLD)
+                    && !column.equals(InventoryEntry.COLUMN_PRODUCT_SKU)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Insert a product from values that have already been validated, with the given supplier in
+     * place of the supplier columns. Return the _id of the new row, or -1 if it couldn't be
+     * inserted.
+     */
+    long insertProduct(ContentValues values, long supplierId) {
+        Integer quantity = values.getAsInteger(InventoryEntry.COLUMN_PRODUCT_QUANTITY);
+        Integer reorderThreshold = values.getAsInteger(InventoryEntry.COLUMN_PRODUCT_REORDER_THRESHOLD);
+        String sku = values.getAsString(InventoryEntry.COLUMN_PRODUCT_SKU);
+
+        synchronized (mInsertProduct) {
+            mInsertProduct.bindString(1, values.getAsString(InventoryEntry.COLUMN_PRODUCT_NAME));
+            mInsertProduct.bindLong(2, values.getAsInteger(InventoryEntry.COLUMN_PRODUCT_PRICE));
+            mInsertProduct.bindLong(3, quantity == null ? 0 : quantity);
+            mInsertProduct.bindLong(4, supplierId);
+            mInsertProduct.bindLong(5, reorderThreshold == null ? 0 : reorderThreshold);
+            if (sku == null) {
+                mInsertProduct.bindNull(6);
+            } else {
+                mInsertProduct.bindString(6, sku);
+            }
+            try {
+                return mInsertProduct.executeInsert();
+            } catch (SQLException e) {
+                Log.e(LOG_TAG, "Failed to insert product", e);
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Return the _id of the supplier with the given name, ignoring case, or -1 if there is none.
+     */
+    long querySupplierId(String name) {
+        synchronized (mSelectSupplierId) {
+            mSelectSupplierId.bindString(1, name);
+            try {
+                return mSelectSupplierId.simpleQueryForLong();
+            } catch (SQLiteDoneException e) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Add a supplier whose name isn't taken yet. Return its _id.
+     */
+    long insertSupplier(String name, String phoneNumber) {
+        synchronized (mInsertSupplier) {
+            mInsertSupplier.bindString(1, name);
+            mInsertSupplier.bindString(2, phoneNumber);
+            return mInsertSupplier.executeInsert();
+        }
+    }
+
+    /**
+     * Set the phone number of a supplier. Return true if it was different before.
+     */
+    boolean updateSupplierPhoneNumber(long id, String phoneNumber) {
+        synchronized (mUpdateSupplierPhoneNumber) {
+            mUpdateSupplierPhoneNumber.bindString(1, phoneNumber);
+            mUpdateSupplierPhoneNumber.bindLong(2, id);
+            mUpdateSupplierPhoneNumber.bindString(3, phoneNumber);
+            return mUpdateSupplierPhoneNumber.executeUpdateDelete() == 1;
+        }
+    }
+
+    /**
+     * Return the _id of the product with the given SKU, or -1 if there is none. The SKU index
+     * holds the _id, so this only reads the index.
+     */
+    long queryProductIdBySku(String sku) {
+        synchronized (mSelectProductIdBySku) {
+            mSelectProductIdBySku.bindString(1, sku);
+            try {
+                return mSelectProductIdBySku.simpleQueryForLong();
+            } catch (SQLiteDoneException e) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Add the delta to the quantity of a product unless that would make it negative. Return true
+     * if the quantity was changed.
+     */
+    boolean adjustQuantity(long id, int delta) {
+        synchronized (mAdjustQuantity) {
+            mAdjustQuantity.bindLong(1, delta);
+            mAdjustQuantity.bindLong(2, id);
+            mAdjustQuantity.bindLong(3, delta);
+            return mAdjustQuantity.executeUpdateDelete() == 1;
+        }
+    }
+
+    /**
+     * Return the quantity of a product, or -1 if it doesn't exist.
+     */
+    int queryQuantity(long id) {
+        synchronized (mSelectQuantity) {
+            mSelectQuantity.bindLong(1, id);
+            try {
+                return (int) mSelectQuantity.simpleQueryForLong();
+            } catch (SQLiteDoneException e) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Append an entry to the stock ledger. Call in the same transaction as the change it records.
+     */
+    void insertLedgerEntry(long productId, String kind, int delta, int quantity, long time) {
+        synchronized (mInsertLedgerEntry) {
+            mInsertLedgerEntry.bindLong(1, productId);
+            mInsertLedgerEntry.bindString(2, kind);
+            mInsertLedgerEntry.bindLong(3, delta);
+            mInsertLedgerEntry.bindLong(4, quantity);
+            mInsertLedgerEntry.bindLong(5, time);
+            mInsertLedgerEntry.executeInsert();
+        }
+    }
+
+    void close() {
+        mInsertProduct.close();
+        mSelectSupplierId.close();
+        mInsertSupplier.close();
+        mUpdateSupplierPhoneNumber.close();
+        mSelectProductIdBySku.close();
+        mAdjustQuantity.close();
+        mSelectQuantity.close();
+        mInsertLedgerEntry.close();
+    }
+}
@@ -0,0 +1,215 @@
+package com.data;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The photos of products, kept as files next to the database rather than in it, so reading
+ * products never moves image data through a cursor. Photos are stored as they were given. Each
+ * has a JPEG thumbnail, decoded at a fraction of its size and scaled down once when the photo is
+ * set, then kept in the cache directory. The system may clear that directory at any time, so a
+ * missing thumbnail is made again from the photo.
+ */
+final class ProductPhotos {
+
+    private static final String LOG_TAG = ProductPhotos.class.getSimpleName();
+
+    /**
+     * Longest side of a thumbnail, in pixels. Enough for a row of the catalog list on the
+     * densest screens.
+     */
+    private static final int THUMBNAIL_SIZE_PX = 192;
+
+    private static final int THUMBNAIL_QUALITY = 85;
+
+    private static final String PHOTO_DIRECTORY = "photos";
+    private static final String THUMBNAIL_DIRECTORY = "thumbnails";
+
+    private final File mPhotoDirectory;
+    private final File mThumbnailDirectory;
+
+    ProductPhotos(Context context) {
+        mPhotoDirectory = new File(context.getFilesDir(), PHOTO_DIRECTORY);
+        mThumbnailDirectory = new File(context.getCacheDir(), THUMBNAIL_DIRECTORY);
+    }
+
+    /**
+     * Return the photo of the given product, throwing a {@link FileNotFoundException} if it has
+     * none.
+     */
+    File getPhoto(long id) throws FileNotFoundException {
+        File photo = photoFile(id);
+        if (!photo.isFile()) {
+            throw new FileNotFoundException("No photo of product " + id);
+        }
+        return photo;
+    }
+
+    /**
+     * Return the MIME type of the photo of the given product, which is that of the image it was
+     * set from, read from its header. Throws a {@link FileNotFoundException} if it has none.
+     */
+    String getPhotoType(long id) throws FileNotFoundException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(getPhoto(id).getPath(), options);
+        return options.outMimeType;
+    }
+
+    /**
+     * Return the thumbnail of the photo of the given product, making it first if it was cleared
+     * from the cache. Throws a {@link FileNotFoundException} if the product has no photo.
+     * Thumbnails are only ever moved into place whole, so one that exists is returned without
+     * waiting for photos being set.
+     */
+    File getThumbnail(long id) throws FileNotFoundException {
+        File thumbnail = thumbnailFile(id);
+        if (thumbnail.isFile()) {
+            return thumbnail;
+        }
+        synchronized (this) {
+            if (thumbnail.isFile()) {
+                return thumbnail;
+            }
+            try {
+                writeThumbnail(getPhoto(id), thumbnail);
+            } catch (FileNotFoundException e) {
+                throw e;
+            } catch (IOException e) {
+                throw new FileNotFoundException("Failed to make thumbnail of product " + id + ": " + e.getMessage());
+            }
+        }
+        return thumbnail;
+    }
+
+    /**
+     * Replace the photo of the given product with a copy of the image read from the stream, and
+     * make its thumbnail. Throws an {@link IllegalArgumentException} if it isn't an image
+     * that can be decoded, in which case the old photo is kept.
+     */
+    synchronized void setPhoto(long id, InputStream source) throws IOException {
+        makeDirectory(mPhotoDirectory);
+        File temporary = new File(mPhotoDirectory, id + ".tmp");
+        try {
+            copy(source, temporary);
+
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeFile(temporary.getPath(), options);
+            if (options.outWidth <= 0 || options.outHeight <= 0) {
+                throw new IllegalArgumentException("Photo of product " + id + " is not an image");
+            }
+
+            thumbnailFile(id).delete();
+            if (!temporary.renameTo(photoFile(id))) {
+                throw new IOException("Failed to move " + temporary + " to " + photoFile(id));
+            }
+        } finally {
+            temporary.delete();
+        }
+
+        try {
+            writeThumbnail(photoFile(id), thumbnailFile(id));
+        } catch (IOException e) {
+            // The photo is set all the same, and making the thumbnail is tried again when it is read
+            Log.w(LOG_TAG, "Failed to make thumbnail of product " + id, e);
+        }
+    }
+
+    /**
+     * Remove the photo of the given product and its thumbnail, if it has one.
+     */
+    synchronized void deletePhoto(long id) {
+        thumbnailFile(id).delete();
+        photoFile(id).delete();
+    }
+
+    private File photoFile(long id) {
+        return new File(mPhotoDirectory, String.valueOf(id));
+    }
+
+    private File thumbnailFile(long id) {
+        return new File(mThumbnailDirectory, id + ".jpg");
+    }
+
+    /**
+     * Decode the photo at the largest power of two fraction of its size that is still at least
+     * as large as a thumbnail, which needs only a fraction of the memory of decoding it whole,
+     * then scale it the rest of the way and write it out as a JPEG.
+     */
+    private void writeThumbnail(File photo, File thumbnail) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(photo.getPath(), options);
+
+        int longestSide = Math.max(options.outWidth, options.outHeight);
+        if (longestSide <= 0) {
+            throw new IOException("Cannot decode " + photo);
+        }
+        int sampleSize = 1;
+        while (longestSide / (sampleSize * 2) >= THUMBNAIL_SIZE_PX) {
+            sampleSize *= 2;
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        Bitmap sampled = BitmapFactory.decodeFile(photo.getPath(), options);
+        if (sampled == null) {
+            throw new IOException("Cannot decode " + photo);
+        }
+
+        Bitmap scaled = sampled;
+        int sampledSide = Math.max(sampled.getWidth(), sampled.getHeight());
+        if (sampledSide > THUMBNAIL_SIZE_PX) {
+            scaled = Bitmap.createScaledBitmap(sampled,
+                    Math.max(1, sampled.getWidth() * THUMBNAIL_SIZE_PX / sampledSide),
+                    Math.max(1, sampled.getHeight() * THUMBNAIL_SIZE_PX / sampledSide), true);
+            sampled.recycle();
+        }
+
+        makeDirectory(mThumbnailDirectory);
+        File temporary = new File(mThumbnailDirectory, thumbnail.getName() + ".tmp");
+        try {
+            FileOutputStream output = new FileOutputStream(temporary);
+            try {
+                scaled.compress(Bitmap.CompressFormat.JPEG, THUMBNAIL_QUALITY, output);
+            } finally {
+                output.close();
+            }
+            if (!temporary.renameTo(thumbnail)) {
+                throw new IOException("Failed to move " + temporary + " to " + thumbnail);
+            }
+        } finally {
+            scaled.recycle();
+            temporary.delete();
+        }
+    }
+
+    private static void makeDirectory(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Failed to create " + directory);
+        }
+    }
+
+    private static void copy(InputStream source, File destination) throws IOException {
+        FileOutputStream output = new FileOutputStream(destination);
+        try {
+            byte[] buffer = new byte[8192];
+            int length;
+            while ((length = source.read(buffer)) != -1) {
+                output.write(buffer, 0, length);
+            }
+            output.getFD().sync();
+        } finally {
+            output.close();
+        }
+    }
+}
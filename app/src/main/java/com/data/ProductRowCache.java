@@ -0,0 +1,179 @@
+package com.data;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.util.LruCache;
+
+/**
+ * Keeps the most recently read product rows in memory, keyed by _id, so reopening a product
+ * doesn't go to the database. Rows are stored with all of their columns and any projection of
+ * those columns can be served from them.
+ *
+ * A row read from the database is only stored if nothing was invalidated while it was being
+ * read, so a write that commits during a read can't leave an outdated row behind.
+ */
+final class ProductRowCache {
+
+    private static final int MAX_ROWS = 500;
+
+    private final LruCache<Long, Object[]> mRows = new LruCache<>(MAX_ROWS);
+
+    /**
+     * Names of the columns of the stored rows, known once the first row has been stored.
+     */
+    private String[] mColumns;
+
+    /**
+     * Incremented by every invalidation.
+     */
+    private long mGeneration;
+
+    /**
+     * Return the number of the current generation, to be passed to {@link #put} once the row
+     * has been read.
+     */
+    synchronized long getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Return true if the given projection is made up of columns the stored rows have, or is null
+     * for all of them.
+     */
+    synchronized boolean canServe(String[] projection) {
+        return projection == null || mColumns == null || indexesOf(projection) != null;
+    }
+
+    /**
+     * Return a cursor over the stored row with the given _id, or null if it isn't stored.
+     */
+    synchronized Cursor get(long id, String[] projection) {
+        Object[] row = mRows.get(id);
+        if (row == null) {
+            return null;
+        }
+        return project(row, projection);
+    }
+
+    /**
+     * Store the row the cursor holds, read with all columns, unless an invalidation happened
+     * since the given generation. Return a cursor over the row, or over no rows if the cursor is
+     * empty, or null if the projection isn't made up of columns of the row.
+     */
+    synchronized Cursor put(long id, Cursor cursor, long generation, String[] projection) {
+        if (mColumns == null) {
+            mColumns = cursor.getColumnNames();
+        }
+
+        if (!canServe(projection)) {
+            return null;
+        }
+
+        if (!cursor.moveToFirst()) {
+            return new MatrixCursor(projection != null ? projection : mColumns, 0);
+        }
+
+        Object[] row = new Object[mColumns.length];
+        for (int i = 0; i < row.length; i++) {
+            row[i] = getValue(cursor, cursor.getColumnIndexOrThrow(mColumns[i]));
+        }
+
+        if (generation == mGeneration) {
+            mRows.put(id, row);
+        }
+
+        return project(row, projection);
+    }
+
+    /**
+     * Drop the row with the given _id, after it was changed or deleted.
+     */
+    synchronized void invalidate(long id) {
+        mGeneration++;
+        mRows.remove(id);
+    }
+
+    /**
+     * Drop all rows, after a change that may have touched any number of them.
+     */
+    synchronized void invalidateAll() {
+        mGeneration++;
+        // Removed one by one rather than with evictAll, so they aren't counted as evictions
+        for (Long id : mRows.snapshot().keySet()) {
+            mRows.remove(id);
+        }
+    }
+
+    synchronized int hitCount() {
+        return mRows.hitCount();
+    }
+
+    synchronized int missCount() {
+        return mRows.missCount();
+    }
+
+    /**
+     * Return the number of rows dropped to make room for others.
+     */
+    synchronized int evictionCount() {
+        return mRows.evictionCount();
+    }
+
+    synchronized int size() {
+        return mRows.size();
+    }
+
+    private Cursor project(Object[] row, String[] projection) {
+        if (projection == null) {
+            MatrixCursor cursor = new MatrixCursor(mColumns, 1);
+            cursor.addRow(row);
+            return cursor;
+        }
+
+        int[] indexes = indexesOf(projection);
+        Object[] values = new Object[indexes.length];
+        for (int i = 0; i < indexes.length; i++) {
+            values[i] = row[indexes[i]];
+        }
+
+        MatrixCursor cursor = new MatrixCursor(projection, 1);
+        cursor.addRow(values);
+        return cursor;
+    }
+
+    /**
+     * Return the index in the stored rows of each column of the projection, or null if one of
+     * them isn't a column of the rows.
+     */
+    private int[] indexesOf(String[] projection) {
+        int[] indexes = new int[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            indexes[i] = -1;
+            for (int j = 0; j < mColumns.length; j++) {
+                if (mColumns[j].equals(projection[i])) {
+                    indexes[i] = j;
+                    break;
+                }
+            }
+            if (indexes[i] == -1) {
+                return null;
+            }
+        }
+        return indexes;
+    }
+
+    private static Object getValue(Cursor cursor, int index) {
+        switch (cursor.getType(index)) {
+            case Cursor.FIELD_TYPE_INTEGER:
+                return cursor.getLong(index);
+            case Cursor.FIELD_TYPE_FLOAT:
+                return cursor.getDouble(index);
+            case Cursor.FIELD_TYPE_STRING:
+                return cursor.getString(index);
+            case Cursor.FIELD_TYPE_BLOB:
+                return cursor.getBlob(index);
+            default:
+                return null;
+        }
+    }
+}
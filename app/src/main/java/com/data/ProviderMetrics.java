@@ -0,0 +1,186 @@
+package com.data;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+
+import com.data.InventoryContract.MetricsEntry;
+
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency histograms and row counts of the provider's operations, per operation and URI. All
+ * of them are allocated up front, so recording is lock-free and allocates nothing.
+ */
+final class ProviderMetrics {
+
+    static final int QUERY = 0;
+    static final int INSERT = 1;
+    static final int BULK_INSERT = 2;
+    static final int UPDATE = 3;
+    static final int DELETE = 4;
+
+    /**
+     * Sending a change notification, which wakes up every observer of the URI.
+     */
+    static final int NOTIFY = 5;
+
+    /**
+     * Opening a photo or thumbnail, including making a thumbnail that was missing.
+     */
+    static final int OPEN_FILE = 6;
+
+    private static final String[] OPERATION_NAMES = {
+            "query", "insert", "bulk_insert", "update", "delete", "notify", "open_file"};
+
+    private static final String[] COLUMNS = {
+            MetricsEntry.COLUMN_OPERATION,
+            MetricsEntry.COLUMN_URI,
+            MetricsEntry.COLUMN_COUNT,
+            MetricsEntry.COLUMN_ROWS,
+            MetricsEntry.COLUMN_MEAN_MICROS,
+            MetricsEntry.COLUMN_P50_MICROS,
+            MetricsEntry.COLUMN_P90_MICROS,
+            MetricsEntry.COLUMN_P99_MICROS,
+            MetricsEntry.COLUMN_MAX_MICROS};
+
+    private final int[] mMatchCodes;
+    private final String[] mUriPatterns;
+
+    /**
+     * Indexed by operation, then by the index of the match code in {@link #mMatchCodes}.
+     */
+    private final LatencyHistogram[][] mLatencies;
+    private final AtomicLong[][] mRows;
+
+    /**
+     * @param matchCodes  the URI match codes of the provider
+     * @param uriPatterns the path each match code matches, to label the metrics with
+     */
+    ProviderMetrics(int[] matchCodes, String[] uriPatterns) {
+        if (matchCodes.length != uriPatterns.length) {
+            throw new IllegalArgumentException("Every match code needs a URI pattern");
+        }
+        mMatchCodes = matchCodes.clone();
+        mUriPatterns = uriPatterns.clone();
+
+        mLatencies = new LatencyHistogram[OPERATION_NAMES.length][matchCodes.length];
+        mRows = new AtomicLong[OPERATION_NAMES.length][matchCodes.length];
+        for (int operation = 0; operation < OPERATION_NAMES.length; operation++) {
+            for (int i = 0; i < matchCodes.length; i++) {
+                mLatencies[operation][i] = new LatencyHistogram();
+                mRows[operation][i] = new AtomicLong();
+            }
+        }
+    }
+
+    /**
+     * Record an operation on a URI with the given match code that started at the given
+     * {@link System#nanoTime} and affected or returned the given number of rows. Operations on
+     * URIs that didn't match are ignored.
+     */
+    void record(int operation, int matchCode, long startNanos, long rows) {
+        long nanos = System.nanoTime() - startNanos;
+
+        int index = indexOf(matchCode);
+        if (index == -1) {
+            return;
+        }
+        mLatencies[operation][index].record(nanos);
+        if (rows > 0) {
+            mRows[operation][index].addAndGet(rows);
+        }
+    }
+
+    /**
+     * Return a cursor with the columns of {@link MetricsEntry}, with a row for every operation
+     * and URI that was recorded at least once.
+     */
+    Cursor query(String[] projection) {
+        if (projection == null) {
+            projection = COLUMNS;
+        }
+        for (String column : projection) {
+            if (!Arrays.asList(COLUMNS).contains(column)) {
+                throw new IllegalArgumentException("Unknown metrics column " + column);
+            }
+        }
+
+        MatrixCursor cursor = new MatrixCursor(projection);
+        for (int operation = 0; operation < OPERATION_NAMES.length; operation++) {
+            for (int i = 0; i < mMatchCodes.length; i++) {
+                LatencyHistogram.Snapshot latencies = mLatencies[operation][i].snapshot();
+                if (latencies.count == 0) {
+                    continue;
+                }
+
+                Object[] row = new Object[projection.length];
+                for (int column = 0; column < projection.length; column++) {
+                    row[column] = valueOf(projection[column], operation, i, latencies);
+                }
+                cursor.addRow(row);
+            }
+        }
+        return cursor;
+    }
+
+    /**
+     * Write the metrics as a table, for dumpsys.
+     */
+    void dump(PrintWriter writer) {
+        writer.println(String.format(Locale.US, "%-12s %-24s %9s %11s %10s %10s %10s %10s %10s",
+                "operation", "uri", "count", "rows", "mean_us", "p50_us", "p90_us", "p99_us", "max_us"));
+        for (int operation = 0; operation < OPERATION_NAMES.length; operation++) {
+            for (int i = 0; i < mMatchCodes.length; i++) {
+                LatencyHistogram.Snapshot latencies = mLatencies[operation][i].snapshot();
+                if (latencies.count == 0) {
+                    continue;
+                }
+                writer.println(String.format(Locale.US, "%-12s %-24s %9d %11d %10d %10d %10d %10d %10d",
+                        OPERATION_NAMES[operation], mUriPatterns[i], latencies.count,
+                        mRows[operation][i].get(), toMicros(latencies.meanNanos()),
+                        toMicros(latencies.percentileNanos(50)), toMicros(latencies.percentileNanos(90)),
+                        toMicros(latencies.percentileNanos(99)), toMicros(latencies.maxNanos)));
+            }
+        }
+    }
+
+    private Object valueOf(String column, int operation, int index, LatencyHistogram.Snapshot latencies) {
+        switch (column) {
+            case MetricsEntry.COLUMN_OPERATION:
+                return OPERATION_NAMES[operation];
+            case MetricsEntry.COLUMN_URI:
+                return mUriPatterns[index];
+            case MetricsEntry.COLUMN_COUNT:
+                return latencies.count;
+            case MetricsEntry.COLUMN_ROWS:
+                return mRows[operation][index].get();
+            case MetricsEntry.COLUMN_MEAN_MICROS:
+                return toMicros(latencies.meanNanos());
+            case MetricsEntry.COLUMN_P50_MICROS:
+                return toMicros(latencies.percentileNanos(50));
+            case MetricsEntry.COLUMN_P90_MICROS:
+                return toMicros(latencies.percentileNanos(90));
+            case MetricsEntry.COLUMN_P99_MICROS:
+                return toMicros(latencies.percentileNanos(99));
+            default:
+                // The projection has been checked, so this is the maximum
+                return toMicros(latencies.maxNanos);
+        }
+    }
+
+    private int indexOf(int matchCode) {
+        for (int i = 0; i < mMatchCodes.length; i++) {
+            if (mMatchCodes[i] == matchCode) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static long toMicros(long nanos) {
+        return nanos / 1000;
+    }
+}
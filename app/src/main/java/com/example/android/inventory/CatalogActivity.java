@@ -1,31 +1,105 @@
 package com.example.android.inventory;
 
-import android.app.LoaderManager;
 import android.content.ContentUris;
+import android.content.ContentResolver;
 import android.content.ContentValues;
-import android.content.CursorLoader;
+import android.content.DialogInterface;
 import android.content.Intent;
-import android.content.Loader;
-import android.database.Cursor;
+import android.content.SharedPreferences;
 import android.net.Uri;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.support.design.widget.FloatingActionButton;
+import android.support.design.widget.Snackbar;
+import android.support.v7.app.AlertDialog;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.SearchView;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.SimpleItemAnimator;
+import android.text.InputType;
 import android.util.Log;
+import android.view.KeyEvent;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
-import android.widget.AdapterView;
-import android.widget.ListView;
+import android.view.inputmethod.EditorInfo;
+import android.widget.EditText;
+import android.widget.TextView;
 
 import com.data.InventoryContract.InventoryEntry;
 
+import java.util.List;
 
-public class CatalogActivity extends AppCompatActivity implements LoaderManager.LoaderCallbacks<Cursor> {
 
-    private static final int INVENTORY_LOADER = 0;
+public class CatalogActivity extends AppCompatActivity {
 
-    InventoryCursorAdapter mCursorAdapter;
+    private static final String LOG_TAG = CatalogActivity.class.getSimpleName();
+
+    private static final int REQUEST_IMPORT_CSV = 1;
+    private static final int REQUEST_EXPORT_CSV = 2;
+    private static final int REQUEST_EXPORT_JSON_LINES = 3;
+    private static final int REQUEST_EXPORT_CHANGES = 4;
+    private static final int REQUEST_BACK_UP = 5;
+    private static final int REQUEST_RESTORE = 6;
+
+    /**
+     * Number of products "Insert Test Catalog" generates.
+     */
+    private static final int TEST_CATALOG_SIZE = 10000;
+
+    /**
+     * Preference holding the start time of the last finished export, which an export of changes
+     * starts from.
+     */
+    private static final String PREF_LAST_EXPORT_TIME = "last_export_time";
+
+    private static final String STATE_SORT = "sort";
+    private static final String STATE_IN_STOCK_ONLY = "in_stock_only";
+
+    CatalogAdapter mCatalogAdapter;
+
+    private CatalogPager mCatalogPager;
+
+    private CatalogSearcher mCatalogSearcher;
+
+    private View mEmptyView;
+
+    /**
+     * How the catalog is sorted, one of the sorts of {@link InventoryEntry#QUERY_PARAMETER_SORT}
+     * or null for the order products were added in.
+     */
+    private String mSort;
+
+    private boolean mInStockOnly;
+
+    /**
+     * Import currently running, or null.
+     */
+    private CsvImporter mCsvImporter;
+
+    private Snackbar mImportSnackbar;
+
+    /**
+     * Export currently running, or null.
+     */
+    private CatalogExporter mCatalogExporter;
+
+    private Snackbar mExportSnackbar;
+
+    /**
+     * Created for the first backup or restore, which then run one at a time.
+     */
+    private DatabaseBackup mDatabaseBackup;
+
+    private Snackbar mBackupSnackbar;
+
+    /**
+     * Message to show once the backup or restore under way has finished.
+     */
+    private int mBackupFinishedMessage;
 
 
     @Override
@@ -42,17 +116,58 @@ public class CatalogActivity extends AppCompatActivity implements LoaderManager.
             }
         });
 
-        ListView inventoryListView = (ListView) findViewById(R.id.list);
+        RecyclerView inventoryListView = (RecyclerView) findViewById(R.id.list);
+        inventoryListView.setLayoutManager(new LinearLayoutManager(this));
+
+        // Rows are rebound in place when their product changes, without cross-fading
+        ((SimpleItemAnimator) inventoryListView.getItemAnimator()).setSupportsChangeAnimations(false);
 
-        View emptyView = findViewById(R.id.empty_view);
-        inventoryListView.setEmptyView(emptyView);
+        mEmptyView = findViewById(R.id.empty_view);
 
-        mCursorAdapter = new InventoryCursorAdapter(this, null);
-        inventoryListView.setAdapter(mCursorAdapter);
+        // The pager loads the products a page at a time as the list scrolls to them. While
+        // search results are shown instead, a change to the catalog reruns the search.
+        mCatalogPager = new CatalogPager(this, new CatalogPager.Callback() {
+            @Override
+            public void onCatalogReset() {
+                if (!refreshSearch()) {
+                    mCatalogAdapter.notifyDataSetChanged();
+                    updateEmptyView();
+                }
+            }
+
+            @Override
+            public void onPageLoaded(int positionStart, int itemCount) {
+                if (!mCatalogAdapter.isShowingSearchResults()) {
+                    mCatalogAdapter.notifyItemRangeChanged(positionStart, itemCount);
+                }
+            }
 
-        inventoryListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
             @Override
-            public void onItemClick(AdapterView<?> adapterView, View view, int position, long id) {
+            public void onPageUpdated(int positionStart, int itemCount, DiffUtil.DiffResult diff) {
+                if (!refreshSearch()) {
+                    mCatalogAdapter.dispatchPageUpdates(positionStart, itemCount, diff);
+                }
+            }
+
+            @Override
+            public void onItemChanged(int position) {
+                if (!refreshSearch()) {
+                    mCatalogAdapter.notifyItemChanged(position);
+                }
+            }
+        });
+
+        mCatalogSearcher = new CatalogSearcher(this, new CatalogSearcher.Callback() {
+            @Override
+            public void onSearchResults(List<CatalogItem> items) {
+                mCatalogAdapter.setSearchResults(items);
+                updateEmptyView();
+            }
+        });
+
+        mCatalogAdapter = new CatalogAdapter(this, mCatalogPager, new CatalogAdapter.OnProductClickListener() {
+            @Override
+            public void onProductClick(long id) {
 
                 Intent intent = new Intent(CatalogActivity.this, EditorActivity.class);
 
@@ -63,7 +178,19 @@ public class CatalogActivity extends AppCompatActivity implements LoaderManager.
                 startActivity(intent);
             }
         });
-        getLoaderManager().initLoader(INVENTORY_LOADER, null, this);
+        inventoryListView.setAdapter(mCatalogAdapter);
+        mCatalogPager.start();
+
+        if (savedInstanceState != null) {
+            mSort = savedInstanceState.getString(STATE_SORT);
+            mInStockOnly = savedInstanceState.getBoolean(STATE_IN_STOCK_ONLY);
+            if (mSort != null || mInStockOnly) {
+                mCatalogPager.setOrder(mSort, mInStockOnly);
+            }
+        }
+
+        // Watches for products running low for as long as the process lives
+        LowStockMonitor.getInstance(this);
     }
 
     @Override
@@ -71,6 +198,45 @@ public class CatalogActivity extends AppCompatActivity implements LoaderManager.
         super.onStart();
     }
 
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putString(STATE_SORT, mSort);
+        outState.putBoolean(STATE_IN_STOCK_ONLY, mInStockOnly);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mCatalogPager.stop();
+        mCatalogSearcher.stop();
+        if (mCsvImporter != null) {
+            mCsvImporter.cancel();
+        }
+        if (mCatalogExporter != null) {
+            mCatalogExporter.cancel();
+        }
+        if (mDatabaseBackup != null) {
+            mDatabaseBackup.shutdown();
+        }
+    }
+
+    private void updateEmptyView() {
+        mEmptyView.setVisibility(mCatalogAdapter.getItemCount() == 0 ? View.VISIBLE : View.GONE);
+    }
+
+    /**
+     * Search again for the current search text, if search results are shown. Returns true if
+     * a search was started.
+     */
+    private boolean refreshSearch() {
+        if (!mCatalogAdapter.isShowingSearchResults()) {
+            return false;
+        }
+        mCatalogSearcher.search(mCatalogSearcher.getQuery());
+        return true;
+    }
+
     private void insertInventory() {
 
 
@@ -83,15 +249,364 @@ public class CatalogActivity extends AppCompatActivity implements LoaderManager.
         values.put(InventoryEntry.COLUMN_PRODUCT_SUPPLIER, "Samsung");
         values.put(InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NUMBER, "18007267864");
 
-        Uri newUri = getContentResolver().insert(InventoryEntry.CONTENT_URI, values);
+        final String entry = values.toString();
+        InventoryRepository.getInstance(this).insertProduct(values, new InventoryRepository.Callback<Uri>() {
+            @Override
+            public void onResult(Uri newUri) {
+                Log.v("Database Entry", entry);
+            }
+
+            @Override
+            public void onError(Exception e) {
+                Log.e(LOG_TAG, "Failed to insert dummy product", e);
+            }
+        });
+
+    }
+
+    /**
+     * Insert a generated catalog of {@link #TEST_CATALOG_SIZE} products in the background, to
+     * try the app at a realistic scale.
+     */
+    private void insertTestCatalog() {
+        final Snackbar snackbar = Snackbar.make(findViewById(R.id.list),
+                getString(R.string.test_catalog_progress, TEST_CATALOG_SIZE), Snackbar.LENGTH_INDEFINITE);
+        snackbar.show();
+
+        final ContentResolver contentResolver = getContentResolver();
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                long start = SystemClock.elapsedRealtime();
+                final int inserted = new CatalogGenerator(CatalogGenerator.DEFAULT_SEED)
+                        .populate(contentResolver, TEST_CATALOG_SIZE);
+                final double seconds = (SystemClock.elapsedRealtime() - start) / 1000.0;
+
+                snackbar.getView().post(new Runnable() {
+                    @Override
+                    public void run() {
+                        snackbar.setText(snackbar.getContext().getString(R.string.test_catalog_finished,
+                                inserted, seconds));
+                        snackbar.setDuration(Snackbar.LENGTH_LONG);
+                        snackbar.show();
+                    }
+                });
+            }
+        }).start();
+    }
+
+    /**
+     * Let the user pick a CSV file to import products from.
+     */
+    private void pickCsvFile() {
+        Intent intent;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+        } else {
+            intent = new Intent(Intent.ACTION_GET_CONTENT);
+        }
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        // CSV files are labelled with all sorts of types, so don't filter on them
+        intent.setType("*/*");
+        startActivityForResult(intent, REQUEST_IMPORT_CSV);
+    }
+
+    /**
+     * Let the user create the document to export products to. Documents can only be created
+     * from KitKat on, so the export menu options are hidden before then.
+     */
+    private void createExportDocument(int requestCode, String mimeType, String title) {
+        Intent intent = new Intent(Intent.ACTION_CREATE_DOCUMENT);
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        intent.setType(mimeType);
+        intent.putExtra(Intent.EXTRA_TITLE, title);
+        startActivityForResult(intent, requestCode);
+    }
+
+    /**
+     * Let the user pick the backup to restore.
+     */
+    private void pickBackupFile() {
+        Intent intent;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+        } else {
+            intent = new Intent(Intent.ACTION_GET_CONTENT);
+        }
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        intent.setType("*/*");
+        startActivityForResult(intent, REQUEST_RESTORE);
+    }
+
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        if (requestCode == REQUEST_IMPORT_CSV) {
+            if (resultCode == RESULT_OK && data != null && data.getData() != null) {
+                importCsv(data.getData());
+            }
+            return;
+        }
+        if (requestCode == REQUEST_EXPORT_CSV || requestCode == REQUEST_EXPORT_JSON_LINES
+                || requestCode == REQUEST_EXPORT_CHANGES) {
+            if (resultCode == RESULT_OK && data != null && data.getData() != null) {
+                int format = requestCode == REQUEST_EXPORT_CSV
+                        ? CatalogExporter.FORMAT_CSV : CatalogExporter.FORMAT_JSON_LINES;
+                long changedSince = requestCode == REQUEST_EXPORT_CHANGES
+                        ? getPreferences(MODE_PRIVATE).getLong(PREF_LAST_EXPORT_TIME, 0) : 0;
+                exportCatalog(data.getData(), format, changedSince);
+            }
+            return;
+        }
+        if (requestCode == REQUEST_BACK_UP || requestCode == REQUEST_RESTORE) {
+            if (resultCode == RESULT_OK && data != null && data.getData() != null) {
+                if (requestCode == REQUEST_BACK_UP) {
+                    backUp(data.getData());
+                } else {
+                    showRestoreConfirmationDialog(data.getData());
+                }
+            }
+            return;
+        }
+        super.onActivityResult(requestCode, resultCode, data);
+    }
 
-        Log.v("Database Entry", values.toString());
+    private void importCsv(Uri uri) {
+        if (mCsvImporter != null) {
+            mCsvImporter.cancel();
+        }
 
+        mImportSnackbar = Snackbar.make(findViewById(R.id.list),
+                getString(R.string.import_progress, 0, 0, 0), Snackbar.LENGTH_INDEFINITE);
+        mImportSnackbar.show();
+
+        mCsvImporter = new CsvImporter(this, CsvImporter.DEFAULT_BATCH_SIZE, new CsvImporter.Listener() {
+            @Override
+            public void onProgress(long bytesRead, long totalBytes, int imported, int rejected) {
+                int percent = totalBytes > 0 ? (int) (100 * bytesRead / totalBytes) : 0;
+                mImportSnackbar.setText(getString(R.string.import_progress, percent, imported, rejected));
+            }
+
+            @Override
+            public void onFinished(CsvImporter.Result result) {
+                mCsvImporter = null;
+
+                for (String reject : result.rejects) {
+                    Log.w(LOG_TAG, "Rejected " + reject);
+                }
+
+                String message;
+                if (result.error != null) {
+                    message = getString(R.string.import_failed, result.imported, result.error);
+                } else {
+                    message = getString(R.string.import_finished, result.imported, result.rejected);
+                }
+                mImportSnackbar.setText(message);
+                mImportSnackbar.setDuration(Snackbar.LENGTH_LONG);
+                mImportSnackbar.show();
+            }
+        });
+        mCsvImporter.start(uri);
+    }
+
+    private void exportCatalog(Uri uri, int format, long changedSince) {
+        if (mCatalogExporter != null) {
+            mCatalogExporter.cancel();
+        }
+
+        mExportSnackbar = Snackbar.make(findViewById(R.id.list),
+                getString(R.string.export_progress, 0), Snackbar.LENGTH_INDEFINITE);
+        mExportSnackbar.show();
+
+        mCatalogExporter = new CatalogExporter(this, new CatalogExporter.Listener() {
+            @Override
+            public void onProgress(int exported) {
+                mExportSnackbar.setText(getString(R.string.export_progress, exported));
+            }
+
+            @Override
+            public void onFinished(CatalogExporter.Result result) {
+                mCatalogExporter = null;
+
+                String message;
+                if (result.error != null) {
+                    message = getString(R.string.export_failed, result.exported, result.error);
+                } else {
+                    SharedPreferences.Editor editor = getPreferences(MODE_PRIVATE).edit();
+                    editor.putLong(PREF_LAST_EXPORT_TIME, result.startTime);
+                    editor.apply();
+                    message = getString(R.string.export_finished, result.exported);
+                }
+                mExportSnackbar.setText(message);
+                mExportSnackbar.setDuration(Snackbar.LENGTH_LONG);
+                mExportSnackbar.show();
+            }
+        });
+        mCatalogExporter.start(uri, format, changedSince);
+    }
+
+    private DatabaseBackup getDatabaseBackup() {
+        if (mDatabaseBackup == null) {
+            mDatabaseBackup = new DatabaseBackup(this, new DatabaseBackup.Listener() {
+                @Override
+                public void onFinished(DatabaseBackup.Result result) {
+                    if (result.error != null) {
+                        mBackupSnackbar.setText(getString(R.string.backup_failed, result.error));
+                    } else {
+                        mBackupSnackbar.setText(mBackupFinishedMessage);
+                    }
+                    mBackupSnackbar.setDuration(Snackbar.LENGTH_LONG);
+                    mBackupSnackbar.show();
+                }
+            });
+        }
+        return mDatabaseBackup;
+    }
+
+    private void backUp(Uri uri) {
+        mBackupSnackbar = Snackbar.make(findViewById(R.id.list), R.string.backup_progress,
+                Snackbar.LENGTH_INDEFINITE);
+        mBackupSnackbar.show();
+        mBackupFinishedMessage = R.string.backup_finished;
+        getDatabaseBackup().backUp(uri);
+    }
+
+    private void showRestoreConfirmationDialog(final Uri uri) {
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setMessage(R.string.restore_dialog_msg);
+        builder.setPositiveButton(R.string.restore, new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int id) {
+                restore(uri);
+            }
+        });
+        builder.setNegativeButton(R.string.cancel, new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int id) {
+                if (dialog != null) {
+                    dialog.dismiss();
+                }
+            }
+        });
+        builder.create().show();
+    }
+
+    /**
+     * Show a dialog that sells one unit of a product for each SKU entered into it, which is
+     * how a keyboard-wedge barcode scanner types one in, followed by Enter. The dialog stays
+     * open and shows the outcome of the last scan, so products can be scanned one after another.
+     */
+    private void showScanToSellDialog() {
+        final EditText skuEditText = new EditText(this);
+        skuEditText.setHint(R.string.scan_to_sell_hint);
+        skuEditText.setSingleLine(true);
+        skuEditText.setInputType(InputType.TYPE_CLASS_TEXT | InputType.TYPE_TEXT_FLAG_NO_SUGGESTIONS);
+        skuEditText.setImeOptions(EditorInfo.IME_ACTION_DONE);
+
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle(R.string.action_scan_to_sell);
+        builder.setMessage(R.string.scan_to_sell_prompt);
+        builder.setView(skuEditText);
+        builder.setNegativeButton(R.string.close, new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int id) {
+                if (dialog != null) {
+                    dialog.dismiss();
+                }
+            }
+        });
+        final AlertDialog dialog = builder.create();
+
+        skuEditText.setOnEditorActionListener(new TextView.OnEditorActionListener() {
+            @Override
+            public boolean onEditorAction(TextView view, int actionId, KeyEvent event) {
+                // Scanners send Enter as a key event rather than as an editor action
+                if (event != null && event.getAction() != KeyEvent.ACTION_DOWN) {
+                    return true;
+                }
+                String sku = view.getText().toString().trim();
+                view.setText(null);
+                if (!sku.isEmpty()) {
+                    sellScannedSku(sku, dialog);
+                }
+                return true;
+            }
+        });
+        dialog.show();
+    }
+
+    /**
+     * Sell one unit of the product with the given SKU and show the outcome in the dialog.
+     */
+    private void sellScannedSku(final String sku, final AlertDialog dialog) {
+        InventoryRepository.getInstance(this).sellBySku(sku, 1, new InventoryRepository.Callback<Bundle>() {
+            @Override
+            public void onResult(Bundle result) {
+                if (result == null) {
+                    dialog.setMessage(getString(R.string.scan_to_sell_unknown, sku));
+                } else if (result.getBoolean(InventoryEntry.EXTRA_QUANTITY_ADJUSTED)) {
+                    dialog.setMessage(getString(R.string.scan_to_sell_sold, sku,
+                            result.getInt(InventoryEntry.EXTRA_QUANTITY)));
+                } else {
+                    dialog.setMessage(getString(R.string.scan_to_sell_out_of_stock, sku));
+                }
+            }
+
+            @Override
+            public void onError(Exception e) {
+                Log.e(LOG_TAG, "Failed to sell product with SKU " + sku, e);
+                dialog.setMessage(getString(R.string.scan_to_sell_failed, e.getMessage()));
+            }
+        });
+    }
+
+    private void restore(Uri uri) {
+        mBackupSnackbar = Snackbar.make(findViewById(R.id.list), R.string.restore_progress,
+                Snackbar.LENGTH_INDEFINITE);
+        mBackupSnackbar.show();
+        mBackupFinishedMessage = R.string.restore_finished;
+        getDatabaseBackup().restore(uri);
+    }
+
+    /**
+     * List the catalog sorted the given way, which the given menu item stands for.
+     */
+    private void sortCatalog(MenuItem item, String sort) {
+        item.setChecked(true);
+        mSort = sort;
+        mCatalogPager.setOrder(mSort, mInStockOnly);
+    }
+
+    /**
+     * Return the id of the menu item that stands for the given sort.
+     */
+    private static int sortMenuItemOf(String sort) {
+        if (sort == null) {
+            return R.id.action_sort_added;
+        }
+        switch (sort) {
+            case InventoryEntry.SORT_NAME:
+                return R.id.action_sort_name;
+            case InventoryEntry.SORT_PRICE:
+                return R.id.action_sort_price;
+            case InventoryEntry.SORT_QUANTITY:
+                return R.id.action_sort_quantity;
+            default:
+                return R.id.action_sort_supplier;
+        }
     }
 
     private void deleteAllInventory() {
-        int rowsDeleted = getContentResolver().delete(InventoryEntry.CONTENT_URI, null, null);
-        Log.v("CatalogActivity", rowsDeleted + "rows deleted from the database");
+        InventoryRepository.getInstance(this).deleteAllProducts(new InventoryRepository.Callback<Integer>() {
+            @Override
+            public void onResult(Integer rowsDeleted) {
+                Log.v("CatalogActivity", rowsDeleted + "rows deleted from the database");
+            }
+
+            @Override
+            public void onError(Exception e) {
+                Log.e(LOG_TAG, "Failed to delete all products", e);
+            }
+        });
     }
 
 
@@ -100,6 +615,35 @@ public class CatalogActivity extends AppCompatActivity implements LoaderManager.
         // Inflate the menu options from the res/menu/menu_catalog.xml file.
         // This adds menu items to the app bar.
         getMenuInflater().inflate(R.menu.menu_catalog, menu);
+
+        boolean canExport = Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
+        menu.findItem(R.id.action_export_csv).setVisible(canExport);
+        menu.findItem(R.id.action_export_json_lines).setVisible(canExport);
+        menu.findItem(R.id.action_export_changes).setVisible(canExport);
+        menu.findItem(R.id.action_back_up).setVisible(canExport);
+
+        menu.findItem(sortMenuItemOf(mSort)).setChecked(true);
+        menu.findItem(R.id.action_in_stock_only).setChecked(mInStockOnly);
+
+        // Search as the user types. Clearing or closing the search shows the whole catalog again.
+        SearchView searchView = (SearchView) menu.findItem(R.id.action_search).getActionView();
+        searchView.setQueryHint(getString(R.string.search_hint));
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                return false;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                mCatalogSearcher.search(newText);
+                if (mCatalogSearcher.getQuery() == null && mCatalogAdapter.isShowingSearchResults()) {
+                    mCatalogAdapter.setSearchResults(null);
+                    updateEmptyView();
+                }
+                return true;
+            }
+        });
         return true;
     }
 
@@ -107,10 +651,54 @@ public class CatalogActivity extends AppCompatActivity implements LoaderManager.
     public boolean onOptionsItemSelected(MenuItem item) {
         // User clicked on a menu option in the app bar overflow menu
         switch (item.getItemId()) {
+            case R.id.action_scan_to_sell:
+                showScanToSellDialog();
+                return true;
+            case R.id.action_sort_added:
+                sortCatalog(item, null);
+                return true;
+            case R.id.action_sort_name:
+                sortCatalog(item, InventoryEntry.SORT_NAME);
+                return true;
+            case R.id.action_sort_price:
+                sortCatalog(item, InventoryEntry.SORT_PRICE);
+                return true;
+            case R.id.action_sort_quantity:
+                sortCatalog(item, InventoryEntry.SORT_QUANTITY);
+                return true;
+            case R.id.action_sort_supplier:
+                sortCatalog(item, InventoryEntry.SORT_SUPPLIER);
+                return true;
+            case R.id.action_in_stock_only:
+                mInStockOnly = !item.isChecked();
+                item.setChecked(mInStockOnly);
+                mCatalogPager.setOrder(mSort, mInStockOnly);
+                return true;
+            case R.id.action_import_csv:
+                pickCsvFile();
+                return true;
+            case R.id.action_export_csv:
+                createExportDocument(REQUEST_EXPORT_CSV, "text/csv", "inventory.csv");
+                return true;
+            case R.id.action_export_json_lines:
+                createExportDocument(REQUEST_EXPORT_JSON_LINES, "application/x-ndjson", "inventory.jsonl");
+                return true;
+            case R.id.action_export_changes:
+                createExportDocument(REQUEST_EXPORT_CHANGES, "application/x-ndjson", "inventory-changes.jsonl");
+                return true;
+            case R.id.action_back_up:
+                createExportDocument(REQUEST_BACK_UP, DatabaseBackup.MIME_TYPE, "inventory-backup.db.gz");
+                return true;
+            case R.id.action_restore:
+                pickBackupFile();
+                return true;
             // Respond to a click on the "Insert dummy data" menu option
             case R.id.action_insert_dummy_data:
                 insertInventory();
                 return true;
+            case R.id.action_insert_test_catalog:
+                insertTestCatalog();
+                return true;
             //Respond to a click on the "Delete all entries" menu option
             case R.id.action_delete_all_entries:
                 deleteAllInventory();
@@ -119,40 +707,6 @@ public class CatalogActivity extends AppCompatActivity implements LoaderManager.
         return super.onOptionsItemSelected(item);
     }
 
-
-    @Override
-    public Loader<Cursor> onCreateLoader(int i, Bundle bundle) {
-
-        String[] projection = {
-                InventoryEntry._ID,
-                InventoryEntry.COLUMN_PRODUCT_NAME,
-                InventoryEntry.COLUMN_PRODUCT_PRICE,
-                InventoryEntry.COLUMN_PRODUCT_QUANTITY,
-                InventoryEntry.COLUMN_PRODUCT_SUPPLIER,
-                InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NUMBER};
-
-        return new CursorLoader(this,
-                InventoryEntry.CONTENT_URI,
-                projection,
-                null,
-                null,
-                null);
-
-    }
-
-    @Override
-    public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
-
-        mCursorAdapter.swapCursor(data);
-
-    }
-
-    @Override
-    public void onLoaderReset(Loader<Cursor> loader) {
-
-        mCursorAdapter.swapCursor(null);
-
-    }
 }
 
 
@@ -0,0 +1,277 @@
+package com.example.android.inventory;
+
+import android.content.Context;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.util.ListUpdateCallback;
+import android.support.v7.widget.RecyclerView;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.Button;
+import android.widget.ImageView;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import java.util.List;
+import java.util.concurrent.Future;
+
+public class CatalogAdapter extends RecyclerView.Adapter<CatalogAdapter.ViewHolder> {
+
+    /**
+     * Receives clicks on a product in the list.
+     */
+    public interface OnProductClickListener {
+        void onProductClick(long id);
+    }
+
+    private final Context mContext;
+
+    private final CatalogPager mCatalogPager;
+
+    private final SaleQueue mSaleQueue;
+
+    private final ThumbnailLoader mThumbnailLoader;
+
+    private final OnProductClickListener mOnProductClickListener;
+
+    /**
+     * Products found by the current search, shown instead of the catalog, or null.
+     */
+    private List<CatalogItem> mSearchResults;
+
+    /**
+     * Constructs a new {@link CatalogAdapter}.
+     *
+     * @param context                The context
+     * @param catalogPager           The pager from which to get the data.
+     * @param onProductClickListener Told when a product is clicked
+     */
+    public CatalogAdapter(Context context, CatalogPager catalogPager,
+                          OnProductClickListener onProductClickListener) {
+        mContext = context;
+        mCatalogPager = catalogPager;
+        mSaleQueue = SaleQueue.getInstance(context);
+        mThumbnailLoader = ThumbnailLoader.getInstance(context);
+        mOnProductClickListener = onProductClickListener;
+    }
+
+    /**
+     * Show the given search results instead of the catalog, or the catalog again if null.
+     */
+    public void setSearchResults(List<CatalogItem> searchResults) {
+        mSearchResults = searchResults;
+        notifyDataSetChanged();
+    }
+
+    public boolean isShowingSearchResults() {
+        return mSearchResults != null;
+    }
+
+    @Override
+    public int getItemCount() {
+        return mSearchResults != null ? mSearchResults.size() : mCatalogPager.getCount();
+    }
+
+    /**
+     * Makes a new blank list item view and holder. No data is set (or bound) to the views yet.
+     */
+    @Override
+    public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        // Inflate a list item view using the layout specified in list_item.xml
+        View view = LayoutInflater.from(mContext).inflate(R.layout.list_item, parent, false);
+        return new ViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(ViewHolder holder, int position) {
+        CatalogItem item = mSearchResults != null
+                ? mSearchResults.get(position) : mCatalogPager.getItem(position);
+        if (item == null) {
+            holder.bindPlaceholder();
+        } else {
+            holder.bind(item);
+        }
+    }
+
+    /**
+     * The row scrolled off, so its thumbnail is no longer needed.
+     */
+    @Override
+    public void onViewRecycled(ViewHolder holder) {
+        holder.cancelThumbnail();
+    }
+
+    /**
+     * Apply the changes of a reloaded page. Rows whose contents changed are rebound one by one.
+     * A page always covers the same positions, so if products moved into or out of it the whole
+     * page is rebound instead.
+     */
+    public void dispatchPageUpdates(final int positionStart, int itemCount, DiffUtil.DiffResult diff) {
+        final boolean[] structural = {false};
+
+        diff.dispatchUpdatesTo(new ListUpdateCallback() {
+            @Override
+            public void onInserted(int position, int count) {
+                structural[0] = true;
+            }
+
+            @Override
+            public void onRemoved(int position, int count) {
+                structural[0] = true;
+            }
+
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+                structural[0] = true;
+            }
+
+            @Override
+            public void onChanged(int position, int count, Object payload) {
+                if (!structural[0]) {
+                    notifyItemRangeChanged(positionStart + position, count);
+                }
+            }
+        });
+
+        if (structural[0]) {
+            notifyItemRangeChanged(positionStart, itemCount);
+        }
+    }
+
+    /**
+     * Holds the views of a list item, so they are only looked up once when the item is created.
+     */
+    class ViewHolder extends RecyclerView.ViewHolder {
+
+        private final TextView mNameTextView;
+        private final TextView mPriceTextView;
+        private final TextView mQuantityTextView;
+        private final ImageView mPhotoImageView;
+        private final Button mSaleButton;
+
+        /**
+         * The product currently bound, or null for a placeholder.
+         */
+        private CatalogItem mItem;
+
+        /**
+         * The thumbnail being loaded into the photo view, or null if none is.
+         */
+        private Future<?> mThumbnailLoad;
+        private String mThumbnailKey;
+
+        ViewHolder(View itemView) {
+            super(itemView);
+
+            // Find individual views that we want to modify in the list item layout
+            mNameTextView = (TextView) itemView.findViewById(R.id.name);
+            mPriceTextView = (TextView) itemView.findViewById(R.id.price);
+            mQuantityTextView = (TextView) itemView.findViewById(R.id.quantity);
+            mPhotoImageView = itemView.findViewById(R.id.photo);
+            mSaleButton = itemView.findViewById(R.id.sale_button);
+
+            itemView.setOnClickListener(new View.OnClickListener() {
+                @Override
+                public void onClick(View v) {
+                    if (mItem != null) {
+                        mOnProductClickListener.onProductClick(mItem.getId());
+                    }
+                }
+            });
+
+            //Sale button that records a sale of 1 in the sale queue, which applies it to the
+            //database in the background
+            mSaleButton.setOnClickListener(new View.OnClickListener() {
+                @Override
+                public void onClick(View v) {
+                    if (mItem == null) {
+                        return;
+                    }
+
+                    int sale = 1;
+                    int available = mItem.getQuantity() + mSaleQueue.getPendingDelta(mItem.getId());
+
+                    if (available >= sale) {
+                        mSaleQueue.recordSale(mItem.getId(), sale);
+                        bindQuantity(available - sale);
+
+                        Toast.makeText(mContext, R.string.successful_sale, Toast.LENGTH_SHORT).show();
+
+                    } else {
+                        mQuantityTextView.setText(R.string.quantity_out_of_stock);
+                        Toast.makeText(mContext, R.string.click_add_product, Toast.LENGTH_SHORT).show();
+
+                    }
+                }
+            });
+        }
+
+        /**
+         * Clears the list item while the product for it is being loaded.
+         */
+        void bindPlaceholder() {
+            mItem = null;
+            mNameTextView.setText("");
+            mPriceTextView.setText("");
+            mQuantityTextView.setText("");
+            cancelThumbnail();
+            mPhotoImageView.setImageDrawable(null);
+            mSaleButton.setEnabled(false);
+        }
+
+        /**
+         * Binds the product data to the list item. For example, the name for the product is set
+         * on the name TextView.
+         */
+        void bind(CatalogItem item) {
+            mItem = item;
+
+            mNameTextView.setText(item.getName());
+
+            if (item.getPrice() == 0) {
+                mPriceTextView.setText(R.string.price_unknown);
+
+            } else {
+                mPriceTextView.setText(String.valueOf(item.getPrice()));
+            }
+
+            // Include sales that have been recorded but not applied to the database yet
+            bindQuantity(item.getQuantity() + mSaleQueue.getPendingDelta(item.getId()));
+
+            bindThumbnail(item);
+
+            mSaleButton.setEnabled(true);
+        }
+
+        /**
+         * Load the thumbnail of the product into the photo view, unless it is already on its way
+         * there, which it often is when a reloaded page rebinds rows that didn't change.
+         */
+        private void bindThumbnail(CatalogItem item) {
+            String key = item.getId() + ":" + item.getPhotoTime();
+            if (mThumbnailLoad != null && !mThumbnailLoad.isDone() && key.equals(mThumbnailKey)) {
+                return;
+            }
+            cancelThumbnail();
+            mThumbnailKey = key;
+            mThumbnailLoad = mThumbnailLoader.load(item.getId(), item.getPhotoTime(), mPhotoImageView);
+        }
+
+        void cancelThumbnail() {
+            if (mThumbnailLoad != null) {
+                mThumbnailLoad.cancel(false);
+                mThumbnailLoad = null;
+            }
+            mThumbnailKey = null;
+        }
+
+        private void bindQuantity(int quantity) {
+            if (quantity <= 0) {
+                mQuantityTextView.setText(R.string.quantity_out_of_stock);
+
+            } else {
+                mQuantityTextView.setText(String.valueOf(quantity));
+            }
+        }
+    }
+}
@@ -0,0 +1,302 @@
+package com.example.android.inventory;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.data.InventoryContract.InventoryEntry;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Exports the catalog to a document, such as one created through the Storage Access Framework,
+ * as CSV or as JSON Lines. Products are read in chunks in _id order, each chunk starting after
+ * the last _id of the previous one, and written out straight away, so memory use doesn't grow
+ * with the size of the catalog.
+ */
+final class CatalogExporter {
+
+    private static final String LOG_TAG = CatalogExporter.class.getSimpleName();
+
+    static final int FORMAT_CSV = 0;
+    static final int FORMAT_JSON_LINES = 1;
+
+    private static final int CHUNK_SIZE = 1000;
+
+    private static final String[] COLUMNS = {
+            InventoryEntry._ID,
+            InventoryEntry.COLUMN_PRODUCT_NAME,
+            InventoryEntry.COLUMN_PRODUCT_PRICE,
+            InventoryEntry.COLUMN_PRODUCT_QUANTITY,
+            InventoryEntry.COLUMN_PRODUCT_SUPPLIER,
+            InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NUMBER,
+            InventoryEntry.COLUMN_PRODUCT_REORDER_THRESHOLD,
+            InventoryEntry.COLUMN_PRODUCT_MODIFIED,
+            InventoryEntry.COLUMN_PRODUCT_SKU};
+
+    /**
+     * Whether each of the {@link #COLUMNS} holds text rather than a number.
+     */
+    private static final boolean[] TEXT_COLUMNS = {false, true, false, false, true, true, false, false, true};
+
+    /**
+     * Receives the progress and outcome of an export, on the main thread.
+     */
+    interface Listener {
+
+        /**
+         * Called after each chunk.
+         */
+        void onProgress(int exported);
+
+        void onFinished(Result result);
+    }
+
+    static final class Result {
+
+        final int exported;
+
+        /**
+         * Time the export started, in milliseconds since the epoch. Every change made before then
+         * is in the export, so passing it as the start of the next export of changes picks up
+         * where this one left off.
+         */
+        final long startTime;
+
+        /**
+         * Why the export failed, or null if it didn't.
+         */
+        final String error;
+
+        Result(int exported, long startTime, String error) {
+            this.exported = exported;
+            this.startTime = startTime;
+            this.error = error;
+        }
+    }
+
+    private final ContentResolver mContentResolver;
+    private final Listener mListener;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+    private volatile boolean mCancelled;
+
+    CatalogExporter(Context context, Listener listener) {
+        mContentResolver = context.getContentResolver();
+        mListener = listener;
+    }
+
+    /**
+     * Export in the background to the given document.
+     *
+     * @param format       {@link #FORMAT_CSV} or {@link #FORMAT_JSON_LINES}
+     * @param changedSince only export the products changed at or after this time, in milliseconds
+     *                     since the epoch, or 0 to export all of them
+     */
+    void start(final Uri destination, final int format, final long changedSince) {
+        if (format != FORMAT_CSV && format != FORMAT_JSON_LINES) {
+            throw new IllegalArgumentException("Unknown export format " + format);
+        }
+
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Result result = export(destination, format, changedSince);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        mListener.onFinished(result);
+                    }
+                });
+            }
+        });
+    }
+
+    void cancel() {
+        mCancelled = true;
+        mExecutor.shutdown();
+    }
+
+    private Result export(Uri destination, int format, long changedSince) {
+        long startTime = System.currentTimeMillis();
+        int exported = 0;
+        String error = null;
+
+        Writer writer = null;
+        try {
+            OutputStream stream = mContentResolver.openOutputStream(destination, "wt");
+            if (stream == null) {
+                throw new IOException("Cannot open " + destination);
+            }
+            writer = new BufferedWriter(new OutputStreamWriter(stream, Charset.forName("UTF-8")));
+
+            if (format == FORMAT_CSV) {
+                writeCsvHeader(writer);
+            }
+
+            long lastId = 0;
+            while (!mCancelled) {
+                Uri.Builder chunkUri = InventoryEntry.CONTENT_URI.buildUpon()
+                        .appendQueryParameter(InventoryEntry.QUERY_PARAMETER_LIMIT, String.valueOf(CHUNK_SIZE))
+                        .appendQueryParameter(InventoryEntry.QUERY_PARAMETER_AFTER_ID, String.valueOf(lastId));
+                if (changedSince > 0) {
+                    chunkUri.appendQueryParameter(InventoryEntry.QUERY_PARAMETER_CHANGED_SINCE,
+                            String.valueOf(changedSince));
+                }
+
+                Cursor cursor = mContentResolver.query(chunkUri.build(), COLUMNS, null, null, null);
+                if (cursor == null) {
+                    throw new IOException("Cannot read the catalog");
+                }
+
+                int count;
+                try {
+                    count = cursor.getCount();
+                    while (cursor.moveToNext()) {
+                        if (format == FORMAT_CSV) {
+                            writeCsvRow(writer, cursor);
+                        } else {
+                            writeJsonLine(writer, cursor);
+                        }
+                        lastId = cursor.getLong(0);
+                    }
+                } finally {
+                    cursor.close();
+                }
+
+                exported += count;
+                postProgress(exported);
+
+                if (count < CHUNK_SIZE) {
+                    break;
+                }
+            }
+
+            writer.flush();
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Failed to export to " + destination, e);
+            error = e.getMessage();
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    Log.w(LOG_TAG, "Failed to close " + destination, e);
+                }
+            }
+        }
+
+        return new Result(exported, startTime, error);
+    }
+
+    private static void writeCsvHeader(Writer writer) throws IOException {
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (i != 0) {
+                writer.write(',');
+            }
+            writer.write(COLUMNS[i]);
+        }
+        writer.write("\r\n");
+    }
+
+    private static void writeCsvRow(Writer writer, Cursor cursor) throws IOException {
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (i != 0) {
+                writer.write(',');
+            }
+            if (cursor.isNull(i)) {
+                continue;
+            } else if (TEXT_COLUMNS[i]) {
+                writeCsvField(writer, cursor.getString(i));
+            } else {
+                writer.write(Long.toString(cursor.getLong(i)));
+            }
+        }
+        writer.write("\r\n");
+    }
+
+    /**
+     * Write a text field, quoted if it contains anything that would otherwise end it.
+     */
+    private static void writeCsvField(Writer writer, String value) throws IOException {
+        if (value.indexOf(',') == -1 && value.indexOf('"') == -1
+                && value.indexOf('\n') == -1 && value.indexOf('\r') == -1) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+
+    private static void writeJsonLine(Writer writer, Cursor cursor) throws IOException {
+        writer.write('{');
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (i != 0) {
+                writer.write(',');
+            }
+            writeJsonString(writer, COLUMNS[i]);
+            writer.write(':');
+            if (cursor.isNull(i)) {
+                writer.write("null");
+            } else if (TEXT_COLUMNS[i]) {
+                writeJsonString(writer, cursor.getString(i));
+            } else {
+                writer.write(Long.toString(cursor.getLong(i)));
+            }
+        }
+        writer.write("}\n");
+    }
+
+    private static void writeJsonString(Writer writer, String value) throws IOException {
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    writer.write("\\\"");
+                    break;
+                case '\\':
+                    writer.write("\\\\");
+                    break;
+                case '\n':
+                    writer.write("\\n");
+                    break;
+                case '\r':
+                    writer.write("\\r");
+                    break;
+                case '\t':
+                    writer.write("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        writer.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        writer.write(c);
+                    }
+            }
+        }
+        writer.write('"');
+    }
+
+    private void postProgress(final int exported) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mListener.onProgress(exported);
+            }
+        });
+    }
+}
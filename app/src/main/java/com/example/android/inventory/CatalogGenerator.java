@@ -0,0 +1,189 @@
+package com.example.android.inventory;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+
+import com.data.InventoryContract.InventoryEntry;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Generates a synthetic catalog for load and scale testing. The same seed always generates the
+ * same products in the same order, so runs against catalogs of the same size and seed can be
+ * compared.
+ *
+ * Names are made up of an adjective, a noun and a model number. Prices follow a log-normal
+ * distribution, so most products are cheap and a few are expensive. Quantities are exponential,
+ * with a share of products out of stock and some with a reorder threshold. A few suppliers
+ * supply most products, following a Zipf distribution.
+ */
+final class CatalogGenerator {
+
+    static final long DEFAULT_SEED = 1;
+
+    /**
+     * Number of products inserted per call to the provider.
+     */
+    private static final int BATCH_SIZE = 2000;
+
+    private static final String[] ADJECTIVES = {
+            "Compact", "Deluxe", "Portable", "Wireless", "Smart", "Classic", "Ultra", "Mini",
+            "Pro", "Rugged", "Silent", "Digital", "Solar", "Ergonomic", "Premium", "Eco"};
+
+    private static final String[] NOUNS = {
+            "Television", "Radio", "Phone", "Speaker", "Headphones", "Camera", "Lamp", "Kettle",
+            "Toaster", "Blender", "Monitor", "Keyboard", "Mouse", "Router", "Charger", "Printer",
+            "Tablet", "Watch", "Projector", "Heater"};
+
+    private static final String[] SUPPLIER_PREFIXES = {
+            "Acme", "Globex", "Initech", "Umbrella", "Stark", "Wayne", "Wonka", "Cyberdyne",
+            "Tyrell", "Soylent"};
+
+    private static final String[] SUPPLIER_SUFFIXES = {
+            "Electronics", "Trading", "Imports", "Supplies", "Wholesale", "Distribution",
+            "Industries", "Goods", "Partners", "Direct"};
+
+    private static final int SUPPLIER_COUNT = SUPPLIER_PREFIXES.length * SUPPLIER_SUFFIXES.length;
+
+    /**
+     * Exponent of the Zipf distribution of supplier popularity. The most popular supplier
+     * supplies about one product in four.
+     */
+    private static final double SUPPLIER_SKEW = 1.1;
+
+    private static final double MEDIAN_PRICE = 50;
+    private static final double PRICE_SIGMA = 1.0;
+    private static final int MAX_PRICE = 100000;
+
+    private static final double MEAN_QUANTITY = 40;
+    private static final double OUT_OF_STOCK_SHARE = 0.1;
+    private static final double REORDER_THRESHOLD_SHARE = 0.3;
+
+    /**
+     * Cumulative probability of each supplier, by popularity rank.
+     */
+    private static final double[] SUPPLIER_CUMULATIVE_WEIGHTS = cumulativeZipfWeights(SUPPLIER_COUNT, SUPPLIER_SKEW);
+
+    private final Random mRandom;
+
+    private int mGenerated;
+
+    CatalogGenerator(long seed) {
+        mRandom = new Random(seed);
+    }
+
+    /**
+     * Return the values of the next product.
+     */
+    ContentValues nextProduct() {
+        int supplier = nextSupplier();
+
+        ContentValues values = new ContentValues();
+        values.put(InventoryEntry.COLUMN_PRODUCT_NAME, pick(ADJECTIVES) + " " + pick(NOUNS) + " "
+                + (1000 + mGenerated));
+        values.put(InventoryEntry.COLUMN_PRODUCT_PRICE, nextPrice());
+        values.put(InventoryEntry.COLUMN_PRODUCT_QUANTITY, nextQuantity());
+        values.put(InventoryEntry.COLUMN_PRODUCT_SUPPLIER, supplierName(supplier));
+        values.put(InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NUMBER,
+                String.format(Locale.US, "1800%07d", supplier * 7919 % 10000000));
+        if (mRandom.nextDouble() < REORDER_THRESHOLD_SHARE) {
+            values.put(InventoryEntry.COLUMN_PRODUCT_REORDER_THRESHOLD, 5 + mRandom.nextInt(16));
+        }
+
+        mGenerated++;
+        return values;
+    }
+
+    /**
+     * Return a word that starts product names or supplier names, cut to a prefix as a user
+     * typing a search would.
+     */
+    String nextSearchTerm() {
+        String word;
+        switch (mRandom.nextInt(3)) {
+            case 0:
+                word = pick(ADJECTIVES);
+                break;
+            case 1:
+                word = pick(NOUNS);
+                break;
+            default:
+                word = supplierName(nextSupplier());
+                break;
+        }
+        return word.substring(0, Math.min(word.length(), 3 + mRandom.nextInt(3)));
+    }
+
+    /**
+     * Generate the given number of products and insert them through the provider in batches,
+     * each in a transaction of its own. Return the number of products inserted.
+     */
+    int populate(ContentResolver contentResolver, int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Cannot generate " + count + " products");
+        }
+
+        int generated = 0;
+        int inserted = 0;
+        ContentValues[] batch = new ContentValues[Math.min(BATCH_SIZE, count)];
+        while (generated < count) {
+            int batchCount = Math.min(batch.length, count - generated);
+            ContentValues[] rows = batchCount == batch.length ? batch : Arrays.copyOf(batch, batchCount);
+            for (int i = 0; i < batchCount; i++) {
+                rows[i] = nextProduct();
+            }
+            generated += batchCount;
+            inserted += contentResolver.bulkInsert(InventoryEntry.CONTENT_URI, rows);
+        }
+        return inserted;
+    }
+
+    private String pick(String[] words) {
+        return words[mRandom.nextInt(words.length)];
+    }
+
+    /**
+     * Return the popularity rank of a supplier, drawn from the Zipf distribution.
+     */
+    private int nextSupplier() {
+        int index = Arrays.binarySearch(SUPPLIER_CUMULATIVE_WEIGHTS, mRandom.nextDouble());
+        return Math.min(index < 0 ? -index - 1 : index, SUPPLIER_COUNT - 1);
+    }
+
+    /**
+     * Return the name of the supplier of the given rank. Ranks are spread over the names, so
+     * the most popular suppliers don't all share a prefix.
+     */
+    private static String supplierName(int rank) {
+        int name = rank * 37 % SUPPLIER_COUNT;
+        return SUPPLIER_PREFIXES[name / SUPPLIER_SUFFIXES.length] + " "
+                + SUPPLIER_SUFFIXES[name % SUPPLIER_SUFFIXES.length];
+    }
+
+    private int nextPrice() {
+        double price = MEDIAN_PRICE * Math.exp(PRICE_SIGMA * mRandom.nextGaussian());
+        return (int) Math.max(1, Math.min(MAX_PRICE, Math.round(price)));
+    }
+
+    private int nextQuantity() {
+        if (mRandom.nextDouble() < OUT_OF_STOCK_SHARE) {
+            return 0;
+        }
+        return 1 + (int) (-MEAN_QUANTITY * Math.log(1 - mRandom.nextDouble()));
+    }
+
+    private static double[] cumulativeZipfWeights(int count, double exponent) {
+        double[] weights = new double[count];
+        double total = 0;
+        for (int rank = 0; rank < count; rank++) {
+            total += 1 / Math.pow(rank + 1, exponent);
+            weights[rank] = total;
+        }
+        for (int rank = 0; rank < count; rank++) {
+            weights[rank] /= total;
+        }
+        return weights;
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.android.inventory;
+
+import android.database.Cursor;
+
+import com.data.InventoryContract.InventoryEntry;
+
+/**
+ * A product as shown in a row of the catalog list.
+ */
+final class CatalogItem {
+
+    /**
+     * The columns to query to read products with {@link #fromCursor}. Only what the list shows,
+     * so the provider reads them without joining in the suppliers. The photo is loaded from its
+     * own URI, so only the time it was set is read here.
+     */
+    static final String[] PROJECTION = {
+            InventoryEntry._ID,
+            InventoryEntry.COLUMN_PRODUCT_NAME,
+            InventoryEntry.COLUMN_PRODUCT_PRICE,
+            InventoryEntry.COLUMN_PRODUCT_QUANTITY,
+            InventoryEntry.COLUMN_PRODUCT_PHOTO_TIME};
+
+    /**
+     * {@link #PROJECTION} with the supplier added, for the catalog sorted by supplier, which
+     * needs it to page.
+     */
+    static final String[] PROJECTION_WITH_SUPPLIER = {
+            InventoryEntry._ID,
+            InventoryEntry.COLUMN_PRODUCT_NAME,
+            InventoryEntry.COLUMN_PRODUCT_PRICE,
+            InventoryEntry.COLUMN_PRODUCT_QUANTITY,
+            InventoryEntry.COLUMN_PRODUCT_PHOTO_TIME,
+            InventoryEntry.COLUMN_PRODUCT_SUPPLIER};
+
+    private static final int INDEX_ID = 0;
+    private static final int INDEX_NAME = 1;
+    private static final int INDEX_PRICE = 2;
+    private static final int INDEX_QUANTITY = 3;
+    private static final int INDEX_PHOTO_TIME = 4;
+    private static final int INDEX_SUPPLIER = 5;
+
+    private final long mId;
+    private final String mName;
+    private final int mPrice;
+    private final int mQuantity;
+
+    /**
+     * When the photo was last set, or 0 if the product has none.
+     */
+    private final long mPhotoTime;
+
+    /**
+     * Not shown, but the catalog can be sorted by it. Null unless read with
+     * {@link #PROJECTION_WITH_SUPPLIER}.
+     */
+    private final String mSupplier;
+
+    CatalogItem(long id, String name, int price, int quantity, long photoTime, String supplier) {
+        mId = id;
+        mName = name;
+        mPrice = price;
+        mQuantity = quantity;
+        mPhotoTime = photoTime;
+        mSupplier = supplier;
+    }
+
+    /**
+     * Read the product in the current row of a cursor queried with {@link #PROJECTION} or
+     * {@link #PROJECTION_WITH_SUPPLIER}.
+     */
+    static CatalogItem fromCursor(Cursor cursor) {
+        return new CatalogItem(
+                cursor.getLong(INDEX_ID),
+                cursor.getString(INDEX_NAME),
+                cursor.getInt(INDEX_PRICE),
+                cursor.getInt(INDEX_QUANTITY),
+                cursor.getLong(INDEX_PHOTO_TIME),
+                cursor.getColumnCount() > INDEX_SUPPLIER ? cursor.getString(INDEX_SUPPLIER) : null);
+    }
+
+    /**
+     * Return the projection to read products with when the catalog is sorted the given way, or
+     * not at all if it is null.
+     */
+    static String[] projectionFor(String sort) {
+        return InventoryEntry.SORT_SUPPLIER.equals(sort) ? PROJECTION_WITH_SUPPLIER : PROJECTION;
+    }
+
+    long getId() {
+        return mId;
+    }
+
+    String getName() {
+        return mName;
+    }
+
+    int getPrice() {
+        return mPrice;
+    }
+
+    int getQuantity() {
+        return mQuantity;
+    }
+
+    long getPhotoTime() {
+        return mPhotoTime;
+    }
+
+    String getSupplier() {
+        return mSupplier;
+    }
+
+    /**
+     * Return true if everything shown for this product in the list is the same for the other one.
+     */
+    boolean hasSameContents(CatalogItem other) {
+        return mPrice == other.mPrice
+                && mQuantity == other.mQuantity
+                && mPhotoTime == other.mPhotoTime
+                && (mName == null ? other.mName == null : mName.equals(other.mName));
+    }
+}
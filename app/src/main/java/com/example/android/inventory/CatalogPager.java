@@ -0,0 +1,477 @@
+package com.example.android.inventory;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v7.util.DiffUtil;
+import android.text.TextUtils;
+import android.util.LruCache;
+
+import com.data.InventoryContract;
+import com.data.InventoryContract.InventoryEntry;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Loads the catalog a page at a time as rows are asked for, so memory stays bounded however many
+ * products there are. Each page is read with a keyset query that starts right after the last
+ * product of the page before it, and only the most recently used pages are kept. The catalog is
+ * listed in _id order unless a sort is set, in which case it is ordered by the sort column and
+ * then _id, and pages start after both. When a cached page
+ * is reloaded after a change, it is diffed against its previous contents in the background, so
+ * only the rows that actually changed have to be rebound. A change to a single product only
+ * reloads that product and patches it into its cached page.
+ *
+ * All methods must be called on the main thread.
+ */
+final class CatalogPager {
+
+    /**
+     * Receives changes to the data behind the list, on the main thread.
+     */
+    interface Callback {
+
+        /**
+         * The number of products changed, so every position may now hold a different product.
+         */
+        void onCatalogReset();
+
+        /**
+         * A page that wasn't cached has been loaded, replacing the placeholders in the given range.
+         */
+        void onPageLoaded(int positionStart, int itemCount);
+
+        /**
+         * A cached page has been reloaded. The diff describes how its products changed, with
+         * positions relative to the start of the page.
+         */
+        void onPageUpdated(int positionStart, int itemCount, DiffUtil.DiffResult diff);
+
+        /**
+         * The product at the given position changed.
+         */
+        void onItemChanged(int position);
+    }
+
+    static final int PAGE_SIZE = 50;
+
+    private static final int MAX_CACHED_PAGES = 8;
+
+    private final ContentResolver mContentResolver;
+    private final Callback mCallback;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+    private final LruCache<Integer, List<CatalogItem>> mPages = new LruCache<>(MAX_CACHED_PAGES);
+
+    /**
+     * The product each known page starts after. Page 0 starts at the beginning, so its start is
+     * null; the start of every other page is only known once the page before it has been loaded.
+     */
+    private final ArrayList<CatalogItem> mPageStarts = new ArrayList<>();
+
+    private final Set<Integer> mLoadingPages = new HashSet<>();
+
+    /**
+     * Furthest page asked for whose start isn't known yet, or -1.
+     */
+    private int mWantedPage = -1;
+
+    private int mCount;
+
+    /**
+     * One of the sorts of {@link InventoryEntry#QUERY_PARAMETER_SORT}, or null for _id order.
+     */
+    private String mSort;
+
+    private boolean mInStockOnly;
+
+    /**
+     * Bumped whenever the known pages are thrown away, so results of loads started before are
+     * ignored.
+     */
+    private int mGeneration;
+
+    private final ContentObserver mObserver = new ContentObserver(mMainHandler) {
+        @Override
+        public void onChange(boolean selfChange) {
+            onChange(selfChange, null);
+        }
+
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            if (isProductUri(uri)) {
+                loadProduct(ContentUris.parseId(uri));
+            } else {
+                loadCount(true);
+            }
+        }
+    };
+
+    CatalogPager(Context context, Callback callback) {
+        mContentResolver = context.getContentResolver();
+        mCallback = callback;
+        clearPages();
+    }
+
+    void start() {
+        mContentResolver.registerContentObserver(InventoryEntry.CONTENT_URI, true, mObserver);
+        loadCount(false);
+    }
+
+    void stop() {
+        mContentResolver.unregisterContentObserver(mObserver);
+        mExecutor.shutdownNow();
+        mGeneration++;
+    }
+
+    int getCount() {
+        return mCount;
+    }
+
+    /**
+     * List the catalog sorted the given way, or in _id order if the sort is null, and only the
+     * products in stock if asked to. Paging starts over.
+     */
+    void setOrder(String sort, boolean inStockOnly) {
+        mSort = sort;
+        mInStockOnly = inStockOnly;
+        clearPages();
+        loadCount(false);
+    }
+
+    /**
+     * Return the product at the given position, or null if its page hasn't been loaded yet, in
+     * which case it is loaded and the callback is told once it is available.
+     */
+    CatalogItem getItem(int position) {
+        int page = position / PAGE_SIZE;
+        List<CatalogItem> items = mPages.get(page);
+        if (items == null) {
+            requestPage(page);
+            return null;
+        }
+
+        int index = position % PAGE_SIZE;
+        return index < items.size() ? items.get(index) : null;
+    }
+
+    private void clearPages() {
+        mGeneration++;
+        mPages.evictAll();
+        mPageStarts.clear();
+        mPageStarts.add(null);
+        mLoadingPages.clear();
+        mWantedPage = -1;
+    }
+
+    private void requestPage(int page) {
+        if (page < mPageStarts.size()) {
+            loadPage(page);
+            return;
+        }
+
+        // A page starts after the last product of the page before it, so the pages in between
+        // have to be read first. Stop if the last known page is the end of the catalog.
+        int lastKnownPage = mPageStarts.size() - 1;
+        List<CatalogItem> lastKnownItems = mPages.get(lastKnownPage);
+        if (lastKnownItems != null && lastKnownItems.size() < PAGE_SIZE) {
+            return;
+        }
+
+        mWantedPage = Math.max(mWantedPage, page);
+        loadPage(lastKnownPage);
+    }
+
+    private void loadPage(final int page) {
+        if (!mLoadingPages.add(page)) {
+            return;
+        }
+
+        final int generation = mGeneration;
+        final CatalogItem startAfter = mPageStarts.get(page);
+        final String sort = mSort;
+        final boolean inStockOnly = mInStockOnly;
+        final List<CatalogItem> oldItems = mPages.get(page);
+
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<CatalogItem> items = queryPage(sort, inStockOnly, startAfter);
+                final DiffUtil.DiffResult diff = oldItems == null
+                        ? null : DiffUtil.calculateDiff(new PageDiffCallback(oldItems, items), false);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onPageLoaded(generation, page, items, diff);
+                    }
+                });
+            }
+        });
+    }
+
+    private void onPageLoaded(int generation, int page, List<CatalogItem> items, DiffUtil.DiffResult diff) {
+        if (generation != mGeneration) {
+            return;
+        }
+
+        mLoadingPages.remove(page);
+        mPages.put(page, items);
+
+        if (items.size() == PAGE_SIZE && page == mPageStarts.size() - 1) {
+            mPageStarts.add(items.get(PAGE_SIZE - 1));
+        }
+
+        if (mWantedPage >= 0) {
+            int wantedPage = mWantedPage;
+            mWantedPage = -1;
+            requestPage(wantedPage);
+        }
+
+        int positionStart = page * PAGE_SIZE;
+        int itemCount = Math.max(0, Math.min(PAGE_SIZE, mCount - positionStart));
+        if (diff == null) {
+            mCallback.onPageLoaded(positionStart, itemCount);
+        } else {
+            mCallback.onPageUpdated(positionStart, itemCount, diff);
+        }
+    }
+
+    /**
+     * Count the products in the background. When refreshing after a change, an unchanged count
+     * in _id order means only the contents of rows changed, so the cached pages are reloaded in
+     * place; otherwise rows may have moved between pages and paging starts over. When sorted, a
+     * change may have moved the product a page starts after, so paging always starts over.
+     */
+    private void loadCount(final boolean refresh) {
+        final int generation = mGeneration;
+        final boolean inStockOnly = mInStockOnly;
+
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final int count = queryCount(inStockOnly);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != mGeneration) {
+                            return;
+                        }
+
+                        if (refresh && count == mCount && mSort == null) {
+                            for (Integer page : mPages.snapshot().keySet()) {
+                                loadPage(page);
+                            }
+                            return;
+                        }
+
+                        clearPages();
+                        mCount = count;
+                        mCallback.onCatalogReset();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Return true if the given URI is the URI of a single product, rather than of the whole table.
+     */
+    private static boolean isProductUri(Uri uri) {
+        if (uri == null) {
+            return false;
+        }
+
+        List<String> segments = uri.getPathSegments();
+        return segments.size() == 2
+                && InventoryContract.PATH_INVENTORY.equals(segments.get(0))
+                && TextUtils.isDigitsOnly(segments.get(1));
+    }
+
+    /**
+     * Reload a single product in the background and patch it into its cached page. If it no
+     * longer exists or is no longer listed, or it may have moved, the count is refreshed instead.
+     */
+    private void loadProduct(final long id) {
+        final int generation = mGeneration;
+        final String sort = mSort;
+
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final CatalogItem item = queryProduct(id, sort);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onProductLoaded(generation, id, item);
+                    }
+                });
+            }
+        });
+    }
+
+    private void onProductLoaded(int generation, long id, CatalogItem item) {
+        if (generation != mGeneration) {
+            return;
+        }
+
+        if (item == null || (mInStockOnly && item.getQuantity() == 0)) {
+            loadCount(true);
+            return;
+        }
+
+        for (Map.Entry<Integer, List<CatalogItem>> entry : mPages.snapshot().entrySet()) {
+            List<CatalogItem> items = entry.getValue();
+            for (int i = 0; i < items.size(); i++) {
+                if (items.get(i).getId() != id) {
+                    continue;
+                }
+
+                if (mSort != null && !sortValueOf(mSort, items.get(i)).equals(sortValueOf(mSort, item))) {
+                    // It may belong on another page now
+                    loadCount(true);
+                } else if (!items.get(i).hasSameContents(item)) {
+                    // Pages may still be read by a diff in the background, so replace rather than modify
+                    List<CatalogItem> patched = new ArrayList<>(items);
+                    patched.set(i, item);
+                    mPages.put(entry.getKey(), patched);
+                    mCallback.onItemChanged(entry.getKey() * PAGE_SIZE + i);
+                }
+                return;
+            }
+        }
+
+        // Not listed before, so it may just have come back in stock
+        if (mInStockOnly) {
+            loadCount(true);
+        }
+    }
+
+    private int queryCount(boolean inStockOnly) {
+        Uri uri = InventoryEntry.CONTENT_URI.buildUpon()
+                .appendQueryParameter(InventoryEntry.QUERY_PARAMETER_IN_STOCK, String.valueOf(inStockOnly))
+                .build();
+        Cursor cursor = mContentResolver.query(uri, new String[]{"COUNT(*)"}, null, null, null);
+        if (cursor == null) {
+            return 0;
+        }
+
+        try {
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private List<CatalogItem> queryPage(String sort, boolean inStockOnly, CatalogItem startAfter) {
+        Uri.Builder builder = InventoryEntry.CONTENT_URI.buildUpon()
+                .appendQueryParameter(InventoryEntry.QUERY_PARAMETER_LIMIT, String.valueOf(PAGE_SIZE))
+                .appendQueryParameter(InventoryEntry.QUERY_PARAMETER_IN_STOCK, String.valueOf(inStockOnly));
+        if (sort != null) {
+            builder.appendQueryParameter(InventoryEntry.QUERY_PARAMETER_SORT, sort);
+        }
+        if (startAfter != null) {
+            builder.appendQueryParameter(InventoryEntry.QUERY_PARAMETER_AFTER_ID, String.valueOf(startAfter.getId()));
+            if (sort != null) {
+                builder.appendQueryParameter(InventoryEntry.QUERY_PARAMETER_AFTER_VALUE, sortValueOf(sort, startAfter));
+            }
+        }
+        Uri uri = builder.build();
+
+        List<CatalogItem> items = new ArrayList<>(PAGE_SIZE);
+
+        Cursor cursor = mContentResolver.query(uri, CatalogItem.projectionFor(sort), null, null, null);
+        if (cursor == null) {
+            return items;
+        }
+
+        try {
+            while (cursor.moveToNext()) {
+                items.add(CatalogItem.fromCursor(cursor));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return items;
+    }
+
+    private CatalogItem queryProduct(long id, String sort) {
+        Cursor cursor = mContentResolver.query(ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, id),
+                CatalogItem.projectionFor(sort), null, null, null);
+        if (cursor == null) {
+            return null;
+        }
+
+        try {
+            return cursor.moveToFirst() ? CatalogItem.fromCursor(cursor) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Return the value of the column the given sort orders by, as passed to
+     * {@link InventoryEntry#QUERY_PARAMETER_AFTER_VALUE}.
+     */
+    private static String sortValueOf(String sort, CatalogItem item) {
+        switch (sort) {
+            case InventoryEntry.SORT_NAME:
+                return item.getName();
+            case InventoryEntry.SORT_PRICE:
+                return String.valueOf(item.getPrice());
+            case InventoryEntry.SORT_QUANTITY:
+                return String.valueOf(item.getQuantity());
+            case InventoryEntry.SORT_SUPPLIER:
+                return item.getSupplier();
+            default:
+                throw new IllegalArgumentException("Cannot sort products by " + sort);
+        }
+    }
+
+    /**
+     * Compares the products of a page before and after it was reloaded. Rows are the same product
+     * if they have the same _id, and only need rebinding if something shown in them changed.
+     */
+    private static final class PageDiffCallback extends DiffUtil.Callback {
+
+        private final List<CatalogItem> mOldItems;
+        private final List<CatalogItem> mNewItems;
+
+        PageDiffCallback(List<CatalogItem> oldItems, List<CatalogItem> newItems) {
+            mOldItems = oldItems;
+            mNewItems = newItems;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return mOldItems.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mNewItems.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return mOldItems.get(oldItemPosition).getId() == mNewItems.get(newItemPosition).getId();
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            return mOldItems.get(oldItemPosition).hasSameContents(mNewItems.get(newItemPosition));
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.android.inventory;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.OperationCanceledException;
+import android.text.TextUtils;
+
+import com.data.InventoryContract.InventoryEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Searches the catalog as the user types. Starting a new search cancels the one still running,
+ * so only the results for the latest text are ever delivered.
+ *
+ * All methods must be called on the main thread.
+ */
+final class CatalogSearcher {
+
+    /**
+     * Receives search results, on the main thread.
+     */
+    interface Callback {
+        void onSearchResults(List<CatalogItem> items);
+    }
+
+    private static final int MAX_RESULTS = 100;
+
+    private final ContentResolver mContentResolver;
+    private final Callback mCallback;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+    /**
+     * Signal of the search currently running, or null.
+     */
+    private CancellationSignal mCancellationSignal;
+
+    private String mQuery;
+
+    CatalogSearcher(Context context, Callback callback) {
+        mContentResolver = context.getContentResolver();
+        mCallback = callback;
+    }
+
+    /**
+     * Return the text last searched for, or null if not searching.
+     */
+    String getQuery() {
+        return mQuery;
+    }
+
+    /**
+     * Search for the given text in the background, cancelling the previous search. An empty
+     * text stops searching without delivering results.
+     */
+    void search(String query) {
+        cancel();
+
+        if (TextUtils.isEmpty(query)) {
+            mQuery = null;
+            return;
+        }
+        mQuery = query;
+
+        final CancellationSignal cancellationSignal = new CancellationSignal();
+        mCancellationSignal = cancellationSignal;
+
+        // Encoded as a single segment, so text with a slash or question mark still matches the URI
+        final Uri uri = InventoryEntry.SEARCH_URI.buildUpon()
+                .appendPath(query)
+                .appendQueryParameter(InventoryEntry.QUERY_PARAMETER_LIMIT, String.valueOf(MAX_RESULTS))
+                .build();
+
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (cancellationSignal.isCanceled()) {
+                    return;
+                }
+
+                final List<CatalogItem> items;
+                try {
+                    items = querySearch(uri, cancellationSignal);
+                } catch (OperationCanceledException e) {
+                    return;
+                }
+
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!cancellationSignal.isCanceled()) {
+                            mCancellationSignal = null;
+                            mCallback.onSearchResults(items);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    void stop() {
+        cancel();
+        mExecutor.shutdownNow();
+    }
+
+    private void cancel() {
+        if (mCancellationSignal != null) {
+            mCancellationSignal.cancel();
+            mCancellationSignal = null;
+        }
+    }
+
+    private List<CatalogItem> querySearch(Uri uri, CancellationSignal cancellationSignal) {
+        List<CatalogItem> items = new ArrayList<>();
+
+        Cursor cursor = mContentResolver.query(uri, CatalogItem.PROJECTION, null, null, null,
+                cancellationSignal);
+        if (cursor == null) {
+            return items;
+        }
+
+        try {
+            while (cursor.moveToNext()) {
+                items.add(CatalogItem.fromCursor(cursor));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return items;
+    }
+}
@@ -0,0 +1,368 @@
+package com.example.android.inventory;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.OpenableColumns;
+import android.util.Log;
+
+import com.data.InventoryContract.InventoryEntry;
+import com.data.InventoryProvider;
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Imports products from a CSV document, such as one picked through the Storage Access
+ * Framework. The document is streamed a record at a time and inserted in batches, each in a
+ * transaction of its own, so memory use doesn't grow with its size. Rows are checked against the
+ * same rules as the provider applies, and invalid rows are reported rather than failing the
+ * whole import.
+ *
+ * The first record must name the columns, using the column names of {@link InventoryEntry}.
+ * The name, price, supplier and supplier number are required; the quantity and reorder
+ * threshold are optional.
+ */
+final class CsvImporter {
+
+    private static final String LOG_TAG = CsvImporter.class.getSimpleName();
+
+    static final int DEFAULT_BATCH_SIZE = 500;
+
+    /**
+     * Number of rejected rows whose reasons are kept for the result. Only the count is kept for
+     * the rest.
+     */
+    private static final int MAX_REPORTED_REJECTS = 100;
+
+    private static final String[] REQUIRED_COLUMNS = {
+            InventoryEntry.COLUMN_PRODUCT_NAME,
+            InventoryEntry.COLUMN_PRODUCT_PRICE,
+            InventoryEntry.COLUMN_PRODUCT_SUPPLIER,
+            InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NUMBER};
+
+    private static final String[] INTEGER_COLUMNS = {
+            InventoryEntry.COLUMN_PRODUCT_PRICE,
+            InventoryEntry.COLUMN_PRODUCT_QUANTITY,
+            InventoryEntry.COLUMN_PRODUCT_REORDER_THRESHOLD};
+
+    private static final String[] TEXT_COLUMNS = {
+            InventoryEntry.COLUMN_PRODUCT_NAME,
+            InventoryEntry.COLUMN_PRODUCT_SUPPLIER,
+            InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NUMBER,
+            InventoryEntry.COLUMN_PRODUCT_SKU};
+
+    /**
+     * Receives the progress and outcome of an import, on the main thread.
+     */
+    interface Listener {
+
+        /**
+         * Called after each batch.
+         *
+         * @param totalBytes size of the document, or -1 if unknown
+         */
+        void onProgress(long bytesRead, long totalBytes, int imported, int rejected);
+
+        void onFinished(Result result);
+    }
+
+    static final class Result {
+
+        final int imported;
+        final int rejected;
+
+        /**
+         * Why rows were rejected, with their line numbers, for at most the first
+         * {@value #MAX_REPORTED_REJECTS} of them.
+         */
+        final List<String> rejects;
+
+        /**
+         * Why the document couldn't be read to the end, or null if it was.
+         */
+        final String error;
+
+        final boolean cancelled;
+
+        Result(int imported, int rejected, List<String> rejects, String error, boolean cancelled) {
+            this.imported = imported;
+            this.rejected = rejected;
+            this.rejects = Collections.unmodifiableList(rejects);
+            this.error = error;
+            this.cancelled = cancelled;
+        }
+    }
+
+    private final ContentResolver mContentResolver;
+    private final int mBatchSize;
+    private final Listener mListener;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+    private volatile boolean mCancelled;
+
+    CsvImporter(Context context, int batchSize, Listener listener) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1");
+        }
+        mContentResolver = context.getContentResolver();
+        mBatchSize = batchSize;
+        mListener = listener;
+    }
+
+    /**
+     * Import the document in the background.
+     */
+    void start(final Uri uri) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Result result = importDocument(uri);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        mListener.onFinished(result);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Stop importing after the current batch. Batches already inserted stay.
+     */
+    void cancel() {
+        mCancelled = true;
+        mExecutor.shutdown();
+    }
+
+    private Result importDocument(Uri uri) {
+        int imported = 0;
+        int rejected = 0;
+        List<String> rejects = new ArrayList<>();
+        String error = null;
+
+        ContentValues[] batch = new ContentValues[mBatchSize];
+        int batchCount = 0;
+
+        CountingInputStream input = null;
+        try {
+            long totalBytes = querySize(uri);
+
+            InputStream stream = mContentResolver.openInputStream(uri);
+            if (stream == null) {
+                throw new IOException("Cannot open " + uri);
+            }
+            input = new CountingInputStream(stream);
+            CsvReader reader = new CsvReader(new BufferedReader(
+                    new InputStreamReader(input, Charset.forName("UTF-8"))));
+
+            int[] columnIndexes = readHeader(reader.readRecord());
+
+            String[] fields;
+            while (!mCancelled && (fields = reader.readRecord()) != null) {
+                try {
+                    batch[batchCount] = toContentValues(fields, columnIndexes);
+                    batchCount++;
+                } catch (IllegalArgumentException e) {
+                    rejected++;
+                    if (rejects.size() < MAX_REPORTED_REJECTS) {
+                        rejects.add("Line " + reader.getRecordLineNumber() + ": " + e.getMessage());
+                    }
+                }
+
+                if (batchCount == mBatchSize) {
+                    int inserted = insertBatch(batch, batchCount);
+                    imported += inserted;
+                    rejected += batchCount - inserted;
+                    batchCount = 0;
+                    postProgress(input.getCount(), totalBytes, imported, rejected);
+                }
+            }
+
+            if (batchCount != 0 && !mCancelled) {
+                int inserted = insertBatch(batch, batchCount);
+                imported += inserted;
+                rejected += batchCount - inserted;
+                postProgress(input.getCount(), totalBytes, imported, rejected);
+            }
+        } catch (IOException | RuntimeException e) {
+            // Includes a SQLException from the provider, which would otherwise end the import
+            // without ever reporting that it finished
+            Log.e(LOG_TAG, "Failed to import " + uri, e);
+            error = e.getMessage() != null ? e.getMessage() : e.toString();
+        } finally {
+            if (input != null) {
+                try {
+                    input.close();
+                } catch (IOException e) {
+                    Log.w(LOG_TAG, "Failed to close " + uri, e);
+                }
+            }
+        }
+
+        return new Result(imported, rejected, rejects, error, mCancelled);
+    }
+
+    /**
+     * Return the index of each of the columns of {@link #REQUIRED_COLUMNS},
+     * {@link #INTEGER_COLUMNS} and {@link #TEXT_COLUMNS} in the records, or -1 for an optional
+     * column that is missing.
+     */
+    private static int[] readHeader(String[] header) {
+        if (header == null) {
+            throw new IllegalArgumentException("The document is empty");
+        }
+
+        List<String> names = new ArrayList<>(header.length);
+        for (String name : header) {
+            // Spreadsheets often start the document with a byte order mark
+            names.add(name.replace("\uFEFF", "").trim().toLowerCase(Locale.US));
+        }
+
+        for (String column : REQUIRED_COLUMNS) {
+            if (!names.contains(column.toLowerCase(Locale.US))) {
+                throw new IllegalArgumentException("Missing column " + column);
+            }
+        }
+
+        int[] indexes = new int[INTEGER_COLUMNS.length + TEXT_COLUMNS.length];
+        for (int i = 0; i < INTEGER_COLUMNS.length; i++) {
+            indexes[i] = names.indexOf(INTEGER_COLUMNS[i].toLowerCase(Locale.US));
+        }
+        for (int i = 0; i < TEXT_COLUMNS.length; i++) {
+            indexes[INTEGER_COLUMNS.length + i] = names.indexOf(TEXT_COLUMNS[i].toLowerCase(Locale.US));
+        }
+        return indexes;
+    }
+
+    /**
+     * Turn a record into the values of a product, throwing an {@link IllegalArgumentException}
+     * if it isn't a valid product. Empty fields are left out.
+     */
+    private static ContentValues toContentValues(String[] fields, int[] columnIndexes) {
+        ContentValues values = new ContentValues();
+
+        for (int i = 0; i < columnIndexes.length; i++) {
+            int index = columnIndexes[i];
+            if (index == -1) {
+                continue;
+            }
+            if (index >= fields.length) {
+                throw new IllegalArgumentException("Expected at least " + (index + 1) + " fields");
+            }
+
+            String field = fields[index].trim();
+            if (field.isEmpty()) {
+                continue;
+            }
+
+            if (i < INTEGER_COLUMNS.length) {
+                try {
+                    values.put(INTEGER_COLUMNS[i], Integer.parseInt(field));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Not a number for " + INTEGER_COLUMNS[i] + ": " + field);
+                }
+            } else {
+                values.put(TEXT_COLUMNS[i - INTEGER_COLUMNS.length], field);
+            }
+        }
+
+        InventoryProvider.validateInventory(values);
+
+        return values;
+    }
+
+    /**
+     * Insert the first count values of the batch in one transaction. Return the number of rows
+     * inserted.
+     */
+    private int insertBatch(ContentValues[] batch, int count) {
+        ContentValues[] rows = count == batch.length ? batch : Arrays.copyOf(batch, count);
+        int inserted = mContentResolver.bulkInsert(InventoryEntry.CONTENT_URI, rows);
+        Arrays.fill(batch, null);
+        return inserted;
+    }
+
+    private void postProgress(final long bytesRead, final long totalBytes, final int imported,
+                              final int rejected) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mListener.onProgress(bytesRead, totalBytes, imported, rejected);
+            }
+        });
+    }
+
+    /**
+     * Return the size of the document in bytes, or -1 if the provider doesn't say.
+     */
+    private long querySize(Uri uri) {
+        Cursor cursor = mContentResolver.query(uri, new String[]{OpenableColumns.SIZE}, null, null, null);
+        if (cursor == null) {
+            return -1;
+        }
+        try {
+            return cursor.moveToFirst() && !cursor.isNull(0) ? cursor.getLong(0) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Counts the bytes read through it, to report progress.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+
+        private volatile long mCount;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        long getCount() {
+            return mCount;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                mCount++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                mCount += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            mCount += skipped;
+            return skipped;
+        }
+    }
+}
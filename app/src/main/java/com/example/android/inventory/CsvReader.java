@@ -0,0 +1,120 @@
+package com.example.android.inventory;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads comma separated values one record at a time, so a file of any size can be read with
+ * constant memory. Fields may be quoted with double quotes, in which case they can contain
+ * commas, line breaks and doubled quotes.
+ */
+final class CsvReader {
+
+    private final Reader mReader;
+
+    private final List<String> mFields = new ArrayList<>();
+    private final StringBuilder mField = new StringBuilder();
+
+    /**
+     * Number of the line the last record started on, counting from 1.
+     */
+    private int mRecordLineNumber;
+
+    private int mLineNumber = 1;
+
+    /**
+     * Character read ahead of the current record, or -2 if none.
+     */
+    private int mPeeked = -2;
+
+    /**
+     * @param reader should be buffered, since it is read a character at a time
+     */
+    CsvReader(Reader reader) {
+        mReader = reader;
+    }
+
+    int getRecordLineNumber() {
+        return mRecordLineNumber;
+    }
+
+    /**
+     * Return the fields of the next record, or null at the end of the input. Blank lines are
+     * skipped. The array is new for every record.
+     */
+    String[] readRecord() throws IOException {
+        int c;
+        do {
+            c = read();
+            if (c == '\n') {
+                mLineNumber++;
+            }
+        } while (c == '\n' || c == '\r');
+
+        if (c == -1) {
+            return null;
+        }
+
+        mRecordLineNumber = mLineNumber;
+        mFields.clear();
+        mField.setLength(0);
+
+        boolean quoted = false;
+        while (true) {
+            if (quoted) {
+                if (c == -1) {
+                    throw new IOException("Unterminated quoted field starting on line " + mRecordLineNumber);
+                } else if (c == '"') {
+                    int next = read();
+                    if (next == '"') {
+                        mField.append('"');
+                    } else {
+                        quoted = false;
+                        c = next;
+                        continue;
+                    }
+                } else {
+                    if (c == '\n') {
+                        mLineNumber++;
+                    }
+                    mField.append((char) c);
+                }
+            } else if (c == '"' && mField.length() == 0) {
+                quoted = true;
+            } else if (c == ',') {
+                endField();
+            } else if (c == '\n' || c == '\r' || c == -1) {
+                if (c == '\r') {
+                    int next = read();
+                    if (next != '\n') {
+                        mPeeked = next;
+                    }
+                }
+                if (c != -1) {
+                    mLineNumber++;
+                }
+                endField();
+                return mFields.toArray(new String[mFields.size()]);
+            } else {
+                mField.append((char) c);
+            }
+            c = read();
+        }
+    }
+
+    private void endField() {
+        mFields.add(mField.toString());
+        mField.setLength(0);
+    }
+
+    private int read() throws IOException {
+        if (mPeeked != -2) {
+            int c = mPeeked;
+            mPeeked = -2;
+            return c;
+        }
+        return mReader.read();
+    }
+}
@@ -0,0 +1,225 @@
+package com.example.android.inventory;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.data.InventoryContract;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Backs the whole database up to a document, such as one created through the Storage Access
+ * Framework, and restores it from one. A backup is a gzip-compressed copy of the database, taken
+ * as a consistent snapshot while the app carries on selling. Compression and decompression
+ * stream through a fixed-size buffer, so memory use doesn't grow with the size of the database.
+ */
+final class DatabaseBackup {
+
+    private static final String LOG_TAG = DatabaseBackup.class.getSimpleName();
+
+    static final String MIME_TYPE = "application/gzip";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Name of the file a backup is decompressed to before it replaces the database. It lives
+     * next to the database, so it can be moved into place atomically.
+     */
+    private static final String RESTORE_FILE_NAME = "inventory-restore.db";
+
+    /**
+     * Name of the file in the cache directory the snapshot is taken to before it is compressed.
+     */
+    private static final String SNAPSHOT_FILE_NAME = "inventory-snapshot.db";
+
+    /**
+     * Receives the outcome of a backup or restore, on the main thread.
+     */
+    interface Listener {
+
+        void onFinished(Result result);
+    }
+
+    static final class Result {
+
+        /**
+         * Size of the database backed up or restored, in bytes.
+         */
+        final long databaseBytes;
+
+        final long durationMillis;
+
+        /**
+         * Why the backup or restore failed, or null if it didn't. A failed restore leaves the
+         * database as it was.
+         */
+        final String error;
+
+        Result(long databaseBytes, long durationMillis, String error) {
+            this.databaseBytes = databaseBytes;
+            this.durationMillis = durationMillis;
+            this.error = error;
+        }
+    }
+
+    private final Context mContext;
+    private final ContentResolver mContentResolver;
+    private final Listener mListener;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+    DatabaseBackup(Context context, Listener listener) {
+        mContext = context.getApplicationContext();
+        mContentResolver = context.getContentResolver();
+        mListener = listener;
+    }
+
+    /**
+     * Back the database up to the given document in the background.
+     */
+    void backUp(final Uri destination) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                postResult(backUpTo(destination));
+            }
+        });
+    }
+
+    /**
+     * Replace the database with the backup in the given document in the background.
+     */
+    void restore(final Uri source) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                postResult(restoreFrom(source));
+            }
+        });
+    }
+
+    /**
+     * Let the backup or restore under way finish, then stop. Backups and restores aren't
+     * interrupted half way, since neither can be resumed.
+     */
+    void shutdown() {
+        mExecutor.shutdown();
+    }
+
+    private Result backUpTo(Uri destination) {
+        long start = SystemClock.elapsedRealtime();
+        File snapshot = new File(mContext.getCacheDir(), SNAPSHOT_FILE_NAME);
+        long bytes = 0;
+        String error = null;
+
+        try {
+            snapshot.delete();
+            mContentResolver.call(InventoryContract.BASE_CONTENT_URI,
+                    InventoryContract.METHOD_BACK_UP_DATABASE, snapshot.getPath(), null);
+            bytes = snapshot.length();
+
+            OutputStream stream = mContentResolver.openOutputStream(destination, "wt");
+            if (stream == null) {
+                throw new IOException("Cannot open " + destination);
+            }
+            copy(new FileInputStream(snapshot), new FastGzipOutputStream(stream));
+        } catch (IOException | IllegalStateException e) {
+            Log.e(LOG_TAG, "Failed to back up to " + destination, e);
+            error = e.getMessage();
+        } finally {
+            snapshot.delete();
+        }
+
+        return logResult("Backup", bytes, start, error);
+    }
+
+    private Result restoreFrom(Uri source) {
+        long start = SystemClock.elapsedRealtime();
+        File restore = mContext.getDatabasePath(RESTORE_FILE_NAME);
+        long bytes = 0;
+        String error = null;
+
+        try {
+            InputStream stream = mContentResolver.openInputStream(source);
+            if (stream == null) {
+                throw new IOException("Cannot open " + source);
+            }
+            copy(new GZIPInputStream(stream, BUFFER_SIZE), new FileOutputStream(restore));
+            bytes = restore.length();
+
+            mContentResolver.call(InventoryContract.BASE_CONTENT_URI,
+                    InventoryContract.METHOD_RESTORE_DATABASE, restore.getPath(), null);
+        } catch (IOException | IllegalArgumentException | IllegalStateException e) {
+            Log.e(LOG_TAG, "Failed to restore from " + source, e);
+            error = e.getMessage();
+        } finally {
+            // Only still there if it wasn't moved into place
+            restore.delete();
+        }
+
+        return logResult("Restore", bytes, start, error);
+    }
+
+    private static Result logResult(String operation, long bytes, long start, String error) {
+        long durationMillis = SystemClock.elapsedRealtime() - start;
+        if (error == null) {
+            Log.i(LOG_TAG, operation + " of " + bytes + " bytes took " + durationMillis + " ms");
+        }
+        return new Result(bytes, durationMillis, error);
+    }
+
+    /**
+     * Copy everything from the input to the output and close both.
+     */
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        try {
+            try {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, n);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private void postResult(final Result result) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mListener.onFinished(result);
+            }
+        });
+    }
+
+    /**
+     * Compresses at the fastest level. Database pages compress well even so, and the default
+     * level takes several times longer on large databases for a few percent less output.
+     */
+    private static final class FastGzipOutputStream extends GZIPOutputStream {
+
+        FastGzipOutputStream(OutputStream out) throws IOException {
+            super(out, BUFFER_SIZE);
+            def.setLevel(Deflater.BEST_SPEED);
+        }
+    }
+}
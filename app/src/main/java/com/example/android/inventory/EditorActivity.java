@@ -13,6 +13,7 @@ import android.os.Bundle;
 import android.support.v4.app.NavUtils;
 import android.support.v7.app.AppCompatActivity;
 import android.text.TextUtils;
+import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.MotionEvent;
@@ -26,16 +27,28 @@ import com.data.InventoryContract.InventoryEntry;
 public class EditorActivity extends AppCompatActivity implements
         LoaderManager.LoaderCallbacks<Cursor> {
 
+    private static final String LOG_TAG = EditorActivity.class.getSimpleName();
+
     private static final int EXISTING_INVENTORY_LOADER = 0;
+
+    private static final int PICK_PHOTO_REQUEST = 1;
     public String supplierNumber;
     public EditText supplierNumberEditText;
     private Uri mCurrentInventoryUri;
     private EditText mInventoryNameEditText;
+    private EditText mInventorySkuEditText;
     private EditText mInventoryPriceEditText;
     private EditText mInventoryQuantityEditText;
+    private EditText mInventoryReorderThresholdEditText;
     private EditText mInventorySupplierEditText;
     private EditText mInventorySupplierNumberEditText;
     private boolean mInventoryHasChanged = false;
+
+    /**
+     * True while the product is being saved or deleted in the background.
+     */
+    private boolean mSaving;
+
     private View.OnTouchListener mTouchListener = new View.OnTouchListener() {
         @Override
         public boolean onTouch(View view, MotionEvent motionEvent) {
@@ -63,15 +76,19 @@ public class EditorActivity extends AppCompatActivity implements
 
 
         mInventoryNameEditText = (EditText) findViewById(R.id.edit_product_name);
+        mInventorySkuEditText = (EditText) findViewById(R.id.edit_product_sku);
         mInventoryPriceEditText = (EditText) findViewById(R.id.edit_product_price);
         mInventoryQuantityEditText = (EditText) findViewById(R.id.edit_product_quantity);
+        mInventoryReorderThresholdEditText = (EditText) findViewById(R.id.edit_product_reorder_threshold);
         mInventorySupplierEditText = (EditText) findViewById(R.id.edit_product_supplier);
         mInventorySupplierNumberEditText = (EditText) findViewById(R.id.edit_product_supplier_number);
 
 
         mInventoryNameEditText.setOnTouchListener(mTouchListener);
+        mInventorySkuEditText.setOnTouchListener(mTouchListener);
         mInventoryPriceEditText.setOnTouchListener(mTouchListener);
         mInventoryQuantityEditText.setOnTouchListener(mTouchListener);
+        mInventoryReorderThresholdEditText.setOnTouchListener(mTouchListener);
         mInventorySupplierEditText.setOnTouchListener(mTouchListener);
         mInventorySupplierNumberEditText.setOnTouchListener(mTouchListener);
 
@@ -82,8 +99,10 @@ public class EditorActivity extends AppCompatActivity implements
         // Read from input fields
         // Use trim to eliminate leading or trailing white space
         String nameString = mInventoryNameEditText.getText().toString().trim();
+        String skuString = mInventorySkuEditText.getText().toString().trim();
         String priceString = mInventoryPriceEditText.getText().toString().trim();
         String quantityString = mInventoryQuantityEditText.getText().toString().trim();
+        String reorderThresholdString = mInventoryReorderThresholdEditText.getText().toString().trim();
         String supplierString = mInventorySupplierEditText.getText().toString().trim();
         String supplierNumberString = mInventorySupplierNumberEditText.getText().toString().trim();
 
@@ -112,46 +131,83 @@ public class EditorActivity extends AppCompatActivity implements
         values.put(InventoryEntry.COLUMN_PRODUCT_SUPPLIER, supplierString);
         values.put(InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NUMBER, supplierNumberString);
 
+        // The SKU is optional, and clearing it removes it from the product
+        values.put(InventoryEntry.COLUMN_PRODUCT_SKU, TextUtils.isEmpty(skuString) ? null : skuString);
+
+        // The reorder threshold is optional and defaults to 0
+        int reorderThreshold = 0;
+        if (!TextUtils.isEmpty(reorderThresholdString)) {
+            reorderThreshold = Integer.parseInt(reorderThresholdString);
+        }
+        values.put(InventoryEntry.COLUMN_PRODUCT_REORDER_THRESHOLD, reorderThreshold);
+
+        // Ignore further taps while the product is being saved, so it isn't inserted twice
+        if (mSaving) {
+            return;
+        }
+        mSaving = true;
 
         // Determine if this is a new or existing pet by checking if mCurrentPetUri is null or not
         if (mCurrentInventoryUri == null) {
-            // This is a NEW pet, so insert a new pet into the provider,
-            // returning the content URI for the new pet.
-            Uri newUri = getContentResolver().insert(InventoryEntry.CONTENT_URI, values);
-
-            // Show a toast message depending on whether or not the insertion was successful.
-            if (newUri == null) {
-                // If the new content URI is null, then there was an error with insertion.
-                Toast.makeText(this, getString(R.string.editor_insert_product_failed),
-                        Toast.LENGTH_SHORT).show();
-            } else {
-                // Otherwise, the insertion was successful and we can display a toast.
-                Toast.makeText(this, getString(R.string.editor_insert_product_successful),
-                        Toast.LENGTH_SHORT).show();
-            }
+            // This is a NEW pet, so insert a new pet into the provider in the background.
+            // The editor closes once it has been inserted.
+            InventoryRepository.getInstance(this).insertProduct(values, new InventoryRepository.Callback<Uri>() {
+                @Override
+                public void onResult(Uri newUri) {
+                    // Show a toast message depending on whether or not the insertion was successful.
+                    if (newUri == null) {
+                        // If the new content URI is null, then there was an error with insertion.
+                        Toast.makeText(EditorActivity.this, getString(R.string.editor_insert_product_failed),
+                                Toast.LENGTH_SHORT).show();
+                    } else {
+                        // Otherwise, the insertion was successful and we can display a toast.
+                        Toast.makeText(EditorActivity.this, getString(R.string.editor_insert_product_successful),
+                                Toast.LENGTH_SHORT).show();
+                    }
+                    finish();
+                }
+
+                @Override
+                public void onError(Exception e) {
+                    onSaveFailed(R.string.editor_insert_product_failed, e);
+                }
+            });
         }
         // Otherwise this is an EXISTING product, so update the product with content URI: mCurrentInventoryUri
-        // and pass in the new ContentValues. Pass in null for the selection and selection args
-        // because mCurrentInventoryUri will already identify the correct row in the database that
-        // we want to modify.
+        // and pass in the new ContentValues.
         else {
-            getContentResolver().update(mCurrentInventoryUri, values, null, null);
-        }
-        // Show a toast message depending on whether or not the update was successful.
-        if (mCurrentInventoryUri != null && TextUtils.isEmpty(nameString)
-                || TextUtils.isEmpty(priceString)
-                || TextUtils.isEmpty(quantityString)
-                || TextUtils.isEmpty(supplierString)
-                || TextUtils.isEmpty(supplierNumberString)) {
-            // If no rows were affected, then there was an error with the update.
-            Toast.makeText(this, getString(R.string.editor_update_product_failed),
-                    Toast.LENGTH_SHORT).show();
-        } else {
-            // Otherwise, the update was successful and we can display a toast.
-            Toast.makeText(this, getString(R.string.editor_update_product_successful),
-                    Toast.LENGTH_SHORT).show();
+            InventoryRepository.getInstance(this).updateProduct(mCurrentInventoryUri, values,
+                    new InventoryRepository.Callback<Integer>() {
+                        @Override
+                        public void onResult(Integer rowsUpdated) {
+                            // Show a toast message depending on whether or not the update was successful.
+                            if (rowsUpdated == 0) {
+                                // If no rows were affected, then there was an error with the update.
+                                Toast.makeText(EditorActivity.this, getString(R.string.editor_update_product_failed),
+                                        Toast.LENGTH_SHORT).show();
+                            } else {
+                                // Otherwise, the update was successful and we can display a toast.
+                                Toast.makeText(EditorActivity.this, getString(R.string.editor_update_product_successful),
+                                        Toast.LENGTH_SHORT).show();
+                            }
+                            finish();
+                        }
+
+                        @Override
+                        public void onError(Exception e) {
+                            onSaveFailed(R.string.editor_update_product_failed, e);
+                        }
+                    });
         }
-        finish();
+    }
+
+    /**
+     * The provider rejected the product, so keep the editor open for the user to correct it.
+     */
+    private void onSaveFailed(int message, Exception e) {
+        Log.e(LOG_TAG, "Failed to save product", e);
+        Toast.makeText(this, getString(message), Toast.LENGTH_SHORT).show();
+        mSaving = false;
     }
 
 
@@ -162,6 +218,8 @@ public class EditorActivity extends AppCompatActivity implements
         if (mCurrentInventoryUri == null) {
             MenuItem menuItem = menu.findItem(R.id.action_delete);
             menuItem.setVisible(false);
+            // A photo belongs to a saved product
+            menu.findItem(R.id.action_set_photo).setVisible(false);
         }
         return true;
     }
@@ -184,6 +242,13 @@ public class EditorActivity extends AppCompatActivity implements
                 // Save product to database
                 saveInventory();
                 return true;
+            // Respond to a click on the "Set Photo" menu option
+            case R.id.action_set_photo:
+                Intent pickIntent = new Intent(Intent.ACTION_GET_CONTENT);
+                pickIntent.setType("image/*");
+                pickIntent.addCategory(Intent.CATEGORY_OPENABLE);
+                startActivityForResult(pickIntent, PICK_PHOTO_REQUEST);
+                return true;
             // Respond to a click on the "Delete" menu option
             case R.id.action_delete:
                 showDeleteConfirmationDialog();
@@ -217,6 +282,35 @@ public class EditorActivity extends AppCompatActivity implements
         return super.onOptionsItemSelected(item);
     }
 
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        if (requestCode != PICK_PHOTO_REQUEST) {
+            super.onActivityResult(requestCode, resultCode, data);
+            return;
+        }
+        if (resultCode != RESULT_OK || data == null || data.getData() == null) {
+            return;
+        }
+
+        // The photo is copied in the background, and the list picks it up once it is saved
+        InventoryRepository.getInstance(this).setProductPhoto(mCurrentInventoryUri, data.getData(),
+                new InventoryRepository.Callback<Boolean>() {
+                    @Override
+                    public void onResult(Boolean photoSet) {
+                        Toast.makeText(EditorActivity.this, getString(photoSet
+                                        ? R.string.editor_set_photo_successful : R.string.editor_set_photo_failed),
+                                Toast.LENGTH_SHORT).show();
+                    }
+
+                    @Override
+                    public void onError(Exception e) {
+                        Log.e(LOG_TAG, "Failed to set photo", e);
+                        Toast.makeText(EditorActivity.this, getString(R.string.editor_set_photo_failed),
+                                Toast.LENGTH_SHORT).show();
+                    }
+                });
+    }
+
     @Override
     public void onBackPressed() {
         // If the pet hasn't changed, continue with handling back button press
@@ -251,10 +345,12 @@ public class EditorActivity extends AppCompatActivity implements
         String[] projection = {
                 InventoryEntry._ID,
                 InventoryEntry.COLUMN_PRODUCT_NAME,
+                InventoryEntry.COLUMN_PRODUCT_SKU,
                 InventoryEntry.COLUMN_PRODUCT_QUANTITY,
                 InventoryEntry.COLUMN_PRODUCT_PRICE,
                 InventoryEntry.COLUMN_PRODUCT_SUPPLIER,
-                InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NUMBER};
+                InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NUMBER,
+                InventoryEntry.COLUMN_PRODUCT_REORDER_THRESHOLD};
 
         return new CursorLoader(this,
                 mCurrentInventoryUri,
@@ -273,24 +369,30 @@ public class EditorActivity extends AppCompatActivity implements
         if (cursor.moveToFirst()) {
             // Find the columns of pet attributes that we're interested in
             int nameColumnIndex = cursor.getColumnIndex(InventoryEntry.COLUMN_PRODUCT_NAME);
+            int skuColumnIndex = cursor.getColumnIndex(InventoryEntry.COLUMN_PRODUCT_SKU);
             int priceColumnIndex = cursor.getColumnIndex(InventoryEntry.COLUMN_PRODUCT_PRICE);
             int quantityColumnIndex = cursor.getColumnIndex(InventoryEntry.COLUMN_PRODUCT_QUANTITY);
             int supplierColumnIndex = cursor.getColumnIndex(InventoryEntry.COLUMN_PRODUCT_SUPPLIER);
             int supplierNumberColumnIndex = cursor.getColumnIndex(InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NUMBER);
+            int reorderThresholdColumnIndex = cursor.getColumnIndex(InventoryEntry.COLUMN_PRODUCT_REORDER_THRESHOLD);
 
             // Extract out the value from the Cursor for the given column index
             String name = cursor.getString(nameColumnIndex);
+            String sku = cursor.getString(skuColumnIndex);
             String quantity = cursor.getString(quantityColumnIndex);
             int price = cursor.getInt(priceColumnIndex);
             String supplier = cursor.getString(supplierColumnIndex);
             String supplierNumber = cursor.getString(supplierNumberColumnIndex);
+            int reorderThreshold = cursor.getInt(reorderThresholdColumnIndex);
 
             // Update the views on the screen with the values from the database
             mInventoryNameEditText.setText(name);
+            mInventorySkuEditText.setText(sku);
             mInventoryPriceEditText.setText(Integer.toString(price));
             mInventoryQuantityEditText.setText(quantity);
             mInventorySupplierEditText.setText(supplier);
             mInventorySupplierNumberEditText.setText(supplierNumber);
+            mInventoryReorderThresholdEditText.setText(Integer.toString(reorderThreshold));
 
         }
 
@@ -343,8 +445,10 @@ public class EditorActivity extends AppCompatActivity implements
 
         //if the loader is invalidated, clear out all the data from the input fields.
         mInventoryNameEditText.setText("");
+        mInventorySkuEditText.setText("");
         mInventoryQuantityEditText.setText("");
         mInventoryPriceEditText.setText("");
+        mInventoryReorderThresholdEditText.setText("");
         mInventorySupplierEditText.setText("");
         mInventorySupplierNumberEditText.setText("");
     }
@@ -396,18 +500,32 @@ public class EditorActivity extends AppCompatActivity implements
 
     private void deleteProduct() {
 
-        if (mCurrentInventoryUri != null) {
+        if (mCurrentInventoryUri == null || mSaving) {
+            finish();
+            return;
+        }
+        mSaving = true;
 
-            int rowsDeleted = getContentResolver().delete(mCurrentInventoryUri, null, null);
+        InventoryRepository.getInstance(this).deleteProduct(mCurrentInventoryUri,
+                new InventoryRepository.Callback<Integer>() {
+                    @Override
+                    public void onResult(Integer rowsDeleted) {
+                        if (rowsDeleted == 0) {
 
-            if (rowsDeleted == 0) {
+                            Toast.makeText(EditorActivity.this, getString(R.string.editor_delete_product_failed), Toast.LENGTH_LONG).show();
+                        } else {
+                            Toast.makeText(EditorActivity.this, getString(R.string.editor_delete_product_successful), Toast.LENGTH_SHORT).show();
+                        }
+                        finish();
+                    }
 
-                Toast.makeText(this, getString(R.string.editor_delete_product_failed), Toast.LENGTH_LONG).show();
-            } else {
-                Toast.makeText(this, getString(R.string.editor_delete_product_successful), Toast.LENGTH_SHORT).show();
-            }
-        }
-        finish();
+                    @Override
+                    public void onError(Exception e) {
+                        Log.e(LOG_TAG, "Failed to delete product", e);
+                        Toast.makeText(EditorActivity.this, getString(R.string.editor_delete_product_failed), Toast.LENGTH_LONG).show();
+                        finish();
+                    }
+                });
     }
 
 
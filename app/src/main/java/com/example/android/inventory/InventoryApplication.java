@@ -0,0 +1,35 @@
+package com.example.android.inventory;
+
+import android.app.Application;
+import android.os.StrictMode;
+
+public class InventoryApplication extends Application {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+
+        if (BuildConfig.DEBUG) {
+            enableStrictMode();
+        }
+    }
+
+    /**
+     * Log every disk or network access on the main thread, and every database cursor or other
+     * closeable that is leaked, so debug builds show any I/O that should be moved to the
+     * background.
+     */
+    private static void enableStrictMode() {
+        StrictMode.setThreadPolicy(new StrictMode.ThreadPolicy.Builder()
+                .detectDiskReads()
+                .detectDiskWrites()
+                .detectNetwork()
+                .penaltyLog()
+                .build());
+        StrictMode.setVmPolicy(new StrictMode.VmPolicy.Builder()
+                .detectLeakedSqlLiteObjects()
+                .detectLeakedClosableObjects()
+                .penaltyLog()
+                .build());
+    }
+}
@@ -0,0 +1,264 @@
+package com.example.android.inventory;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.data.InventoryContract.InventoryEntry;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads and writes single products through the provider on a background thread, so the
+ * activities never touch the database from the main thread. Every operation returns a
+ * {@link Future} and reports its result or failure to an optional {@link Callback} on the main
+ * thread. Operations run in the order they were submitted.
+ */
+public final class InventoryRepository {
+
+    /**
+     * Most operations that can wait for the worker. Submitting more fails them straight away
+     * instead of letting a stuck database pile up work without bound.
+     */
+    private static final int QUEUE_CAPACITY = 64;
+
+    private static InventoryRepository sInstance;
+
+    /**
+     * Receives the outcome of an operation on the main thread.
+     */
+    public interface Callback<T> {
+
+        void onResult(T result);
+
+        /**
+         * Called instead of {@link #onResult} if the provider threw, for example because the
+         * values were invalid, or if the operation could not be queued.
+         */
+        void onError(Exception e);
+    }
+
+    private final ContentResolver mContentResolver;
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Single worker thread. SQLite serializes writes anyway, and one thread keeps them in the
+     * order they were made, so a delete never overtakes the insert before it.
+     */
+    private final ThreadPoolExecutor mExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<Runnable>(QUEUE_CAPACITY));
+
+    private InventoryRepository(Context context) {
+        mContentResolver = context.getContentResolver();
+    }
+
+    /**
+     * Return the repository for this process, creating it the first time it is called.
+     */
+    public static synchronized InventoryRepository getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new InventoryRepository(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Insert a product. The result is the URI of the new product, or null if it wasn't inserted.
+     */
+    public Future<Uri> insertProduct(final ContentValues values, Callback<Uri> callback) {
+        return submit(new Callable<Uri>() {
+            @Override
+            public Uri call() {
+                return mContentResolver.insert(InventoryEntry.CONTENT_URI, values);
+            }
+        }, callback);
+    }
+
+    /**
+     * Update the product with the given URI. The result is the number of products updated.
+     */
+    public Future<Integer> updateProduct(final Uri uri, final ContentValues values,
+                                         Callback<Integer> callback) {
+        return submit(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return mContentResolver.update(uri, values, null, null);
+            }
+        }, callback);
+    }
+
+    /**
+     * Delete the product with the given URI. The result is the number of products deleted.
+     */
+    public Future<Integer> deleteProduct(final Uri uri, Callback<Integer> callback) {
+        return submit(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return mContentResolver.delete(uri, null, null);
+            }
+        }, callback);
+    }
+
+    /**
+     * Delete every product. The result is the number of products deleted.
+     */
+    public Future<Integer> deleteAllProducts(Callback<Integer> callback) {
+        return submit(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return mContentResolver.delete(InventoryEntry.CONTENT_URI, null, null);
+            }
+        }, callback);
+    }
+
+    /**
+     * Set the photo of the product with the given URI to a copy of the image at the source, or
+     * remove it if the source is null. The result is false if there is no such product.
+     */
+    public Future<Boolean> setProductPhoto(final Uri uri, final Uri source, Callback<Boolean> callback) {
+        return submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                Bundle extras = new Bundle();
+                extras.putParcelable(InventoryEntry.EXTRA_PHOTO_SOURCE, source);
+                return mContentResolver.call(InventoryEntry.CONTENT_URI, InventoryEntry.METHOD_SET_PHOTO,
+                        String.valueOf(ContentUris.parseId(uri)), extras) != null;
+            }
+        }, callback);
+    }
+
+    /**
+     * Sell units of the product with the given SKU, finding it and taking the units out of stock
+     * in one call. The result holds the id of the product, its quantity and whether the units
+     * were taken, which they aren't if there are too few left, or is null if no product has the
+     * SKU.
+     */
+    public Future<Bundle> sellBySku(final String sku, final int units, Callback<Bundle> callback) {
+        return submit(new Callable<Bundle>() {
+            @Override
+            public Bundle call() {
+                Bundle extras = new Bundle();
+                extras.putInt(InventoryEntry.EXTRA_QUANTITY_DELTA, -units);
+                return mContentResolver.call(InventoryEntry.CONTENT_URI,
+                        InventoryEntry.METHOD_ADJUST_QUANTITY_BY_SKU, sku, extras);
+            }
+        }, callback);
+    }
+
+    /**
+     * Read the product with the given URI, with the given columns or all of them if the
+     * projection is null. The result is null if there is no such product.
+     */
+    public Future<ContentValues> loadProduct(final Uri uri, final String[] projection,
+                                             Callback<ContentValues> callback) {
+        return submit(new Callable<ContentValues>() {
+            @Override
+            public ContentValues call() {
+                Cursor cursor = mContentResolver.query(uri, projection, null, null, null);
+                if (cursor == null) {
+                    return null;
+                }
+                try {
+                    if (!cursor.moveToFirst()) {
+                        return null;
+                    }
+                    ContentValues values = new ContentValues();
+                    DatabaseUtils.cursorRowToContentValues(cursor, values);
+                    return values;
+                } finally {
+                    cursor.close();
+                }
+            }
+        }, callback);
+    }
+
+    private <T> Future<T> submit(Callable<T> callable, Callback<T> callback) {
+        Operation<T> operation = new Operation<>(callable, callback);
+        try {
+            mExecutor.execute(operation);
+        } catch (RejectedExecutionException e) {
+            operation.fail(e);
+        }
+        return operation;
+    }
+
+    /**
+     * Posts its outcome to the callback once it is done. Cancelling it also drops an outcome
+     * that is already on its way to the main thread, so the callback is never called after.
+     */
+    private final class Operation<T> extends FutureTask<T> {
+
+        private volatile Callback<T> mCallback;
+
+        Operation(Callable<T> callable, Callback<T> callback) {
+            super(callable);
+            mCallback = callback;
+        }
+
+        void fail(Exception e) {
+            setException(e);
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            mCallback = null;
+            return super.cancel(mayInterruptIfRunning);
+        }
+
+        @Override
+        protected void done() {
+            if (mCallback == null || isCancelled()) {
+                return;
+            }
+
+            T result = null;
+            Exception error = null;
+            try {
+                result = get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (!(cause instanceof Exception)) {
+                    // A callable can only throw an Exception otherwise, so this is an Error,
+                    // which crashes the app as it would have on the main thread
+                    throw (Error) cause;
+                }
+                error = (Exception) cause;
+            } catch (InterruptedException e) {
+                // Can't happen, the task is done
+                throw new IllegalStateException(e);
+            }
+
+            final T finalResult = result;
+            final Exception finalError = error;
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    Callback<T> callback = mCallback;
+                    if (callback == null) {
+                        return;
+                    }
+                    if (finalError != null) {
+                        callback.onError(finalError);
+                    } else {
+                        callback.onResult(finalResult);
+                    }
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.example.android.inventory;
+
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.Context;
+import android.content.Intent;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.support.v4.app.NotificationCompat;
+import android.support.v4.app.NotificationManagerCompat;
+
+import com.data.InventoryContract.InventoryEntry;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shows a notification when a product drops to its reorder threshold. Changes to the inventory
+ * schedule a check in the background, which only looks at the products that changed since the
+ * previous one.
+ */
+public final class LowStockMonitor {
+
+    private static final String CHANNEL_ID = "low_stock";
+
+    /**
+     * How long to wait after a change before checking, so a burst of sales is checked once.
+     */
+    private static final long CHECK_DELAY_MILLIS = 1000;
+
+    private static LowStockMonitor sInstance;
+
+    private final Context mContext;
+    private final ContentResolver mContentResolver;
+
+    /**
+     * Single worker thread, so checks never run concurrently.
+     */
+    private final ScheduledExecutorService mExecutor = Executors.newSingleThreadScheduledExecutor();
+
+    /**
+     * Only touched on the worker thread.
+     */
+    private boolean mCheckScheduled;
+
+    private final Runnable mCheckRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mCheckScheduled = false;
+            check();
+        }
+    };
+
+    private LowStockMonitor(Context context) {
+        mContext = context;
+        mContentResolver = context.getContentResolver();
+
+        createNotificationChannel();
+
+        mContentResolver.registerContentObserver(InventoryEntry.CONTENT_URI, true,
+                new ContentObserver(null) {
+                    @Override
+                    public void onChange(boolean selfChange) {
+                        scheduleCheck();
+                    }
+                });
+
+        // Catch up on changes made while the app wasn't running
+        scheduleCheck();
+    }
+
+    /**
+     * Return the monitor for this process, starting it the first time it is called.
+     */
+    public static synchronized LowStockMonitor getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new LowStockMonitor(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private void scheduleCheck() {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!mCheckScheduled) {
+                    mCheckScheduled = true;
+                    mExecutor.schedule(mCheckRunnable, CHECK_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+                }
+            }
+        });
+    }
+
+    private void check() {
+        Bundle result = mContentResolver.call(InventoryEntry.CONTENT_URI,
+                InventoryEntry.METHOD_CHECK_LOW_STOCK, null, null);
+        if (result == null) {
+            return;
+        }
+
+        for (long id : result.getLongArray(InventoryEntry.EXTRA_LOW_STOCK_IDS)) {
+            notifyLowStock(id);
+        }
+    }
+
+    private void notifyLowStock(long id) {
+        Uri uri = ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, id);
+
+        String[] projection = {
+                InventoryEntry.COLUMN_PRODUCT_NAME,
+                InventoryEntry.COLUMN_PRODUCT_QUANTITY};
+
+        String name;
+        int quantity;
+        Cursor cursor = mContentResolver.query(uri, projection, null, null, null);
+        if (cursor == null) {
+            return;
+        }
+        try {
+            if (!cursor.moveToFirst()) {
+                return;
+            }
+            name = cursor.getString(0);
+            quantity = cursor.getInt(1);
+        } finally {
+            cursor.close();
+        }
+
+        Intent intent = new Intent(mContext, EditorActivity.class);
+        intent.setData(uri);
+        PendingIntent contentIntent = PendingIntent.getActivity(mContext, 0, intent, 0);
+
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(mContext, CHANNEL_ID)
+                .setSmallIcon(R.mipmap.ic_launcher)
+                .setContentTitle(mContext.getString(R.string.low_stock_title, name))
+                .setContentText(mContext.getString(R.string.low_stock_text, quantity))
+                .setContentIntent(contentIntent)
+                .setAutoCancel(true);
+
+        // One notification per product, replaced if it runs low again
+        NotificationManagerCompat.from(mContext).notify((int) id, builder.build());
+    }
+
+    private void createNotificationChannel() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O) {
+            return;
+        }
+
+        NotificationChannel channel = new NotificationChannel(CHANNEL_ID,
+                mContext.getString(R.string.low_stock_channel), NotificationManager.IMPORTANCE_DEFAULT);
+        mContext.getSystemService(NotificationManager.class).createNotificationChannel(channel);
+    }
+}
@@ -0,0 +1,232 @@
+package com.example.android.inventory;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.widget.Toast;
+
+import com.data.InventoryContract.InventoryEntry;
+import com.data.InventoryContract.PendingSaleEntry;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records sales made at the counter without touching the disk on the calling thread. A sale is
+ * added to an in-memory tally straight away, then appended to the pending sales journal and
+ * applied to the product in batches by a background worker. Journaled sales that were not applied
+ * before the process was killed are replayed when the queue is next created.
+ */
+public final class SaleQueue {
+
+    private static final String LOG_TAG = SaleQueue.class.getSimpleName();
+
+    /**
+     * How long the worker waits after a sale before draining the journal, so a burst of taps is
+     * applied in a single transaction.
+     */
+    private static final long DRAIN_DELAY_MILLIS = 500;
+
+    private static SaleQueue sInstance;
+
+    private final Context mContext;
+
+    private final ContentResolver mContentResolver;
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Single worker thread for journaling, replaying and draining sales. It is the only thread
+     * that writes to the journal, so the journal never changes while it is being drained.
+     */
+    private final ScheduledExecutorService mExecutor = Executors.newSingleThreadScheduledExecutor();
+
+    /**
+     * Sum of the quantity deltas recorded for each product that have not been applied yet, both
+     * those in the journal and those still waiting to be appended to it. Only held for as long as
+     * it takes to read or change it.
+     */
+    private final Map<Long, Integer> mPendingDeltas = new HashMap<>();
+
+    /**
+     * Only touched on the worker thread.
+     */
+    private boolean mDrainScheduled;
+
+    private final Runnable mDrainRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mDrainScheduled = false;
+            drain();
+        }
+    };
+
+    private SaleQueue(Context context) {
+        mContext = context;
+        mContentResolver = context.getContentResolver();
+
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                replay();
+            }
+        });
+    }
+
+    /**
+     * Return the queue for this process, creating it and replaying any journaled sales the first
+     * time it is called.
+     */
+    public static synchronized SaleQueue getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new SaleQueue(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Record that the given quantity of a product has been sold. The sale is in the tally when
+     * this returns, and is journaled and applied to the product in the background. If it can't
+     * be journaled it is taken out of the tally again and the user is told.
+     */
+    public void recordSale(final long productId, int quantity) {
+        final int delta = -quantity;
+
+        synchronized (mPendingDeltas) {
+            addPendingDelta(productId, delta);
+        }
+
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (append(productId, delta)) {
+                    scheduleDrain();
+                    return;
+                }
+                synchronized (mPendingDeltas) {
+                    addPendingDelta(productId, -delta);
+                }
+                notifyProductChanged(productId);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        Toast.makeText(mContext, R.string.sale_failed, Toast.LENGTH_SHORT).show();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Return the change in quantity recorded for the given product that is not reflected in the
+     * database yet. Add it to the stored quantity to get the quantity to display.
+     */
+    public int getPendingDelta(long productId) {
+        synchronized (mPendingDeltas) {
+            Integer delta = mPendingDeltas.get(productId);
+            return delta == null ? 0 : delta;
+        }
+    }
+
+    private void addPendingDelta(long productId, int delta) {
+        Integer pending = mPendingDeltas.get(productId);
+        int sum = (pending == null ? 0 : pending) + delta;
+        if (sum == 0) {
+            mPendingDeltas.remove(productId);
+        } else {
+            mPendingDeltas.put(productId, sum);
+        }
+    }
+
+    private boolean append(long productId, int delta) {
+        ContentValues values = new ContentValues();
+        values.put(PendingSaleEntry.COLUMN_PRODUCT_ID, productId);
+        values.put(PendingSaleEntry.COLUMN_QUANTITY_DELTA, delta);
+
+        if (mContentResolver.insert(PendingSaleEntry.CONTENT_URI, values) == null) {
+            Log.e(LOG_TAG, "Failed to journal sale for product " + productId);
+            return false;
+        }
+        return true;
+    }
+
+    private void scheduleDrain() {
+        if (!mDrainScheduled) {
+            mDrainScheduled = true;
+            mExecutor.schedule(mDrainRunnable, DRAIN_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Apply the journaled sales and remove those that left the journal from the in-memory tally.
+     * A product reloaded between the two would be shown with its sales both stored and pending,
+     * so the products are reloaded again once the tally is up to date.
+     */
+    private void drain() {
+        Bundle result = mContentResolver.call(PendingSaleEntry.CONTENT_URI,
+                PendingSaleEntry.METHOD_DRAIN_PENDING_SALES, null, null);
+        if (result == null) {
+            return;
+        }
+
+        long[] productIds = result.getLongArray(PendingSaleEntry.EXTRA_PRODUCT_IDS);
+        int[] deltas = result.getIntArray(PendingSaleEntry.EXTRA_QUANTITY_DELTAS);
+
+        synchronized (mPendingDeltas) {
+            for (int i = 0; i < productIds.length; i++) {
+                addPendingDelta(productIds[i], -deltas[i]);
+            }
+        }
+
+        for (long productId : productIds) {
+            notifyProductChanged(productId);
+        }
+    }
+
+    private void notifyProductChanged(long productId) {
+        mContentResolver.notifyChange(ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, productId), null);
+    }
+
+    /**
+     * Load the sales left in the journal by a previous process into the in-memory tally and
+     * apply them.
+     */
+    private void replay() {
+        String[] projection = {
+                PendingSaleEntry.COLUMN_PRODUCT_ID,
+                PendingSaleEntry.COLUMN_QUANTITY_DELTA};
+
+        int replayed;
+        // Runs before any sale of this process is journaled, so the cursor only holds the sales
+        // of previous ones, which recordSale never added
+        Cursor cursor = mContentResolver.query(PendingSaleEntry.CONTENT_URI, projection, null, null, null);
+        if (cursor == null) {
+            return;
+        }
+
+        try {
+            replayed = cursor.getCount();
+            synchronized (mPendingDeltas) {
+                while (cursor.moveToNext()) {
+                    addPendingDelta(cursor.getLong(0), cursor.getInt(1));
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        if (replayed != 0) {
+            Log.i(LOG_TAG, "Replaying " + replayed + " journaled sales");
+            drain();
+        }
+    }
+}
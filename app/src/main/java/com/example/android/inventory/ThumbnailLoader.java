@@ -0,0 +1,214 @@
+package com.example.android.inventory;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import com.data.InventoryContract.InventoryEntry;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Loads the thumbnails of products for the catalog list on background threads and keeps the
+ * ones shown last in memory, up to a share of the memory the app may use. Loads for rows that
+ * are rebound or scrolled off are cancelled, so a fast fling only decodes the rows it stops on.
+ * The cache is emptied when the system runs low on memory.
+ */
+public final class ThumbnailLoader implements ComponentCallbacks2 {
+
+    private static final String LOG_TAG = ThumbnailLoader.class.getSimpleName();
+
+    /**
+     * Share of the memory class of the app the cache may hold, as a fraction.
+     */
+    private static final int MEMORY_CLASS_FRACTION = 8;
+
+    /**
+     * Thumbnails are small and mostly read from disk, so a couple of threads keep up with
+     * scrolling without competing with the main thread for long.
+     */
+    private static final int THREAD_COUNT = 2;
+
+    private static ThumbnailLoader sInstance;
+
+    private final ContentResolver mContentResolver;
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private final ExecutorService mExecutor = Executors.newFixedThreadPool(THREAD_COUNT);
+
+    /**
+     * Keyed by product and photo time, so a new photo is never shown from the cache as the old one.
+     */
+    private final LruCache<String, Bitmap> mCache;
+
+    private ThumbnailLoader(Context context) {
+        mContentResolver = context.getContentResolver();
+
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        int maxBytes = activityManager.getMemoryClass() * 1024 * 1024 / MEMORY_CLASS_FRACTION;
+        mCache = new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+        };
+
+        context.registerComponentCallbacks(this);
+    }
+
+    /**
+     * Return the loader for this process, creating it the first time it is called.
+     */
+    public static synchronized ThumbnailLoader getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ThumbnailLoader(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Show the thumbnail of the given product in the view: straight away if it is in memory,
+     * otherwise once it has been loaded, with the view cleared until then. Call on the main
+     * thread. Return the load, to be cancelled if the view is rebound or recycled before it is
+     * done, or null if there was nothing to load because the product has no photo or the
+     * thumbnail was in memory.
+     */
+    public Future<Bitmap> load(long id, long photoTime, ImageView view) {
+        if (photoTime == 0) {
+            view.setImageDrawable(null);
+            return null;
+        }
+
+        String key = id + ":" + photoTime;
+        Bitmap cached = mCache.get(key);
+        if (cached != null) {
+            view.setImageBitmap(cached);
+            return null;
+        }
+
+        view.setImageDrawable(null);
+        Load load = new Load(id, key, view);
+        mExecutor.execute(load);
+        return load;
+    }
+
+    /**
+     * Return the thumbnail of the given product, or null if it has no photo or it can't be read.
+     */
+    private Bitmap decode(long id) {
+        try {
+            InputStream input = mContentResolver.openInputStream(InventoryEntry.getThumbnailUri(id));
+            if (input == null) {
+                return null;
+            }
+            try {
+                return BitmapFactory.decodeStream(input);
+            } finally {
+                input.close();
+            }
+        } catch (FileNotFoundException e) {
+            // The photo was removed since the product was read
+            return null;
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Failed to read thumbnail of product " + id, e);
+            return null;
+        }
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_MODERATE) {
+            mCache.evictAll();
+        } else if (level >= TRIM_MEMORY_BACKGROUND) {
+            mCache.trimToSize(mCache.maxSize() / 2);
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        mCache.evictAll();
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+
+    /**
+     * Decodes a thumbnail into the cache and shows it in the view. Cancelling it also drops a
+     * thumbnail that is already on its way to the main thread. It is only cancelled on the main
+     * thread, where it is shown, so a thumbnail is never shown in a view that has been rebound.
+     */
+    private final class Load extends FutureTask<Bitmap> {
+
+        private final String mKey;
+        private final ImageView mView;
+
+        private volatile boolean mCancelled;
+
+        Load(final long id, String key, ImageView view) {
+            super(new Callable<Bitmap>() {
+                @Override
+                public Bitmap call() {
+                    return decode(id);
+                }
+            });
+            mKey = key;
+            mView = view;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            mCancelled = true;
+            return super.cancel(mayInterruptIfRunning);
+        }
+
+        @Override
+        protected void done() {
+            if (isCancelled()) {
+                return;
+            }
+
+            final Bitmap bitmap;
+            try {
+                bitmap = get();
+            } catch (ExecutionException e) {
+                Log.w(LOG_TAG, "Failed to load thumbnail " + mKey, e.getCause());
+                return;
+            } catch (InterruptedException e) {
+                // Can't happen, the task is done
+                throw new IllegalStateException(e);
+            }
+            if (bitmap == null) {
+                return;
+            }
+
+            mCache.put(mKey, bitmap);
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (!mCancelled) {
+                        mView.setImageBitmap(bitmap);
+                    }
+                }
+            });
+        }
+    }
+}
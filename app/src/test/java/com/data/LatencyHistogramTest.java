@@ -0,0 +1,61 @@
+package com.data;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void emptyHistogram_reportsZero() {
+        LatencyHistogram.Snapshot snapshot = new LatencyHistogram().snapshot();
+
+        assertEquals(0, snapshot.count);
+        assertEquals(0, snapshot.meanNanos());
+        assertEquals(0, snapshot.percentileNanos(99));
+    }
+
+    @Test
+    public void percentiles_areWithinBucketAccuracy() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long nanos = 1; nanos <= 100000; nanos++) {
+            histogram.record(nanos * 1000);
+        }
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(100000, snapshot.count);
+        assertEquals(100000000, snapshot.maxNanos);
+        assertWithin(50000000, snapshot.percentileNanos(50));
+        assertWithin(99000000, snapshot.percentileNanos(99));
+        assertEquals(100000000, snapshot.percentileNanos(100));
+    }
+
+    @Test
+    public void smallLatencies_areExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(0);
+        histogram.record(1);
+        histogram.record(2);
+        histogram.record(3);
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(1, snapshot.percentileNanos(50));
+        assertEquals(3, snapshot.percentileNanos(100));
+    }
+
+    @Test
+    public void hugeLatencies_countInLastBucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(Long.MAX_VALUE);
+
+        assertEquals(1, histogram.snapshot().count);
+    }
+
+    /**
+     * Assert that the estimate is no lower than the exact percentile and at most 25% higher.
+     */
+    private static void assertWithin(long exact, long estimate) {
+        assertTrue(exact + " estimated as " + estimate, estimate >= exact && estimate <= exact * 5 / 4);
+    }
+}
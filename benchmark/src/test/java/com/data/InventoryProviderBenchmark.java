@@ -0,0 +1,160 @@
+package com.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+
+import com.data.InventoryContract.InventoryEntry;
+import com.example.android.inventory.benchmark.Microbenchmark;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Measures the provider's hot paths on the JVM, calling the provider directly so the numbers
+ * cover its own work and SQLite's rather than Binder's. Each benchmark starts from a catalog of
+ * {@value #CATALOG_SIZE} products.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27)
+public class InventoryProviderBenchmark {
+
+    private static final int CATALOG_SIZE = 5000;
+
+    private static final int BULK_INSERT_SIZE = 100;
+
+    /**
+     * Number of products the cached lookups cycle through, well within the row cache.
+     */
+    private static final int CACHED_PRODUCTS = 100;
+
+    private static final int WARMUP_RUNS = 500;
+    private static final int MEASURED_RUNS = 5000;
+
+    private InventoryProvider mProvider;
+
+    @Before
+    public void setUp() {
+        mProvider = Robolectric.buildContentProvider(InventoryProvider.class)
+                .create(InventoryContract.CONTENT_AUTHORITY).get();
+
+        ContentValues[] catalog = new ContentValues[CATALOG_SIZE];
+        for (int i = 0; i < CATALOG_SIZE; i++) {
+            catalog[i] = product(i, 1000000);
+        }
+        assertEquals(CATALOG_SIZE, mProvider.bulkInsert(InventoryEntry.CONTENT_URI, catalog));
+    }
+
+    @Test
+    public void insert() {
+        Microbenchmark.run("insert", WARMUP_RUNS, MEASURED_RUNS, new Microbenchmark.Operation() {
+            @Override
+            public void run(int i) {
+                assertNotNull(mProvider.insert(InventoryEntry.CONTENT_URI, product(i, 10)));
+            }
+        });
+    }
+
+    @Test
+    public void bulkInsert() {
+        final ContentValues[] batch = new ContentValues[BULK_INSERT_SIZE];
+        for (int i = 0; i < BULK_INSERT_SIZE; i++) {
+            batch[i] = product(i, 10);
+        }
+
+        Microbenchmark.Result result = Microbenchmark.run("bulkInsert x" + BULK_INSERT_SIZE,
+                WARMUP_RUNS / 10, MEASURED_RUNS / 10, new Microbenchmark.Operation() {
+                    @Override
+                    public void run(int i) {
+                        assertEquals(BULK_INSERT_SIZE, mProvider.bulkInsert(InventoryEntry.CONTENT_URI, batch));
+                    }
+                });
+        System.out.println(String.format(Locale.US, "bulkInsert median %.0f rows/s",
+                BULK_INSERT_SIZE * 1000000 / result.percentile(50)));
+    }
+
+    @Test
+    public void lookupById() {
+        Microbenchmark.run("lookup (row cache)", WARMUP_RUNS, MEASURED_RUNS, new Microbenchmark.Operation() {
+            @Override
+            public void run(int i) {
+                readProduct(1 + i % CACHED_PRODUCTS);
+            }
+        });
+
+        // Cycling through the whole catalog, every lookup misses the cache
+        Microbenchmark.run("lookup (database)", WARMUP_RUNS, MEASURED_RUNS, new Microbenchmark.Operation() {
+            @Override
+            public void run(int i) {
+                readProduct(1 + i % CATALOG_SIZE);
+            }
+        });
+    }
+
+    @Test
+    public void queryCatalog() {
+        Microbenchmark.run("query catalog x" + CATALOG_SIZE, WARMUP_RUNS / 50, MEASURED_RUNS / 50,
+                new Microbenchmark.Operation() {
+                    @Override
+                    public void run(int i) {
+                        Cursor cursor = mProvider.query(InventoryEntry.CONTENT_URI, null, null, null, null);
+                        try {
+                            int rows = 0;
+                            while (cursor.moveToNext()) {
+                                cursor.getLong(0);
+                                cursor.getString(1);
+                                rows++;
+                            }
+                            assertEquals(CATALOG_SIZE, rows);
+                        } finally {
+                            cursor.close();
+                        }
+                    }
+                });
+    }
+
+    @Test
+    public void sale() {
+        final Bundle sale = new Bundle();
+        sale.putInt(InventoryEntry.EXTRA_QUANTITY_DELTA, -1);
+
+        Microbenchmark.run("sale", WARMUP_RUNS, MEASURED_RUNS, new Microbenchmark.Operation() {
+            @Override
+            public void run(int i) {
+                assertNotNull(mProvider.call(InventoryEntry.METHOD_ADJUST_QUANTITY,
+                        String.valueOf(1 + i % CATALOG_SIZE), sale));
+            }
+        });
+    }
+
+    private void readProduct(long id) {
+        Uri uri = ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, id);
+        Cursor cursor = mProvider.query(uri, null, null, null, null);
+        try {
+            assertEquals(1, cursor.getCount());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static ContentValues product(int i, int quantity) {
+        ContentValues values = new ContentValues();
+        values.put(InventoryEntry.COLUMN_PRODUCT_NAME, "Product " + i);
+        values.put(InventoryEntry.COLUMN_PRODUCT_PRICE, 100 + i);
+        values.put(InventoryEntry.COLUMN_PRODUCT_QUANTITY, quantity);
+        values.put(InventoryEntry.COLUMN_PRODUCT_SUPPLIER, "Supplier " + (i % 20));
+        values.put(InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NUMBER, "1800" + (i % 20));
+        return values;
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.android.inventory;
+
+import android.content.Context;
+import android.support.v7.util.DiffUtil;
+import android.view.ContextThemeWrapper;
+import android.widget.FrameLayout;
+
+import com.example.android.inventory.benchmark.Microbenchmark;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures binding a product to a row of the catalog list on the JVM. Robolectric's views do
+ * the work of the framework's without drawing, so the numbers cover the adapter and the text
+ * it sets, not layout or rendering.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27)
+public class CatalogAdapterBenchmark {
+
+    private static final int ITEM_COUNT = 1000;
+
+    private static final int WARMUP_RUNS = 2000;
+    private static final int MEASURED_RUNS = 20000;
+
+    private CatalogAdapter mCatalogAdapter;
+
+    private CatalogAdapter.ViewHolder mViewHolder;
+
+    @Before
+    public void setUp() {
+        Context context = new ContextThemeWrapper(RuntimeEnvironment.application, R.style.AppTheme);
+
+        // The pager is never started; the rows come from search results set up front instead
+        CatalogPager catalogPager = new CatalogPager(context, new CatalogPager.Callback() {
+            @Override
+            public void onCatalogReset() {
+            }
+
+            @Override
+            public void onPageLoaded(int positionStart, int itemCount) {
+            }
+
+            @Override
+            public void onPageUpdated(int positionStart, int itemCount, DiffUtil.DiffResult diff) {
+            }
+
+            @Override
+            public void onItemChanged(int position) {
+            }
+        });
+
+        mCatalogAdapter = new CatalogAdapter(context, catalogPager, new CatalogAdapter.OnProductClickListener() {
+            @Override
+            public void onProductClick(long id) {
+            }
+        });
+
+        List<CatalogItem> items = new ArrayList<>(ITEM_COUNT);
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            // Every tenth product is out of stock and every hundredth has no price, to take
+            // every branch of binding
+            items.add(new CatalogItem(i + 1, "Product " + i, i % 100 == 0 ? 0 : 100 + i, i % 10 == 0 ? 0 : i,
+                    "Supplier " + i % 20));
+        }
+        mCatalogAdapter.setSearchResults(items);
+
+        mViewHolder = mCatalogAdapter.onCreateViewHolder(new FrameLayout(context), 0);
+    }
+
+    @Test
+    public void bind() {
+        Microbenchmark.run("bind", WARMUP_RUNS, MEASURED_RUNS, new Microbenchmark.Operation() {
+            @Override
+            public void run(int i) {
+                mCatalogAdapter.onBindViewHolder(mViewHolder, i % ITEM_COUNT);
+            }
+        });
+    }
+
+    @Test
+    public void bindPlaceholder() {
+        Microbenchmark.run("bind placeholder", WARMUP_RUNS, MEASURED_RUNS, new Microbenchmark.Operation() {
+            @Override
+            public void run(int i) {
+                mViewHolder.bindPlaceholder();
+            }
+        });
+    }
+}
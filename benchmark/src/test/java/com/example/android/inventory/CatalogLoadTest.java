@@ -0,0 +1,220 @@
+package com.example.android.inventory;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+
+import com.data.InventoryContract;
+import com.data.InventoryContract.InventoryEntry;
+import com.data.InventoryProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Populates a generated catalog through the provider and replays a mix of the operations the
+ * app runs against it: sales, edits, searches, page loads and product lookups. Reports the
+ * throughput of the whole mix and the latency percentiles of each kind of operation.
+ *
+ * The catalog size, number of operations and seed can be set with the system properties
+ * {@value #PROPERTY_PRODUCTS}, {@value #PROPERTY_OPERATIONS} and {@value #PROPERTY_SEED}, for
+ * example:
+ *
+ *     ./gradlew :benchmark:testDebugUnitTest --tests '*CatalogLoadTest' -Dinventory.loadtest.products=1000000
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27)
+public class CatalogLoadTest {
+
+    private static final String PROPERTY_PRODUCTS = "inventory.loadtest.products";
+    private static final String PROPERTY_OPERATIONS = "inventory.loadtest.operations";
+    private static final String PROPERTY_SEED = "inventory.loadtest.seed";
+
+    private static final int DEFAULT_PRODUCTS = 10000;
+    private static final int DEFAULT_OPERATIONS = 20000;
+
+    private static final int PAGE_SIZE = 50;
+
+    private static final int SALE = 0;
+    private static final int EDIT = 1;
+    private static final int SEARCH = 2;
+    private static final int PAGE = 3;
+    private static final int LOOKUP = 4;
+
+    private static final String[] OPERATION_NAMES = {"sale", "edit", "search", "page", "lookup"};
+
+    /**
+     * Share of each kind of operation in the mix, in percent.
+     */
+    private static final int[] OPERATION_MIX = {60, 5, 15, 10, 10};
+
+    private ContentResolver mContentResolver;
+
+    private int mProducts;
+    private int mOperations;
+    private long mSeed;
+
+    @Before
+    public void setUp() {
+        Robolectric.buildContentProvider(InventoryProvider.class).create(InventoryContract.CONTENT_AUTHORITY);
+        mContentResolver = RuntimeEnvironment.application.getContentResolver();
+
+        mProducts = Integer.getInteger(PROPERTY_PRODUCTS, DEFAULT_PRODUCTS);
+        mOperations = Integer.getInteger(PROPERTY_OPERATIONS, DEFAULT_OPERATIONS);
+        mSeed = Long.getLong(PROPERTY_SEED, CatalogGenerator.DEFAULT_SEED);
+    }
+
+    @Test
+    public void mixedLoad() {
+        CatalogGenerator generator = new CatalogGenerator(mSeed);
+
+        long populateStart = System.nanoTime();
+        assertEquals(mProducts, generator.populate(mContentResolver, mProducts));
+        double populateSeconds = (System.nanoTime() - populateStart) / 1e9;
+        System.out.println(String.format(Locale.US, "populated %d products in %.1f s, %.0f products/s",
+                mProducts, populateSeconds, mProducts / populateSeconds));
+
+        // Separate from the generator's, so the mix doesn't change with the catalog size
+        Random random = new Random(mSeed);
+
+        long[][] latencies = new long[OPERATION_NAMES.length][mOperations];
+        int[] counts = new int[OPERATION_NAMES.length];
+
+        long start = System.nanoTime();
+        for (int i = 0; i < mOperations; i++) {
+            int operation = pickOperation(random);
+            long id = 1 + random.nextInt(mProducts);
+
+            long operationStart = System.nanoTime();
+            switch (operation) {
+                case SALE:
+                    sell(id);
+                    break;
+                case EDIT:
+                    edit(id, generator.nextProduct());
+                    break;
+                case SEARCH:
+                    search(generator.nextSearchTerm());
+                    break;
+                case PAGE:
+                    loadPage(id);
+                    break;
+                default:
+                    lookUp(id);
+                    break;
+            }
+            latencies[operation][counts[operation]++] = System.nanoTime() - operationStart;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.println(String.format(Locale.US, "%d operations on %d products in %.1f s, %.0f operations/s",
+                mOperations, mProducts, seconds, mOperations / seconds));
+        for (int operation = 0; operation < OPERATION_NAMES.length; operation++) {
+            report(OPERATION_NAMES[operation], Arrays.copyOf(latencies[operation], counts[operation]));
+        }
+    }
+
+    private static int pickOperation(Random random) {
+        int roll = random.nextInt(100);
+        for (int operation = 0; operation < OPERATION_MIX.length; operation++) {
+            roll -= OPERATION_MIX[operation];
+            if (roll < 0) {
+                return operation;
+            }
+        }
+        return OPERATION_MIX.length - 1;
+    }
+
+    /**
+     * Sell one of the product, the way the sale queue applies a sale. Out of stock products
+     * just aren't sold.
+     */
+    private void sell(long id) {
+        Bundle extras = new Bundle();
+        extras.putInt(InventoryEntry.EXTRA_QUANTITY_DELTA, -1);
+        mContentResolver.call(InventoryEntry.CONTENT_URI, InventoryEntry.METHOD_ADJUST_QUANTITY,
+                String.valueOf(id), extras);
+    }
+
+    /**
+     * Change the price and supplier of the product, the way the editor saves it.
+     */
+    private void edit(long id, ContentValues generated) {
+        ContentValues values = new ContentValues();
+        values.put(InventoryEntry.COLUMN_PRODUCT_PRICE, generated.getAsInteger(InventoryEntry.COLUMN_PRODUCT_PRICE));
+        values.put(InventoryEntry.COLUMN_PRODUCT_SUPPLIER, generated.getAsString(InventoryEntry.COLUMN_PRODUCT_SUPPLIER));
+        values.put(InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NUMBER,
+                generated.getAsString(InventoryEntry.COLUMN_PRODUCT_SUPPLIER_NUMBER));
+        mContentResolver.update(ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, id), values, null, null);
+    }
+
+    private void search(String term) {
+        Uri uri = Uri.withAppendedPath(InventoryEntry.SEARCH_URI, term).buildUpon()
+                .appendQueryParameter(InventoryEntry.QUERY_PARAMETER_LIMIT, String.valueOf(PAGE_SIZE))
+                .build();
+        readAll(mContentResolver.query(uri, CatalogItem.PROJECTION, null, null, null));
+    }
+
+    /**
+     * Load the page of the catalog list that starts after the given _id.
+     */
+    private void loadPage(long afterId) {
+        Uri uri = InventoryEntry.CONTENT_URI.buildUpon()
+                .appendQueryParameter(InventoryEntry.QUERY_PARAMETER_LIMIT, String.valueOf(PAGE_SIZE))
+                .appendQueryParameter(InventoryEntry.QUERY_PARAMETER_AFTER_ID, String.valueOf(afterId))
+                .build();
+        readAll(mContentResolver.query(uri, CatalogItem.PROJECTION, null, null, null));
+    }
+
+    /**
+     * Read the product the way the editor does, with all of its columns.
+     */
+    private void lookUp(long id) {
+        readAll(mContentResolver.query(ContentUris.withAppendedId(InventoryEntry.CONTENT_URI, id),
+                null, null, null, null));
+    }
+
+    private static void readAll(Cursor cursor) {
+        try {
+            while (cursor.moveToNext()) {
+                cursor.getLong(0);
+                cursor.getString(1);
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static void report(String name, long[] latencies) {
+        if (latencies.length == 0) {
+            return;
+        }
+        Arrays.sort(latencies);
+        System.out.println(String.format(Locale.US, "%-8s %7d ops  p50 %8.1f us  p99 %8.1f us"
+                        + "  p99.9 %8.1f us  max %8.1f us", name, latencies.length,
+                percentile(latencies, 50), percentile(latencies, 99), percentile(latencies, 99.9),
+                percentile(latencies, 100)));
+    }
+
+    /**
+     * Return the given percentile of the sorted latencies, in microseconds.
+     */
+    private static double percentile(long[] sortedLatencies, double percentile) {
+        int index = (int) Math.ceil(sortedLatencies.length * percentile / 100) - 1;
+        return sortedLatencies[Math.max(0, Math.min(sortedLatencies.length - 1, index))] / 1000.0;
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.android.inventory.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Times an operation on the JVM: runs it to warm up, so the JIT has compiled the paths it takes,
+ * then runs it again measuring the latency of every run and the memory allocated on the calling
+ * thread over all of them.
+ */
+public final class Microbenchmark {
+
+    /**
+     * One run of the operation being measured.
+     */
+    public interface Operation {
+
+        /**
+         * @param i number of the run, counting from 0 separately for the warmup and measured runs
+         */
+        void run(int i);
+    }
+
+    public static final class Result {
+
+        private final String mName;
+        private final long[] mSortedLatencies;
+        private final long mAllocatedBytes;
+
+        private Result(String name, long[] sortedLatencies, long allocatedBytes) {
+            mName = name;
+            mSortedLatencies = sortedLatencies;
+            mAllocatedBytes = allocatedBytes;
+        }
+
+        /**
+         * Return the given percentile of the latencies, in microseconds.
+         */
+        public double percentile(double percentile) {
+            int index = (int) Math.min(mSortedLatencies.length - 1,
+                    (long) Math.ceil(mSortedLatencies.length * percentile / 100) - 1);
+            return mSortedLatencies[Math.max(0, index)] / 1000.0;
+        }
+
+        /**
+         * Return the bytes allocated per run, or -1 if the JVM can't tell.
+         */
+        public long allocatedBytesPerRun() {
+            return mAllocatedBytes < 0 ? -1 : mAllocatedBytes / mSortedLatencies.length;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%-24s %6d runs  p50 %9.1f us  p90 %9.1f us  p99 %9.1f us"
+                            + "  max %9.1f us  %8d B/run", mName, mSortedLatencies.length,
+                    percentile(50), percentile(90), percentile(99), percentile(100),
+                    allocatedBytesPerRun());
+        }
+    }
+
+    private Microbenchmark() {
+    }
+
+    /**
+     * Run the operation warmupRuns times, then measure measuredRuns more. The result is printed
+     * as well as returned.
+     */
+    public static Result run(String name, int warmupRuns, int measuredRuns, Operation operation) {
+        if (measuredRuns < 1) {
+            throw new IllegalArgumentException("At least one run must be measured");
+        }
+
+        for (int i = 0; i < warmupRuns; i++) {
+            operation.run(i);
+        }
+
+        long[] latencies = new long[measuredRuns];
+        long allocatedBefore = allocatedBytes();
+        for (int i = 0; i < measuredRuns; i++) {
+            long start = System.nanoTime();
+            operation.run(i);
+            latencies[i] = System.nanoTime() - start;
+        }
+        long allocatedAfter = allocatedBytes();
+
+        Arrays.sort(latencies);
+        Result result = new Result(name, latencies,
+                allocatedBefore < 0 ? -1 : allocatedAfter - allocatedBefore);
+        System.out.println(result);
+        return result;
+    }
+
+    /**
+     * Return the bytes allocated so far by the current thread, or -1 if the JVM can't tell.
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        if (!allocations.isThreadAllocatedMemorySupported() || !allocations.isThreadAllocatedMemoryEnabled()) {
+            return -1;
+        }
+        return allocations.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}